@@ -0,0 +1,84 @@
+package com.pavelf.loanexchange.benchmark;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.repository.UserRepository;
+import com.pavelf.loanexchange.service.LedgerService;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * The application started on the embedded H2 database of the test configuration, for end-to-end benchmarks.
+ * Every benchmark runs in its own fork, so each one gets an empty database.
+ */
+public final class BenchmarkApplication {
+
+    private final ConfigurableApplicationContext context;
+    private final TransactionTemplate transactionTemplate;
+
+    private BenchmarkApplication(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    /**
+     * @param arguments command line arguments such as {@code --key=value}, which override the test configuration.
+     */
+    public static BenchmarkApplication start(String... arguments) {
+        return new BenchmarkApplication(new SpringApplicationBuilder(LoanExchangeBackendApp.class)
+            .properties("server.port=0", "logging.level.com.pavelf.loanexchange=WARN")
+            .run(arguments));
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public TransactionTemplate getTransactionTemplate() {
+        return transactionTemplate;
+    }
+
+    /**
+     * Creates an activated user with the given opening balance.
+     */
+    public User createUser(BigDecimal balance) {
+        return transactionTemplate.execute(status -> {
+            User user = new User();
+            user.setLogin("bench-" + RandomStringUtils.randomAlphanumeric(12).toLowerCase());
+            user.setPassword(RandomStringUtils.random(60));
+            user.setActivated(true);
+            user.setEmail(user.getLogin() + "@localhost");
+            user.setLangKey("en");
+            user = getBean(UserRepository.class).save(user);
+            getBean(LedgerService.class).append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+                .amountChanged(balance).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+            return user;
+        });
+    }
+
+    /**
+     * Authenticates the current thread as the user.
+     */
+    public void authenticate(User user, String... authorities) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+            user.getLogin(), "", Arrays.stream(authorities).map(SimpleGrantedAuthority::new).collect(Collectors.toList())));
+    }
+
+    public void close() {
+        SecurityContextHolder.clearContext();
+        context.close();
+    }
+}
@@ -0,0 +1,109 @@
+package com.pavelf.loanexchange.benchmark;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs the benchmarks and compares their scores with the baseline file.
+ * <p>
+ * Every benchmark measures the average time of an operation, so a score above the baseline by more than
+ * {@code jmh.threshold} (a fraction, 0.2 is 20%) is a regression and fails the run. Without a baseline file,
+ * or with {@code jmh.updateBaseline=true}, the scores of the run are written as the new baseline.
+ */
+public final class BenchmarkRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(BenchmarkRunner.class);
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final String include = args.length > 0 ? args[0] : "com.pavelf.loanexchange.*Benchmark";
+        final double threshold = Double.parseDouble(System.getProperty("jmh.threshold", "0.20"));
+        final File baselineFile = new File(System.getProperty("jmh.baseline", "jmh-baseline.properties"));
+        final boolean updateBaseline = Boolean.getBoolean("jmh.updateBaseline");
+
+        Options options = new OptionsBuilder()
+            .include(include)
+            .resultFormat(ResultFormatType.JSON)
+            .result(System.getProperty("jmh.result", "jmh-result.json"))
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Properties scores = new Properties();
+        results.forEach(result -> scores.setProperty(nameOf(result.getParams()),
+            String.valueOf(result.getPrimaryResult().getScore())));
+
+        if (updateBaseline || !baselineFile.exists()) {
+            store(scores, baselineFile);
+            log.info("Baseline of {} benchmarks written to {}", scores.size(), baselineFile);
+            return;
+        }
+
+        List<String> regressions = compare(load(baselineFile), scores, threshold);
+        if (!regressions.isEmpty()) {
+            regressions.forEach(log::error);
+            System.exit(1);
+        }
+        log.info("No benchmark regressed by more than {}% against {}", Math.round(threshold * 100), baselineFile);
+    }
+
+    private static String nameOf(BenchmarkParams params) {
+        StringBuilder name = new StringBuilder(params.getBenchmark());
+        params.getParamsKeys().forEach(key -> name.append(':').append(key).append('=').append(params.getParam(key)));
+        return name.toString();
+    }
+
+    static List<String> compare(Properties baseline, Properties scores, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        for (String benchmark : scores.stringPropertyNames()) {
+            String expected = baseline.getProperty(benchmark);
+            if (expected == null) {
+                log.warn("{} has no baseline yet", benchmark);
+                continue;
+            }
+            double before = Double.parseDouble(expected);
+            double after = Double.parseDouble(scores.getProperty(benchmark));
+            if (after > before * (1 + threshold)) {
+                regressions.add(String.format("%s regressed from %.3f to %.3f (+%.1f%%)", benchmark, before, after,
+                    (after / before - 1) * 100));
+            }
+        }
+        return regressions;
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static void store(Properties scores, File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            scores.store(out, "JMH baseline, average time per operation");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.pavelf.loanexchange.domain;
+
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the money arithmetic on {@link Deal} and {@link BalanceLog}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LedgerMathBenchmark {
+
+    @Param({"DAY", "MONTH", "ONE_TIME"})
+    public PaymentInterval paymentEvery;
+
+    private Deal deal;
+
+    private BalanceLog balanceLog;
+
+    @Setup
+    public void setup() {
+        deal = new Deal().startBalance(new BigDecimal("12345.67")).percent(new BigDecimal("0.07"))
+            .term(paymentEvery == PaymentInterval.MONTH ? 360 : 30).paymentEvery(paymentEvery);
+        balanceLog = new BalanceLog().date(Instant.now()).oldValue(new BigDecimal("98765.43"))
+            .amountChanged(new BigDecimal("-1234.56")).type(BalanceLogEvent.DEAL_PAYMENT);
+    }
+
+    @Benchmark
+    public BigDecimal averagePayment() {
+        return deal.getAveragePayment();
+    }
+
+    @Benchmark
+    public BigDecimal percentCharge() {
+        return deal.getPercentCharge();
+    }
+
+    @Benchmark
+    public BigDecimal currentAccountBalance() {
+        return balanceLog.getCurrentAccountBalance();
+    }
+}
@@ -0,0 +1,81 @@
+package com.pavelf.loanexchange.security.jwt;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.config.CacheConfiguration;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.cache.CacheManager;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link JWTFilter} authenticating a request with a token already seen, with and without the
+ * {@link TokenAuthenticationCache}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JWTFilterBenchmark {
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private JWTFilter filter;
+
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+        JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setBase64Secret(
+            "fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8");
+        TokenProvider tokenProvider = new TokenProvider(jHipsterProperties);
+        tokenProvider.afterPropertiesSet();
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        CacheManager cacheManager = new EhcacheCachingProvider().getCacheManager();
+        cacheManager.createCache(TokenAuthenticationCache.TOKEN_AUTHENTICATIONS_CACHE, cached
+            ? CacheConfiguration.boundedConfiguration(10000, 600, 0) : CacheConfiguration.storingNothing());
+        filter = new JWTFilter(new TokenAuthenticationCache(tokenProvider, new TokenDenyList(applicationProperties),
+            cacheManager, new SimpleMeterRegistry()),
+            // no ticket is redeemed by the benchmarked requests, so there is no deny-list to use them up in
+            new StreamTicketStore(tokenProvider, null, new SimpleMeterRegistry(), applicationProperties));
+
+        String jwt = tokenProvider.createToken(new UsernamePasswordAuthenticationToken("user", "user",
+            Arrays.asList(new SimpleGrantedAuthority(AuthoritiesConstants.USER),
+                new SimpleGrantedAuthority(AuthoritiesConstants.DEBTOR))), false);
+        request = new MockHttpServletRequest("GET", "/api/deals");
+        request.addHeader(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
+    }
+
+    @Benchmark
+    public Authentication doFilter() throws Exception {
+        SecurityContextHolder.clearContext();
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+}
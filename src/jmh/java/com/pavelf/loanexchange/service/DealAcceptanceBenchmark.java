@@ -0,0 +1,117 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.benchmark.BenchmarkApplication;
+import com.pavelf.loanexchange.config.ApplicationProperties.Deals.AcceptanceLocking;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.web.rest.errors.BadRequestAlertException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.math.BigDecimal;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link DealService#acceptDeal} under each {@link AcceptanceLocking} mode, with many debtors racing
+ * for the same pending deals. Every acceptor takes the oldest deal still pending, so most attempts collide on one
+ * deal row; the score is the time for all acceptors together to drain a book of pending deals.
+ * <p>
+ * The debtors hold {@code ROLE_SYSTEM} so that each may take any number of deals. The embedded H2 database shows
+ * the relative cost of the modes only; pass {@code -Dspring.datasource.url=...} and the credentials to measure
+ * them on Postgres.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Threads(16)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DealAcceptanceBenchmark {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000000.00");
+
+    private static final int BOOK_SIZE = 200;
+
+    @Param({"SERIALIZABLE", "PESSIMISTIC"})
+    public AcceptanceLocking acceptanceLocking;
+
+    private BenchmarkApplication application;
+
+    private DealService dealService;
+
+    private User creditor;
+
+    private final Queue<Deal> book = new ConcurrentLinkedQueue<>();
+
+    @State(Scope.Thread)
+    public static class Acceptor {
+
+        private User debtor;
+
+        @Setup(Level.Trial)
+        public void setup(DealAcceptanceBenchmark benchmark) {
+            debtor = benchmark.application.createUser(OPENING_BALANCE);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        application = BenchmarkApplication.start("--application.deals.acceptance-locking=" + acceptanceLocking);
+        dealService = application.getBean(DealService.class);
+        creditor = application.createUser(OPENING_BALANCE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void fillBook() {
+        application.authenticate(creditor, AuthoritiesConstants.CREDITOR);
+        for (int i = 0; i < BOOK_SIZE; i++) {
+            book.add(dealService.createDealForCurrentUser(new Deal().startBalance(new BigDecimal("1000.00"))
+                .percent(new BigDecimal("0.05")).term(30).paymentEvery(PaymentInterval.DAY)));
+        }
+    }
+
+    /**
+     * @return the number of deals this acceptor took.
+     */
+    @Benchmark
+    public int drainBook(Acceptor acceptor) {
+        application.authenticate(acceptor.debtor, AuthoritiesConstants.DEBTOR, AuthoritiesConstants.SYSTEM);
+        int accepted = 0;
+        for (Deal deal = book.peek(); deal != null; deal = book.peek()) {
+            try {
+                dealService.acceptDeal(deal);
+                accepted++;
+            } catch (BadRequestAlertException e) {
+                // taken by another acceptor meanwhile
+            } catch (ConcurrencyFailureException e) {
+                // retries exhausted, the deal is still pending
+                continue;
+            }
+            book.remove(deal);
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,125 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.benchmark.BenchmarkApplication;
+import com.pavelf.loanexchange.config.ApplicationProperties.Payments.AccrualMode;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks of the deal lifecycle against the embedded H2 database: opening a deal, accepting it
+ * and one payment cycle over a cohort of active deals.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DealLifecycleBenchmark {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000000.00");
+
+    private static final int COHORT = 200;
+
+    private BenchmarkApplication application;
+
+    private DealService dealService;
+
+    private BalanceLogService balanceLogService;
+
+    private PaymentRunService paymentRunService;
+
+    private User creditor;
+
+    private User debtor;
+
+    private DealSpecification cohort;
+
+    private Deal pending;
+
+    private PaymentRun run;
+
+    private LocalDate period = LocalDate.of(2019, 1, 1);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        application = BenchmarkApplication.start();
+        dealService = application.getBean(DealService.class);
+        balanceLogService = application.getBean(BalanceLogService.class);
+        paymentRunService = application.getBean(PaymentRunService.class);
+        creditor = application.createUser(OPENING_BALANCE);
+        // a system debtor may hold any number of active deals
+        debtor = application.createUser(OPENING_BALANCE);
+
+        cohort = new DealSpecification();
+        cohort.setWithStatus(DealStatus.ACTIVE);
+        cohort.setPaymentEvery(PaymentInterval.DAY);
+        for (int i = 0; i < COHORT; i++) {
+            Deal deal = acceptDeal(openDeal());
+            if (i == 0) {
+                cohort.setIdFrom(deal.getId());
+            }
+            cohort.setIdTo(deal.getId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareInvocation() {
+        pending = openDeal();
+        period = period.plusDays(1);
+        run = paymentRunService.startRun(PaymentInterval.DAY, period);
+    }
+
+    @Benchmark
+    public Deal createDealForCurrentUser() {
+        return openDeal();
+    }
+
+    @Benchmark
+    public Deal acceptDeal() {
+        return acceptDeal(pending);
+    }
+
+    @Benchmark
+    public int processPayments() {
+        return application.getTransactionTemplate().execute(status ->
+            balanceLogService.processChunk(run, cohort, AccrualMode.ENTITY));
+    }
+
+    private Deal openDeal() {
+        application.authenticate(creditor, AuthoritiesConstants.CREDITOR);
+        return dealService.createDealForCurrentUser(new Deal().startBalance(new BigDecimal("1000.00"))
+            .percent(new BigDecimal("0.05")).term(30).paymentEvery(PaymentInterval.DAY));
+    }
+
+    private Deal acceptDeal(Deal deal) {
+        application.authenticate(debtor, AuthoritiesConstants.DEBTOR, AuthoritiesConstants.SYSTEM);
+        return dealService.acceptDeal(deal);
+    }
+}
@@ -0,0 +1,50 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link DealService#computeSuccessRate}, which needs none of the collaborators of the service.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DealServiceBenchmark {
+
+    @Param({"DAY", "MONTH", "ONE_TIME"})
+    public PaymentInterval paymentEvery;
+
+    private DealService dealService;
+
+    private Deal deal;
+
+    @Setup
+    public void setup() {
+        dealService = new DealService(null, null, null, null, null, null, new ApplicationProperties());
+        deal = new Deal().startBalance(new BigDecimal("5000.00")).percent(new BigDecimal("0.12")).term(90)
+            .paymentEvery(paymentEvery);
+    }
+
+    @Benchmark
+    public int computeSuccessRate() {
+        return dealService.computeSuccessRate(deal);
+    }
+}
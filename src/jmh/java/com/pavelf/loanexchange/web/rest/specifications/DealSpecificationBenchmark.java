@@ -0,0 +1,75 @@
+package com.pavelf.loanexchange.web.rest.specifications;
+
+import com.pavelf.loanexchange.benchmark.BenchmarkApplication;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of building the predicate of a {@link DealSpecification} with every filter set, as the deal search does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DealSpecificationBenchmark {
+
+    private BenchmarkApplication application;
+
+    private EntityManager entityManager;
+
+    private DealSpecification specification;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        application = BenchmarkApplication.start();
+        entityManager = application.getBean(EntityManagerFactory.class).createEntityManager();
+
+        specification = new DealSpecification();
+        specification.setForEmitter(1L);
+        specification.setWithStatus(DealStatus.PENDING);
+        specification.setEndDateIntervalStart(0L);
+        specification.setEndDateIntervalEnd(System.currentTimeMillis());
+        specification.setWithStartBalance(100);
+        specification.setSuccessRate(50);
+        specification.setPaymentEvery(PaymentInterval.DAY);
+        specification.setMinTerm(10);
+        specification.setOnlyAvailableToDebtor(2L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManager.close();
+        application.close();
+    }
+
+    @Benchmark
+    public Predicate toPredicate() {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Deal> query = cb.createQuery(Deal.class);
+        Root<Deal> root = query.from(Deal.class);
+        return specification.toPredicate(root, query, cb);
+    }
+}
@@ -0,0 +1,115 @@
+package com.pavelf.loanexchange.aop.retry;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Aspect retrying methods annotated with {@link RetryOnConcurrencyFailure}.
+ * <p>
+ * It runs outside of the transaction interceptor, so every attempt is a new transaction. Attempts are separated by
+ * a random backoff up to an exponentially growing bound ("full jitter"), so racing transactions do not collide again
+ * at the same moment. Failures recognized are Spring's {@link ConcurrencyFailureException} hierarchy and SQLSTATE
+ * 40001 (serialization failure) or 40P01 (deadlock) anywhere in the cause chain, which is how Postgres reports
+ * a conflict detected at commit.
+ */
+@Aspect
+public class ConcurrencyRetryAspect implements Ordered {
+
+    private static final String SERIALIZATION_FAILURE = "40001";
+
+    private static final String DEADLOCK_DETECTED = "40P01";
+
+    private final Logger log = LoggerFactory.getLogger(ConcurrencyRetryAspect.class);
+
+    private final ApplicationProperties.Retry properties;
+
+    private final MeterRegistry meterRegistry;
+
+    public ConcurrencyRetryAspect(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getRetry();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs before the transaction interceptor, whose order is {@link Ordered#LOWEST_PRECEDENCE}.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 1;
+    }
+
+    @Around("@annotation(com.pavelf.loanexchange.aop.retry.RetryOnConcurrencyFailure)")
+    public Object retryOnConcurrencyFailure(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+
+        final String method = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." +
+            joinPoint.getSignature().getName();
+        final int maxAttempts = Math.max(properties.getMaxAttempts(), 1);
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Object result = joinPoint.proceed();
+                count(method, attempt == 1 ? "success" : "success_after_retry");
+                return result;
+            } catch (RuntimeException e) {
+                if (!isConcurrencyFailure(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    count(method, "exhausted");
+                    log.warn("{} failed on concurrency after {} attempts: {}", method, attempt, e.getMessage());
+                    throw e instanceof ConcurrencyFailureException ? e
+                        : new CannotSerializeTransactionException(e.getMessage(), e);
+                }
+                count(method, "retry");
+                long backoff = backoffMillis(attempt);
+                log.debug("{} failed on concurrency on attempt {}, retrying in {} ms: {}", method, attempt, backoff,
+                    e.getMessage());
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    private long backoffMillis(int attempt) {
+        long bound = Math.min(properties.getMaxBackoffMillis(),
+            properties.getInitialBackoffMillis() << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    private void count(String method, String outcome) {
+        meterRegistry.counter("loanexchange.transaction.attempts", "method", method, "outcome", outcome).increment();
+    }
+
+    static boolean isConcurrencyFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConcurrencyFailureException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if (SERIALIZATION_FAILURE.equals(sqlState) || DEADLOCK_DETECTED.equals(sqlState)) {
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,20 @@
+package com.pavelf.loanexchange.aop.retry;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Re-executes the annotated transactional method when its transaction fails with a serialization failure
+ * or a deadlock, see {@link ConcurrencyRetryAspect}.
+ * <p>
+ * The method must start its own transaction: when it joins a transaction that is already running,
+ * the failure is left to the caller, as only the outermost transaction can be retried.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RetryOnConcurrencyFailure {
+}
@@ -2,6 +2,9 @@ package com.pavelf.loanexchange.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Properties specific to Loan Exchange Backend.
  * <p>
@@ -11,4 +14,538 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
 
+    private final Payments payments = new Payments();
+
+    private final Retry retry = new Retry();
+
+    private final Deals deals = new Deals();
+
+    private final Cache cache = new Cache();
+
+    private final Security security = new Security();
+
+    private final Notifications notifications = new Notifications();
+
+    public Payments getPayments() {
+        return payments;
+    }
+
+    public Deals getDeals() {
+        return deals;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Security getSecurity() {
+        return security;
+    }
+
+    public Notifications getNotifications() {
+        return notifications;
+    }
+
+    public static class Payments {
+
+        /**
+         * How the ledger rows of a payment run are written.
+         */
+        public enum AccrualMode {
+            /** One {@code BalanceLog} entity per ledger row. */
+            ENTITY,
+            /** A few set-based statements per chunk, see {@code BulkAccrualService}. */
+            BULK
+        }
+
+        private AccrualMode accrualMode = AccrualMode.ENTITY;
+
+        /**
+         * Most deals charged in one chunk transaction.
+         */
+        private int chunkSize = 500;
+
+        private int workerPoolSize = 4;
+
+        private int maxChunkRetries = 3;
+
+        public AccrualMode getAccrualMode() {
+            return accrualMode;
+        }
+
+        public void setAccrualMode(AccrualMode accrualMode) {
+            this.accrualMode = accrualMode;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getWorkerPoolSize() {
+            return workerPoolSize;
+        }
+
+        public void setWorkerPoolSize(int workerPoolSize) {
+            this.workerPoolSize = workerPoolSize;
+        }
+
+        public int getMaxChunkRetries() {
+            return maxChunkRetries;
+        }
+
+        public void setMaxChunkRetries(int maxChunkRetries) {
+            this.maxChunkRetries = maxChunkRetries;
+        }
+    }
+
+    public static class Deals {
+
+        /**
+         * How concurrent acceptances of deals are kept apart.
+         */
+        public enum AcceptanceLocking {
+            /** The whole acceptance runs at SERIALIZABLE isolation. */
+            SERIALIZABLE,
+            /** READ COMMITTED with {@code SELECT ... FOR UPDATE} on the deal and the debtor's account balance. */
+            PESSIMISTIC
+        }
+
+        private AcceptanceLocking acceptanceLocking = AcceptanceLocking.SERIALIZABLE;
+
+        private final OrderBook orderBook = new OrderBook();
+
+        public AcceptanceLocking getAcceptanceLocking() {
+            return acceptanceLocking;
+        }
+
+        public void setAcceptanceLocking(AcceptanceLocking acceptanceLocking) {
+            this.acceptanceLocking = acceptanceLocking;
+        }
+
+        public OrderBook getOrderBook() {
+            return orderBook;
+        }
+
+        public static class OrderBook {
+
+            /**
+             * Whether the pending deals are browsed from the in-memory order book instead of the database.
+             */
+            private boolean enabled = true;
+
+            /**
+             * How often the order book is rebuilt from the database, which bounds how long the changes made
+             * outside {@code DealService} on this node take to show.
+             */
+            private long rebuildIntervalMillis = 60000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getRebuildIntervalMillis() {
+                return rebuildIntervalMillis;
+            }
+
+            public void setRebuildIntervalMillis(long rebuildIntervalMillis) {
+                this.rebuildIntervalMillis = rebuildIntervalMillis;
+            }
+        }
+    }
+
+    public static class Retry {
+
+        private int maxAttempts = 4;
+
+        private long initialBackoffMillis = 20;
+
+        private long maxBackoffMillis = 500;
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public long getInitialBackoffMillis() {
+            return initialBackoffMillis;
+        }
+
+        public void setInitialBackoffMillis(long initialBackoffMillis) {
+            this.initialBackoffMillis = initialBackoffMillis;
+        }
+
+        public long getMaxBackoffMillis() {
+            return maxBackoffMillis;
+        }
+
+        public void setMaxBackoffMillis(long maxBackoffMillis) {
+            this.maxBackoffMillis = maxBackoffMillis;
+        }
+    }
+
+    public static class Cache {
+
+        /**
+         * Settings of the cache regions by region key, see {@code CacheConfiguration} for the keys. Settings left out
+         * fall back to {@code jhipster.cache.ehcache}.
+         */
+        private Map<String, Region> regions = new LinkedHashMap<>();
+
+        private final Invalidation invalidation = new Invalidation();
+
+        public Map<String, Region> getRegions() {
+            return regions;
+        }
+
+        public void setRegions(Map<String, Region> regions) {
+            this.regions = regions;
+        }
+
+        public Invalidation getInvalidation() {
+            return invalidation;
+        }
+
+        public static class Region {
+
+            private boolean enabled = true;
+
+            private Long maxEntries;
+
+            private Long timeToLiveSeconds;
+
+            /**
+             * Size of the off-heap tier below the heap tier, 0 for none. Off-heap entries are serialized and
+             * count against {@code -XX:MaxDirectMemorySize}.
+             */
+            private long offHeapMegabytes;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public Long getMaxEntries() {
+                return maxEntries;
+            }
+
+            public void setMaxEntries(Long maxEntries) {
+                this.maxEntries = maxEntries;
+            }
+
+            public Long getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(Long timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public long getOffHeapMegabytes() {
+                return offHeapMegabytes;
+            }
+
+            public void setOffHeapMegabytes(long offHeapMegabytes) {
+                this.offHeapMegabytes = offHeapMegabytes;
+            }
+        }
+
+        public static class Invalidation {
+
+            /**
+             * How the cache invalidations of a node reach the other nodes.
+             */
+            public enum Transport {
+                /** Back to this node only, for a single node and for tests. */
+                LOOPBACK,
+                /** Through the {@code cache_invalidation} table, polled by every node. */
+                JDBC
+            }
+
+            private Transport transport = Transport.LOOPBACK;
+
+            private long pollIntervalMillis = 1000;
+
+            private long purgeIntervalMillis = 600000;
+
+            /**
+             * How long an id skipped by the polls is waited for. Must be longer than the longest transaction writing
+             * cached data, as an invalidation takes its id when written and is seen once its transaction commits.
+             */
+            private int windowSeconds = 60;
+
+            public Transport getTransport() {
+                return transport;
+            }
+
+            public void setTransport(Transport transport) {
+                this.transport = transport;
+            }
+
+            public long getPollIntervalMillis() {
+                return pollIntervalMillis;
+            }
+
+            public void setPollIntervalMillis(long pollIntervalMillis) {
+                this.pollIntervalMillis = pollIntervalMillis;
+            }
+
+            public long getPurgeIntervalMillis() {
+                return purgeIntervalMillis;
+            }
+
+            public void setPurgeIntervalMillis(long purgeIntervalMillis) {
+                this.purgeIntervalMillis = purgeIntervalMillis;
+            }
+
+            public int getWindowSeconds() {
+                return windowSeconds;
+            }
+
+            public void setWindowSeconds(int windowSeconds) {
+                this.windowSeconds = windowSeconds;
+            }
+        }
+    }
+
+    public static class Security {
+
+        private final Revocation revocation = new Revocation();
+
+        public Revocation getRevocation() {
+            return revocation;
+        }
+
+        public static class Revocation {
+
+            /**
+             * How many revoked, unexpired tokens the in-memory filter is sized for; more only raise its false
+             * positives, which cost a lookup in the exact set.
+             */
+            private int expectedTokens = 100000;
+
+            private long pollIntervalMillis = 5000;
+
+            /**
+             * How far behind the newest revocation seen each poll looks again. Must be longer than the longest
+             * transaction revoking tokens, as a revocation is stamped when its transaction starts.
+             */
+            private int windowSeconds = 60;
+
+            private long purgeIntervalMillis = 3600000;
+
+            public int getExpectedTokens() {
+                return expectedTokens;
+            }
+
+            public void setExpectedTokens(int expectedTokens) {
+                this.expectedTokens = expectedTokens;
+            }
+
+            public long getPollIntervalMillis() {
+                return pollIntervalMillis;
+            }
+
+            public void setPollIntervalMillis(long pollIntervalMillis) {
+                this.pollIntervalMillis = pollIntervalMillis;
+            }
+
+            public int getWindowSeconds() {
+                return windowSeconds;
+            }
+
+            public void setWindowSeconds(int windowSeconds) {
+                this.windowSeconds = windowSeconds;
+            }
+
+            public long getPurgeIntervalMillis() {
+                return purgeIntervalMillis;
+            }
+
+            public void setPurgeIntervalMillis(long purgeIntervalMillis) {
+                this.purgeIntervalMillis = purgeIntervalMillis;
+            }
+        }
+    }
+
+    public static class Notifications {
+
+        /**
+         * Notifications waiting to be written; when full, the committing thread waits for room, then writes a batch
+         * itself.
+         */
+        private int queueCapacity = 10000;
+
+        private int batchSize = 100;
+
+        /**
+         * How long a committing thread waits for room in the full queue.
+         */
+        private long offerTimeoutMillis = 50;
+
+        /**
+         * How long the shutdown waits for the writer to drain the queue.
+         */
+        private long shutdownTimeoutMillis = 10000;
+
+        private final Stream stream = new Stream();
+
+        private final Unread unread = new Unread();
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getOfferTimeoutMillis() {
+            return offerTimeoutMillis;
+        }
+
+        public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+            this.offerTimeoutMillis = offerTimeoutMillis;
+        }
+
+        public long getShutdownTimeoutMillis() {
+            return shutdownTimeoutMillis;
+        }
+
+        public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+            this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        }
+
+        public Stream getStream() {
+            return stream;
+        }
+
+        public Unread getUnread() {
+            return unread;
+        }
+
+        public static class Stream {
+
+            /**
+             * Shards of the connections, each delivering to its users in order on one thread.
+             */
+            private int shards = 4;
+
+            /**
+             * Deliveries waiting in a shard; when full, the notification reaches the client on its next reconnect.
+             */
+            private int shardQueueCapacity = 10000;
+
+            /**
+             * How long a connection stays open before the client has to reconnect.
+             */
+            private long timeoutMillis = 1800000;
+
+            /**
+             * Most notifications sent again to a client reconnecting with a {@code Last-Event-ID}.
+             */
+            private int replayLimit = 100;
+
+            /**
+             * How often the idle connections get a comment, so proxies keep them and dead ones are found.
+             */
+            private long heartbeatIntervalMillis = 30000;
+
+            /**
+             * How long a ticket opening a stream may wait for its single use.
+             */
+            private int ticketTimeToLiveSeconds = 30;
+
+            public int getShards() {
+                return shards;
+            }
+
+            public void setShards(int shards) {
+                this.shards = shards;
+            }
+
+            public int getShardQueueCapacity() {
+                return shardQueueCapacity;
+            }
+
+            public void setShardQueueCapacity(int shardQueueCapacity) {
+                this.shardQueueCapacity = shardQueueCapacity;
+            }
+
+            public long getTimeoutMillis() {
+                return timeoutMillis;
+            }
+
+            public void setTimeoutMillis(long timeoutMillis) {
+                this.timeoutMillis = timeoutMillis;
+            }
+
+            public int getReplayLimit() {
+                return replayLimit;
+            }
+
+            public void setReplayLimit(int replayLimit) {
+                this.replayLimit = replayLimit;
+            }
+
+            public long getHeartbeatIntervalMillis() {
+                return heartbeatIntervalMillis;
+            }
+
+            public void setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+                this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+            }
+
+            public int getTicketTimeToLiveSeconds() {
+                return ticketTimeToLiveSeconds;
+            }
+
+            public void setTicketTimeToLiveSeconds(int ticketTimeToLiveSeconds) {
+                this.ticketTimeToLiveSeconds = ticketTimeToLiveSeconds;
+            }
+        }
+
+        public static class Unread {
+
+            /**
+             * How long an unread count is served from memory before it is counted again, which bounds how long the
+             * notifications written on the other nodes take to show. The counts kept are bounded by the
+             * {@code unread-notifications} cache region.
+             */
+            private long timeToLiveSeconds = 300;
+
+            public long getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+        }
+    }
 }
@@ -24,8 +24,12 @@ public class AsyncConfiguration implements AsyncConfigurer {
 
     private final TaskExecutionProperties taskExecutionProperties;
 
-    public AsyncConfiguration(TaskExecutionProperties taskExecutionProperties) {
+    private final ApplicationProperties applicationProperties;
+
+    public AsyncConfiguration(TaskExecutionProperties taskExecutionProperties,
+                              ApplicationProperties applicationProperties) {
         this.taskExecutionProperties = taskExecutionProperties;
+        this.applicationProperties = applicationProperties;
     }
 
     @Override
@@ -40,6 +44,41 @@ public class AsyncConfiguration implements AsyncConfigurer {
         return new ExceptionHandlingAsyncTaskExecutor(executor);
     }
 
+    @Bean(name = "interestChargingExecutor")
+    public ThreadPoolTaskExecutor interestChargingExecutor() {
+        log.debug("Creating Interest Charging Task Executor");
+        int poolSize = applicationProperties.getPayments().getWorkerPoolSize();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setThreadNamePrefix("loan-exchange-backend-interest-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    @Bean(name = "notificationWriterExecutor")
+    public ThreadPoolTaskExecutor notificationWriterExecutor() {
+        log.debug("Creating Notification Writer Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("loan-exchange-backend-notification-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    @Bean(name = "notificationStreamExecutor")
+    public ThreadPoolTaskExecutor notificationStreamExecutor() {
+        log.debug("Creating Notification Stream Task Executor");
+        // one thread per shard of the hub, which never has more than one delivery task per shard
+        int poolSize = applicationProperties.getNotifications().getStream().getShards();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setThreadNamePrefix("loan-exchange-backend-stream-");
+        return executor;
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
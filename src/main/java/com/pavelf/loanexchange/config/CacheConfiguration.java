@@ -1,13 +1,26 @@
 package com.pavelf.loanexchange.config;
 
 import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.ehcache.config.builders.*;
+import org.ehcache.config.units.MemoryUnit;
 import org.ehcache.jsr107.Eh107Configuration;
 
+import com.pavelf.loanexchange.config.cache.CacheInvalidationBus;
+import com.pavelf.loanexchange.config.cache.JdbcCacheInvalidationBus;
+import com.pavelf.loanexchange.config.cache.LoopbackCacheInvalidationBus;
+
 import org.hibernate.cache.jcache.ConfigSettings;
 import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.cache.JCacheManagerCustomizer;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.cache.annotation.EnableCaching;
@@ -15,22 +28,64 @@ import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.client.serviceregistry.Registration;
 import org.springframework.context.annotation.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
 
+/**
+ * Ehcache regions of the second-level cache, of the Spring caches and of the caches of the services keeping results
+ * in memory, each sized by its own entry of {@code application.cache.regions}.
+ * <p>
+ * Statistics are enabled on every region, so the cache meters bound by Spring Boot to the
+ * {@code cache.gets}, {@code cache.puts}, {@code cache.evictions} and {@code cache.removals} metrics report the
+ * hits, misses and evictions of each region. A region turned off by its {@code enabled} setting stores nothing and
+ * keeps no statistics, and reports 0 on {@code loanexchange.cache.enabled}.
+ * <p>
+ * The regions live in the heap of each node, so the changes of cached data are carried to the other nodes by the
+ * {@link CacheInvalidationBus} picked by {@code application.cache.invalidation.transport}.
+ */
 @Configuration
 @EnableCaching
 public class CacheConfiguration {
 
-    private final javax.cache.configuration.Configuration<Object, Object> jcacheConfiguration;
+    private final Logger log = LoggerFactory.getLogger(CacheConfiguration.class);
 
-    public CacheConfiguration(JHipsterProperties jHipsterProperties) {
-        JHipsterProperties.Cache.Ehcache ehcache =
-            jHipsterProperties.getCache().getEhcache();
+    /**
+     * Cache names by the key of their region in {@code application.cache.regions}.
+     */
+    static final Map<String, String> REGIONS;
 
-        jcacheConfiguration = Eh107Configuration.fromEhcacheCacheConfiguration(
-            CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
-                ResourcePoolsBuilder.heap(ehcache.getMaxEntries()))
-                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ehcache.getTimeToLiveSeconds())))
-                .build());
+    static {
+        Map<String, String> regions = new LinkedHashMap<>();
+        regions.put("users-by-login", com.pavelf.loanexchange.repository.UserRepository.USERS_BY_LOGIN_CACHE);
+        regions.put("users-by-email", com.pavelf.loanexchange.repository.UserRepository.USERS_BY_EMAIL_CACHE);
+        regions.put("user", com.pavelf.loanexchange.domain.User.class.getName());
+        regions.put("authority", com.pavelf.loanexchange.domain.Authority.class.getName());
+        regions.put("user-authorities", com.pavelf.loanexchange.domain.User.class.getName() + ".authorities");
+        regions.put("deal", com.pavelf.loanexchange.domain.Deal.class.getName());
+        regions.put("notification", com.pavelf.loanexchange.domain.Notification.class.getName());
+        regions.put("token-authentications",
+            com.pavelf.loanexchange.security.jwt.TokenAuthenticationCache.TOKEN_AUTHENTICATIONS_CACHE);
+        regions.put("unread-notifications",
+            com.pavelf.loanexchange.service.UnreadNotificationCounter.UNREAD_COUNTS_CACHE);
+        // jhipster-needle-ehcache-add-entry
+        REGIONS = Collections.unmodifiableMap(regions);
+    }
+
+    private final JHipsterProperties.Cache.Ehcache defaults;
+
+    private final Map<String, ApplicationProperties.Cache.Region> regions;
+
+    private final ApplicationProperties.Cache.Invalidation invalidation;
+
+    public CacheConfiguration(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
+        this.defaults = jHipsterProperties.getCache().getEhcache();
+        this.regions = applicationProperties.getCache().getRegions();
+        this.invalidation = applicationProperties.getCache().getInvalidation();
+
+        regions.keySet().stream().filter(key -> !REGIONS.containsKey(key)).findFirst().ifPresent(key -> {
+            throw new IllegalArgumentException("Unknown cache region application.cache.regions." + key +
+                ", known regions are " + REGIONS.keySet());
+        });
     }
 
     @Bean
@@ -39,25 +94,94 @@ public class CacheConfiguration {
     }
 
     @Bean
-    public JCacheManagerCustomizer cacheManagerCustomizer() {
-        return cm -> {
-            createCache(cm, com.pavelf.loanexchange.repository.UserRepository.USERS_BY_LOGIN_CACHE);
-            createCache(cm, com.pavelf.loanexchange.repository.UserRepository.USERS_BY_EMAIL_CACHE);
-            createCache(cm, com.pavelf.loanexchange.domain.User.class.getName());
-            createCache(cm, com.pavelf.loanexchange.domain.Authority.class.getName());
-            createCache(cm, com.pavelf.loanexchange.domain.User.class.getName() + ".authorities");
-            createCache(cm, com.pavelf.loanexchange.domain.Deal.class.getName());
-            createCache(cm, com.pavelf.loanexchange.domain.BalanceLog.class.getName());
-            createCache(cm, com.pavelf.loanexchange.domain.Notification.class.getName());
-            // jhipster-needle-ehcache-add-entry
-        };
-    }
-
-    private void createCache(javax.cache.CacheManager cm, String cacheName) {
+    public JCacheManagerCustomizer cacheManagerCustomizer(MeterRegistry meterRegistry) {
+        return cm -> REGIONS.forEach((key, cacheName) -> {
+            boolean enabled = regionOf(key).isEnabled();
+            if (enabled) {
+                createCache(cm, cacheName, configurationOf(key));
+            } else {
+                log.info("Cache {} is disabled by application.cache.regions.{}.enabled, it stores nothing",
+                    cacheName, key);
+                createCache(cm, cacheName, storingNothing());
+            }
+            // statistics would count every read of a disabled region as a miss
+            cm.enableStatistics(cacheName, enabled);
+            Gauge.builder("loanexchange.cache.enabled", () -> enabled ? 1 : 0)
+                .description("Whether the cache region stores entries, 0 when disabled by its settings")
+                .tag("cache", cacheName)
+                .tag("region", key)
+                .register(meterRegistry);
+        });
+    }
+
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(JdbcTemplate jdbcTemplate,
+                                                     PlatformTransactionManager transactionManager,
+                                                     @Value("${spring.jpa.database}") String database) {
+        switch (invalidation.getTransport()) {
+            case JDBC:
+                return new JdbcCacheInvalidationBus(jdbcTemplate, transactionManager, database,
+                    invalidation.getWindowSeconds());
+            default:
+                return new LoopbackCacheInvalidationBus();
+        }
+    }
+
+    private ApplicationProperties.Cache.Region regionOf(String key) {
+        return regions.getOrDefault(key, new ApplicationProperties.Cache.Region());
+    }
+
+    private javax.cache.configuration.Configuration<Object, Object> configurationOf(String key) {
+        ApplicationProperties.Cache.Region region = regionOf(key);
+
+        long maxEntries = region.getMaxEntries() != null ? region.getMaxEntries() : defaults.getMaxEntries();
+        long timeToLiveSeconds = region.getTimeToLiveSeconds() != null ? region.getTimeToLiveSeconds()
+            : defaults.getTimeToLiveSeconds();
+        return boundedConfiguration(maxEntries, timeToLiveSeconds, region.getOffHeapMegabytes());
+    }
+
+    /**
+     * The configuration of a region keeping {@code maxEntries} in the heap, above which the least recently used of a
+     * sample of entries is evicted, each for {@code timeToLiveSeconds} after it was last written.
+     *
+     * @param maxEntries the entries kept in the heap.
+     * @param timeToLiveSeconds how long an entry is kept.
+     * @param offHeapMegabytes the size of the off-heap tier below the heap, 0 for none.
+     * @return the configuration.
+     */
+    public static javax.cache.configuration.Configuration<Object, Object> boundedConfiguration(
+        long maxEntries, long timeToLiveSeconds, long offHeapMegabytes) {
+        ResourcePoolsBuilder resourcePools = ResourcePoolsBuilder.heap(maxEntries);
+        if (offHeapMegabytes > 0) {
+            resourcePools = resourcePools.offheap(offHeapMegabytes, MemoryUnit.MB);
+        }
+
+        return Eh107Configuration.fromEhcacheCacheConfiguration(
+            CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class, resourcePools)
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(timeToLiveSeconds)))
+                .build());
+    }
+
+    /**
+     * The configuration of a disabled region, which still has to exist for the entities and the Spring caches
+     * naming it: an entry expiring as soon as it is created is never stored, so every read goes to the database.
+     *
+     * @return the configuration.
+     */
+    public static javax.cache.configuration.Configuration<Object, Object> storingNothing() {
+        return Eh107Configuration.fromEhcacheCacheConfiguration(
+            CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                ResourcePoolsBuilder.heap(1))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ZERO))
+                .build());
+    }
+
+    private void createCache(javax.cache.CacheManager cm, String cacheName,
+                             javax.cache.configuration.Configuration<Object, Object> configuration) {
         javax.cache.Cache<Object, Object> cache = cm.getCache(cacheName);
         if (cache != null) {
             cm.destroyCache(cacheName);
         }
-        cm.createCache(cacheName, jcacheConfiguration);
+        cm.createCache(cacheName, configuration);
     }
 }
@@ -0,0 +1,19 @@
+package com.pavelf.loanexchange.config;
+
+import com.pavelf.loanexchange.aop.retry.ConcurrencyRetryAspect;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+@Configuration
+@EnableAspectJAutoProxy
+public class RetryAspectConfiguration {
+
+    @Bean
+    public ConcurrencyRetryAspect concurrencyRetryAspect(ApplicationProperties applicationProperties,
+                                                         MeterRegistry meterRegistry) {
+        return new ConcurrencyRetryAspect(applicationProperties, meterRegistry);
+    }
+}
@@ -25,13 +25,17 @@ import org.zalando.problem.spring.web.advice.security.SecurityProblemSupport;
 @Import(SecurityProblemSupport.class)
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
-    private final TokenProvider tokenProvider;
+    private final TokenAuthenticationCache tokenAuthenticationCache;
+
+    private final StreamTicketStore streamTicketStore;
 
     private final CorsFilter corsFilter;
     private final SecurityProblemSupport problemSupport;
 
-    public SecurityConfiguration(TokenProvider tokenProvider, CorsFilter corsFilter, SecurityProblemSupport problemSupport) {
-        this.tokenProvider = tokenProvider;
+    public SecurityConfiguration(TokenAuthenticationCache tokenAuthenticationCache, StreamTicketStore streamTicketStore,
+                                 CorsFilter corsFilter, SecurityProblemSupport problemSupport) {
+        this.tokenAuthenticationCache = tokenAuthenticationCache;
+        this.streamTicketStore = streamTicketStore;
         this.corsFilter = corsFilter;
         this.problemSupport = problemSupport;
     }
@@ -88,6 +92,6 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     }
 
     private JWTConfigurer securityConfigurerAdapter() {
-        return new JWTConfigurer(tokenProvider);
+        return new JWTConfigurer(tokenAuthenticationCache, streamTicketStore);
     }
 }
@@ -0,0 +1,72 @@
+package com.pavelf.loanexchange.config.cache;
+
+import java.util.Objects;
+
+/**
+ * An entry, or all the entries, of one cache region to drop on the other nodes.
+ * <p>
+ * The region is an entity name, a collection role or the name of a Spring cache; the key is the entity id, the
+ * collection owner id or the Spring cache key, as a string.
+ */
+public final class CacheInvalidation {
+
+    private final String region;
+
+    private final String key;
+
+    private CacheInvalidation(String region, String key) {
+        this.region = Objects.requireNonNull(region);
+        this.key = key;
+    }
+
+    public static CacheInvalidation evict(String region, Object key) {
+        return new CacheInvalidation(region, String.valueOf(Objects.requireNonNull(key)));
+    }
+
+    public static CacheInvalidation clear(String region) {
+        return new CacheInvalidation(region, null);
+    }
+
+    /**
+     * Recreates an invalidation read back from a transport.
+     */
+    public static CacheInvalidation of(String region, String key) {
+        return new CacheInvalidation(region, key);
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return the key of the entry, or {@code null} to drop the whole region.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheInvalidation)) {
+            return false;
+        }
+        CacheInvalidation other = (CacheInvalidation) o;
+        return region.equals(other.region) && Objects.equals(key, other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(region, key);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheInvalidation{" +
+            "region='" + region + "'" +
+            ", key='" + key + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,24 @@
+package com.pavelf.loanexchange.config.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries the cache invalidations of this node to the other nodes of the deployment, which all run the same
+ * second-level and Spring caches in their own heap.
+ * <p>
+ * {@link #publish} is called from within the transaction writing the cached data, and an implementation delivers
+ * the invalidation only once that transaction commits, so a peer can never reload the data it drops before the
+ * change is visible.
+ */
+public interface CacheInvalidationBus {
+
+    void publish(CacheInvalidation invalidation);
+
+    /**
+     * Registers a subscriber for the invalidations published by the other nodes. It is called on a thread of the
+     * bus and must not block.
+     */
+    void subscribe(Consumer<CacheInvalidation> subscriber);
+
+    void unsubscribe(Consumer<CacheInvalidation> subscriber);
+}
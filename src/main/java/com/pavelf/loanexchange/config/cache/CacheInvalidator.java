@@ -0,0 +1,115 @@
+package com.pavelf.loanexchange.config.cache;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.SingleColumnType;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the caches of this node in step with the other nodes: publishes the changes of cached entities to the
+ * {@link CacheInvalidationBus}, and drops the entries the other nodes invalidate from the second-level and Spring
+ * caches of this node.
+ */
+@Component
+public class CacheInvalidator {
+
+    private final Logger log = LoggerFactory.getLogger(CacheInvalidator.class);
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final CacheManager cacheManager;
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    private final Consumer<CacheInvalidation> subscriber = this::invalidate;
+
+    public CacheInvalidator(EntityManagerFactory entityManagerFactory, CacheManager cacheManager,
+                            CacheInvalidationBus cacheInvalidationBus) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.cacheManager = cacheManager;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+    }
+
+    @PostConstruct
+    public void register() {
+        EntityCacheInvalidationListener listener = new EntityCacheInvalidationListener(cacheInvalidationBus);
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        cacheInvalidationBus.subscribe(subscriber);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheInvalidationBus.unsubscribe(subscriber);
+    }
+
+    /**
+     * Drops the entry, or the whole region, of the invalidation from the caches of this node.
+     */
+    public void invalidate(CacheInvalidation invalidation) {
+        try {
+            String region = invalidation.getRegion();
+            MetamodelImplementor metamodel = sessionFactory.getMetamodel();
+            EntityPersister entityPersister = metamodel.entityPersisters().get(region);
+            CollectionPersister collectionPersister = metamodel.collectionPersisters().get(region);
+
+            if (entityPersister != null) {
+                Serializable id = keyOf(invalidation, entityPersister.getIdentifierType());
+                if (id == null) {
+                    sessionFactory.getCache().evictEntityData(region);
+                } else {
+                    sessionFactory.getCache().evictEntityData(region, id);
+                }
+            } else if (collectionPersister != null) {
+                Serializable ownerId = keyOf(invalidation, collectionPersister.getKeyType());
+                if (ownerId == null) {
+                    sessionFactory.getCache().evictCollectionData(region);
+                } else {
+                    sessionFactory.getCache().evictCollectionData(region, ownerId);
+                }
+            } else {
+                Cache cache = cacheManager.getCache(region);
+                if (cache == null) {
+                    log.debug("Ignoring the invalidation of unknown cache region {}", region);
+                } else if (invalidation.getKey() == null) {
+                    cache.clear();
+                } else {
+                    cache.evict(invalidation.getKey());
+                }
+            }
+        } catch (RuntimeException e) {
+            // a peer must keep polling whatever one invalidation does, the time to live still bounds the staleness
+            log.warn("Could not apply {}: {}", invalidation, e.toString());
+        }
+    }
+
+    /**
+     * The key parsed back to the identifier type, or {@code null} to drop the whole region, also when the type has
+     * no string form.
+     */
+    private static Serializable keyOf(CacheInvalidation invalidation, Type type) {
+        if (invalidation.getKey() == null || !(type instanceof SingleColumnType)) {
+            return null;
+        }
+        return (Serializable) ((SingleColumnType<?>) type).fromStringValue(invalidation.getKey());
+    }
+}
@@ -0,0 +1,73 @@
+package com.pavelf.loanexchange.config.cache;
+
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Publishes the updates and deletions of cached entities and collections, as they are flushed, to the
+ * {@link CacheInvalidationBus}. Inserted entities are not published, no node can have cached them yet.
+ */
+class EntityCacheInvalidationListener implements PostUpdateEventListener, PostDeleteEventListener,
+    PostCollectionUpdateEventListener, PostCollectionRemoveEventListener, PostCollectionRecreateEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient CacheInvalidationBus cacheInvalidationBus;
+
+    EntityCacheInvalidationListener(CacheInvalidationBus cacheInvalidationBus) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getPersister().hasCache()) {
+            cacheInvalidationBus.publish(CacheInvalidation.evict(event.getPersister().getEntityName(), event.getId()));
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getPersister().hasCache()) {
+            cacheInvalidationBus.publish(CacheInvalidation.evict(event.getPersister().getEntityName(), event.getId()));
+        }
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        publish(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        publish(event);
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        publish(event);
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void publish(AbstractCollectionEvent event) {
+        String role = event.getCollection().getRole();
+        CollectionPersister persister = event.getSession().getFactory().getMetamodel().collectionPersister(role);
+        if (persister.hasCache() && event.getAffectedOwnerIdOrNull() != null) {
+            cacheInvalidationBus.publish(CacheInvalidation.evict(role, event.getAffectedOwnerIdOrNull()));
+        }
+    }
+}
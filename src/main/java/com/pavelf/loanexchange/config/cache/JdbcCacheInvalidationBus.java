@@ -0,0 +1,176 @@
+package com.pavelf.loanexchange.config.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link CacheInvalidationBus} writing the invalidations to the {@code cache_invalidation} table, which every node
+ * polls for the rows of the other nodes. It needs nothing but the database the nodes already share.
+ * <p>
+ * The row is inserted in the transaction publishing it, so it shows up exactly when the change does. Each row takes
+ * the next id of {@code cache_invalidation_sequence} and each node reads the ids above the highest one it has seen.
+ * Rows commit out of the order of their ids, so an id skipped by a poll is kept as a gap and read again by the next
+ * polls, until its row shows up or for {@code application.cache.invalidation.window-seconds}, after which its
+ * transaction is taken for rolled back.
+ * <p>
+ * Rows are stamped with the time they are written, the clock of PostgreSQL rather than the start of the transaction,
+ * and deleted by a purge of their own once older than twice the window.
+ */
+public class JdbcCacheInvalidationBus implements CacheInvalidationBus {
+
+    /**
+     * Most gaps kept, so a jump of the sequence does not turn into as many gaps. A node starting takes the ids just
+     * below the next one for gaps, so it also receives the invalidations in flight while it starts.
+     */
+    static final int MAX_GAPS = 1000;
+
+    /**
+     * Dialect specific expressions of the next id and of the time a row is written.
+     */
+    private enum Dialect {
+        POSTGRESQL("nextval('cache_invalidation_sequence')", "clock_timestamp()"),
+        H2("NEXT VALUE FOR cache_invalidation_sequence", "CURRENT_TIMESTAMP");
+
+        private final String nextId;
+
+        private final String now;
+
+        Dialect(String nextId, String now) {
+            this.nextId = nextId;
+            this.now = now;
+        }
+    }
+
+    private final Logger log = LoggerFactory.getLogger(JdbcCacheInvalidationBus.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate purgeTransaction;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final String nextIdSql;
+
+    private final String publishSql;
+
+    private final String purgeSql;
+
+    private final long windowMillis;
+
+    private final List<Consumer<CacheInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The highest id read, {@code -1} until the first poll.
+     */
+    private long watermark = -1;
+
+    /**
+     * The ids below the watermark whose rows were not read yet, with the time they were skipped.
+     */
+    private final NavigableMap<Long, Long> gaps = new TreeMap<>();
+
+    public JdbcCacheInvalidationBus(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                    String database, int windowSeconds) {
+        Dialect dialect = Dialect.valueOf(database.toUpperCase());
+        this.jdbcTemplate = jdbcTemplate;
+        this.purgeTransaction = new TransactionTemplate(transactionManager);
+        this.purgeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.nextIdSql = "SELECT " + dialect.nextId;
+        this.publishSql = "INSERT INTO cache_invalidation (id, node_id, region, cache_key, created_date) " +
+            "VALUES (" + dialect.nextId + ", ?, ?, ?, " + dialect.now + ")";
+        this.purgeSql = "DELETE FROM cache_invalidation " +
+            "WHERE created_date < CURRENT_TIMESTAMP - INTERVAL '" + 2 * windowSeconds + "' SECOND";
+        this.windowMillis = windowSeconds * 1000L;
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        jdbcTemplate.update(publishSql, nodeId, invalidation.getRegion(), invalidation.getKey());
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void unsubscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Delivers the rows of the other nodes committed since the last poll.
+     *
+     * @return the number of invalidations delivered.
+     */
+    @Scheduled(fixedDelayString = "${application.cache.invalidation.poll-interval-millis:1000}")
+    public synchronized int poll() {
+        long now = System.currentTimeMillis();
+        if (watermark < 0) {
+            long next = jdbcTemplate.queryForObject(nextIdSql, Long.class);
+            watermark = next;
+            skip(Math.max(0, next - MAX_GAPS - 1), next, now);
+        }
+
+        int[] count = {0};
+        long from = gaps.isEmpty() ? watermark : gaps.firstKey() - 1;
+        jdbcTemplate.query("SELECT id, node_id, region, cache_key FROM cache_invalidation WHERE id > ? ORDER BY id",
+            (RowCallbackHandler) rs -> {
+                long id = rs.getLong(1);
+                if (id > watermark) {
+                    skip(watermark, id, now);
+                    watermark = id;
+                } else if (gaps.remove(id) == null) {
+                    return;
+                }
+                if (!nodeId.equals(rs.getString(2))) {
+                    CacheInvalidation invalidation = CacheInvalidation.of(rs.getString(3), rs.getString(4));
+                    subscribers.forEach(subscriber -> subscriber.accept(invalidation));
+                    count[0]++;
+                }
+            }, from);
+        gaps.values().removeIf(skipped -> skipped < now - windowMillis);
+
+        if (count[0] > 0) {
+            log.debug("Delivered {} cache invalidations of other nodes", count[0]);
+        }
+        return count[0];
+    }
+
+    /**
+     * Deletes the rows every node is done with: older than twice the window, so past the gaps of any node.
+     *
+     * @return the number of rows deleted.
+     */
+    @Scheduled(fixedDelayString = "${application.cache.invalidation.purge-interval-millis:600000}")
+    public int purge() {
+        int purged = purgeTransaction.execute(status -> jdbcTemplate.update(purgeSql));
+        log.debug("Purged {} cache invalidations", purged);
+        return purged;
+    }
+
+    /**
+     * Keeps the ids between two ids read as gaps, the highest {@value #MAX_GAPS} of them at most.
+     */
+    private void skip(long from, long to, long now) {
+        for (long id = Math.max(from + 1, to - MAX_GAPS); id < to; id++) {
+            gaps.put(id, now);
+        }
+        while (gaps.size() > MAX_GAPS) {
+            gaps.pollFirstEntry();
+        }
+    }
+}
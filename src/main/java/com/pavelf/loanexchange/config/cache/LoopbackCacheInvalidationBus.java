@@ -0,0 +1,48 @@
+package com.pavelf.loanexchange.config.cache;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link CacheInvalidationBus} delivering every invalidation back to the subscribers of this node, as if this node
+ * were its own peer. Enough for a single node, and what the tests run with.
+ */
+public class LoopbackCacheInvalidationBus implements CacheInvalidationBus {
+
+    private final List<Consumer<CacheInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deliver(invalidation);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                    deliver(invalidation);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void unsubscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    private void deliver(CacheInvalidation invalidation) {
+        subscribers.forEach(subscriber -> subscriber.accept(invalidation));
+    }
+}
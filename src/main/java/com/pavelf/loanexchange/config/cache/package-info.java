@@ -0,0 +1,4 @@
+/**
+ * Cache invalidation across the nodes of a deployment.
+ */
+package com.pavelf.loanexchange.config.cache;
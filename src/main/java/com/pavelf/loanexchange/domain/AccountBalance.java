@@ -0,0 +1,92 @@
+package com.pavelf.loanexchange.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Current balance of a {@link User} account, kept in step with the last {@link BalanceLog} written for it.
+ */
+@Entity
+@Table(name = "account_balance")
+public class AccountBalance implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @NotNull
+    @Column(name = "balance", precision = 21, scale = 2, nullable = false)
+    private BigDecimal balance;
+
+    @NotNull
+    @Column(name = "last_log_id", nullable = false)
+    private Long lastLogId;
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public AccountBalance accountId(Long accountId) {
+        this.accountId = accountId;
+        return this;
+    }
+
+    public void setAccountId(Long accountId) {
+        this.accountId = accountId;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public AccountBalance balance(BigDecimal balance) {
+        this.balance = balance;
+        return this;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public Long getLastLogId() {
+        return lastLogId;
+    }
+
+    public AccountBalance lastLogId(Long lastLogId) {
+        this.lastLogId = lastLogId;
+        return this;
+    }
+
+    public void setLastLogId(Long lastLogId) {
+        this.lastLogId = lastLogId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AccountBalance)) {
+            return false;
+        }
+        return accountId != null && accountId.equals(((AccountBalance) o).accountId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountBalance{" +
+            "accountId=" + getAccountId() +
+            ", balance=" + getBalance() +
+            ", lastLogId=" + getLastLogId() +
+            "}";
+    }
+}
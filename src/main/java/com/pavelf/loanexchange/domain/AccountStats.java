@@ -1,23 +1,136 @@
 package com.pavelf.loanexchange.domain;
 
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
 public class AccountStats {
 
-    private Long allTimeIncoming;
-    private Long allTimePaymentForLoan;
+    private BigDecimal allTimeIncoming = BigDecimal.ZERO;
+    private BigDecimal allTimePaymentForLoan = BigDecimal.ZERO;
+    private Map<BalanceLogEvent, BigDecimal> totalsByType = new EnumMap<>(BalanceLogEvent.class);
+    private List<MonthTotals> months = new ArrayList<>();
 
-    public Long getAllTimeIncoming() {
+    /**
+     * Builds the stats from the buckets of an account ordered by period.
+     */
+    public static AccountStats of(List<AccountStatsBucket> buckets) {
+        AccountStats stats = new AccountStats();
+        MonthTotals month = null;
+        for (AccountStatsBucket bucket : buckets) {
+            stats.allTimeIncoming = stats.allTimeIncoming.add(bucket.getIncoming());
+            if (bucket.getType() == BalanceLogEvent.DEAL_PAYMENT) {
+                stats.allTimePaymentForLoan = stats.allTimePaymentForLoan.add(bucket.getNet());
+            }
+            stats.totalsByType.merge(bucket.getType(), bucket.getNet(), BigDecimal::add);
+
+            if (month == null || !month.period.equals(bucket.getPeriod())) {
+                month = new MonthTotals(bucket.getPeriod());
+                stats.months.add(month);
+            }
+            month.incoming = month.incoming.add(bucket.getIncoming());
+            month.outgoing = month.outgoing.add(bucket.getOutgoing());
+            month.totalsByType.put(bucket.getType(), bucket.getNet());
+        }
+        return stats;
+    }
+
+    public BigDecimal getAllTimeIncoming() {
         return allTimeIncoming;
     }
 
-    public void setAllTimeIncoming(Long allTimeIncoming) {
+    public void setAllTimeIncoming(BigDecimal allTimeIncoming) {
         this.allTimeIncoming = allTimeIncoming;
     }
 
-    public Long getAllTimePaymentForLoan() {
+    public BigDecimal getAllTimePaymentForLoan() {
         return allTimePaymentForLoan;
     }
 
-    public void setAllTimePaymentForLoan(Long allTimePaymentForLoan) {
+    public void setAllTimePaymentForLoan(BigDecimal allTimePaymentForLoan) {
         this.allTimePaymentForLoan = allTimePaymentForLoan;
     }
+
+    /**
+     * Net amount changed per event type, all time.
+     */
+    public Map<BalanceLogEvent, BigDecimal> getTotalsByType() {
+        return totalsByType;
+    }
+
+    public void setTotalsByType(Map<BalanceLogEvent, BigDecimal> totalsByType) {
+        this.totalsByType = totalsByType;
+    }
+
+    /**
+     * Totals of every month with an entry, oldest first.
+     */
+    public List<MonthTotals> getMonths() {
+        return months;
+    }
+
+    public void setMonths(List<MonthTotals> months) {
+        this.months = months;
+    }
+
+    /**
+     * Totals of a calendar month (UTC).
+     */
+    public static class MonthTotals {
+
+        private LocalDate period;
+        private BigDecimal incoming = BigDecimal.ZERO;
+        private BigDecimal outgoing = BigDecimal.ZERO;
+        private Map<BalanceLogEvent, BigDecimal> totalsByType = new EnumMap<>(BalanceLogEvent.class);
+
+        public MonthTotals() {
+        }
+
+        public MonthTotals(LocalDate period) {
+            this.period = period;
+        }
+
+        /**
+         * The first day of the month.
+         */
+        public LocalDate getPeriod() {
+            return period;
+        }
+
+        public void setPeriod(LocalDate period) {
+            this.period = period;
+        }
+
+        public BigDecimal getIncoming() {
+            return incoming;
+        }
+
+        public void setIncoming(BigDecimal incoming) {
+            this.incoming = incoming;
+        }
+
+        public BigDecimal getOutgoing() {
+            return outgoing;
+        }
+
+        public void setOutgoing(BigDecimal outgoing) {
+            this.outgoing = outgoing;
+        }
+
+        /**
+         * Net amount changed per event type within the month.
+         */
+        public Map<BalanceLogEvent, BigDecimal> getTotalsByType() {
+            return totalsByType;
+        }
+
+        public void setTotalsByType(Map<BalanceLogEvent, BigDecimal> totalsByType) {
+            this.totalsByType = totalsByType;
+        }
+    }
 }
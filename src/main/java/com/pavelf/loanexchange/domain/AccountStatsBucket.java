@@ -0,0 +1,250 @@
+package com.pavelf.loanexchange.domain;
+
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Objects;
+
+/**
+ * Totals of the {@link BalanceLog} entries of one {@link User} account with one event type within one calendar
+ * month (UTC), kept in step with every entry written for the account.
+ */
+@Entity
+@Table(name = "account_stats")
+@IdClass(AccountStatsBucket.Key.class)
+public class AccountStatsBucket implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Scale of the amounts in {@code balance_log}, which rounds every amount written with HALF_UP.
+     */
+    private static final int SCALE = 2;
+
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "jhi_type")
+    private BalanceLogEvent type;
+
+    @Id
+    @Column(name = "period")
+    private LocalDate period;
+
+    /**
+     * Sum of the positive amounts changed.
+     */
+    @NotNull
+    @Column(name = "incoming", precision = 21, scale = 2, nullable = false)
+    private BigDecimal incoming;
+
+    /**
+     * Sum of the other amounts changed, zero or negative.
+     */
+    @NotNull
+    @Column(name = "outgoing", precision = 21, scale = 2, nullable = false)
+    private BigDecimal outgoing;
+
+    @NotNull
+    @Column(name = "entries", nullable = false)
+    private Long entries;
+
+    /**
+     * The first day of the month of the date, in UTC.
+     */
+    public static LocalDate periodOf(Instant date) {
+        return date.atZone(ZoneOffset.UTC).toLocalDate().withDayOfMonth(1);
+    }
+
+    /**
+     * An empty bucket for the account, type and month of the entry.
+     */
+    public static AccountStatsBucket of(BalanceLog balanceLog) {
+        return new AccountStatsBucket().accountId(balanceLog.getAccount().getId()).type(balanceLog.getType())
+            .period(periodOf(balanceLog.getDate())).incoming(BigDecimal.ZERO).outgoing(BigDecimal.ZERO).entries(0L);
+    }
+
+    /**
+     * Adds the amount changed by the entry, as it is stored in the ledger, to the totals.
+     */
+    public AccountStatsBucket add(BalanceLog balanceLog) {
+        BigDecimal amount = balanceLog.getAmountChanged().setScale(SCALE, RoundingMode.HALF_UP);
+        if (amount.signum() > 0) {
+            incoming = incoming.add(amount);
+        } else {
+            outgoing = outgoing.add(amount);
+        }
+        entries++;
+        return this;
+    }
+
+    /**
+     * Net amount changed, incoming plus outgoing.
+     */
+    public BigDecimal getNet() {
+        return incoming.add(outgoing);
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public AccountStatsBucket accountId(Long accountId) {
+        this.accountId = accountId;
+        return this;
+    }
+
+    public void setAccountId(Long accountId) {
+        this.accountId = accountId;
+    }
+
+    public BalanceLogEvent getType() {
+        return type;
+    }
+
+    public AccountStatsBucket type(BalanceLogEvent type) {
+        this.type = type;
+        return this;
+    }
+
+    public void setType(BalanceLogEvent type) {
+        this.type = type;
+    }
+
+    public LocalDate getPeriod() {
+        return period;
+    }
+
+    public AccountStatsBucket period(LocalDate period) {
+        this.period = period;
+        return this;
+    }
+
+    public void setPeriod(LocalDate period) {
+        this.period = period;
+    }
+
+    public BigDecimal getIncoming() {
+        return incoming;
+    }
+
+    public AccountStatsBucket incoming(BigDecimal incoming) {
+        this.incoming = incoming;
+        return this;
+    }
+
+    public void setIncoming(BigDecimal incoming) {
+        this.incoming = incoming;
+    }
+
+    public BigDecimal getOutgoing() {
+        return outgoing;
+    }
+
+    public AccountStatsBucket outgoing(BigDecimal outgoing) {
+        this.outgoing = outgoing;
+        return this;
+    }
+
+    public void setOutgoing(BigDecimal outgoing) {
+        this.outgoing = outgoing;
+    }
+
+    public Long getEntries() {
+        return entries;
+    }
+
+    public AccountStatsBucket entries(Long entries) {
+        this.entries = entries;
+        return this;
+    }
+
+    public void setEntries(Long entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AccountStatsBucket)) {
+            return false;
+        }
+        AccountStatsBucket other = (AccountStatsBucket) o;
+        return accountId != null && accountId.equals(other.accountId) && type == other.type &&
+            Objects.equals(period, other.period);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountStatsBucket{" +
+            "accountId=" + getAccountId() +
+            ", type='" + getType() + "'" +
+            ", period='" + getPeriod() + "'" +
+            ", incoming=" + getIncoming() +
+            ", outgoing=" + getOutgoing() +
+            ", entries=" + getEntries() +
+            "}";
+    }
+
+    /**
+     * Primary key of a bucket.
+     */
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Long accountId;
+
+        private BalanceLogEvent type;
+
+        private LocalDate period;
+
+        public Key() {
+        }
+
+        public Key(Long accountId, BalanceLogEvent type, LocalDate period) {
+            this.accountId = accountId;
+            this.type = type;
+            this.period = period;
+        }
+
+        public static Key of(BalanceLog balanceLog) {
+            return new Key(balanceLog.getAccount().getId(), balanceLog.getType(), periodOf(balanceLog.getDate()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(accountId, other.accountId) && type == other.type &&
+                Objects.equals(period, other.period);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(accountId, type, period);
+        }
+    }
+}
@@ -3,8 +3,6 @@ package com.pavelf.loanexchange.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import org.hibernate.annotations.Cache;
-import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import javax.validation.constraints.*;
@@ -17,11 +15,11 @@ import java.util.Objects;
 import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
 
 /**
- * A BalanceLog.
+ * A BalanceLog. Not in the second-level cache: the ledger is append-only and read by ranges, so an entry is hardly
+ * ever loaded twice by id.
  */
 @Entity
 @Table(name = "balance_log")
-@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 public class BalanceLog implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -0,0 +1,210 @@
+package com.pavelf.loanexchange.domain;
+
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Totals of the {@link BalanceLog} entries with one event type within one day (UTC), either of one {@link User}
+ * account or, without an account, of all the accounts of the platform.
+ */
+@Entity
+@Table(name = "balance_log_bucket")
+public class BalanceLogBucket implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Scale of the amounts in {@code balance_log}, which rounds every amount written with HALF_UP.
+     */
+    private static final int SCALE = 2;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
+    @SequenceGenerator(name = "sequenceGenerator")
+    private Long id;
+
+    /**
+     * The account, or {@code null} for the platform-wide bucket.
+     */
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "jhi_type", nullable = false)
+    private BalanceLogEvent type;
+
+    @NotNull
+    @Column(name = "period", nullable = false)
+    private LocalDate period;
+
+    /**
+     * Sum of the positive amounts changed.
+     */
+    @NotNull
+    @Column(name = "incoming", precision = 21, scale = 2, nullable = false)
+    private BigDecimal incoming;
+
+    /**
+     * Sum of the other amounts changed, zero or negative.
+     */
+    @NotNull
+    @Column(name = "outgoing", precision = 21, scale = 2, nullable = false)
+    private BigDecimal outgoing;
+
+    @NotNull
+    @Column(name = "entries", nullable = false)
+    private Long entries;
+
+    /**
+     * The day of the date, in UTC.
+     */
+    public static LocalDate periodOf(Instant date) {
+        return date.atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    /**
+     * An empty bucket for the account, type and day of the entry.
+     */
+    public static BalanceLogBucket of(BalanceLog balanceLog) {
+        return new BalanceLogBucket().accountId(balanceLog.getAccount().getId()).type(balanceLog.getType())
+            .period(periodOf(balanceLog.getDate())).incoming(BigDecimal.ZERO).outgoing(BigDecimal.ZERO).entries(0L);
+    }
+
+    /**
+     * Adds the amount changed by the entry, as it is stored in the ledger, to the totals.
+     */
+    public BalanceLogBucket add(BalanceLog balanceLog) {
+        BigDecimal amount = balanceLog.getAmountChanged().setScale(SCALE, RoundingMode.HALF_UP);
+        if (amount.signum() > 0) {
+            incoming = incoming.add(amount);
+        } else {
+            outgoing = outgoing.add(amount);
+        }
+        entries++;
+        return this;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public BalanceLogBucket accountId(Long accountId) {
+        this.accountId = accountId;
+        return this;
+    }
+
+    public void setAccountId(Long accountId) {
+        this.accountId = accountId;
+    }
+
+    public BalanceLogEvent getType() {
+        return type;
+    }
+
+    public BalanceLogBucket type(BalanceLogEvent type) {
+        this.type = type;
+        return this;
+    }
+
+    public void setType(BalanceLogEvent type) {
+        this.type = type;
+    }
+
+    public LocalDate getPeriod() {
+        return period;
+    }
+
+    public BalanceLogBucket period(LocalDate period) {
+        this.period = period;
+        return this;
+    }
+
+    public void setPeriod(LocalDate period) {
+        this.period = period;
+    }
+
+    public BigDecimal getIncoming() {
+        return incoming;
+    }
+
+    public BalanceLogBucket incoming(BigDecimal incoming) {
+        this.incoming = incoming;
+        return this;
+    }
+
+    public void setIncoming(BigDecimal incoming) {
+        this.incoming = incoming;
+    }
+
+    public BigDecimal getOutgoing() {
+        return outgoing;
+    }
+
+    public BalanceLogBucket outgoing(BigDecimal outgoing) {
+        this.outgoing = outgoing;
+        return this;
+    }
+
+    public void setOutgoing(BigDecimal outgoing) {
+        this.outgoing = outgoing;
+    }
+
+    public Long getEntries() {
+        return entries;
+    }
+
+    public BalanceLogBucket entries(Long entries) {
+        this.entries = entries;
+        return this;
+    }
+
+    public void setEntries(Long entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BalanceLogBucket)) {
+            return false;
+        }
+        return id != null && id.equals(((BalanceLogBucket) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceLogBucket{" +
+            "id=" + getId() +
+            ", accountId=" + getAccountId() +
+            ", type='" + getType() + "'" +
+            ", period='" + getPeriod() + "'" +
+            ", incoming=" + getIncoming() +
+            ", outgoing=" + getOutgoing() +
+            ", entries=" + getEntries() +
+            "}";
+    }
+}
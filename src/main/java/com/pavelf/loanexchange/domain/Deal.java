@@ -68,6 +68,10 @@ public class Deal implements Serializable {
     @Column(name = "status", nullable = false)
     private DealStatus status;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnore
     private User emitter;
@@ -202,6 +206,19 @@ public class Deal implements Serializable {
         this.status = status;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public Deal version(Long version) {
+        this.version = version;
+        return this;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public User getEmitter() {
         return emitter;
     }
@@ -275,6 +292,7 @@ public class Deal implements Serializable {
             ", term=" + getTerm() +
             ", paymentEvery='" + getPaymentEvery() + "'" +
             ", status='" + getStatus() + "'" +
+            ", version=" + getVersion() +
             "}";
     }
 }
@@ -0,0 +1,92 @@
+package com.pavelf.loanexchange.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Current balance of a {@link Deal}, kept in step with the last {@link BalanceLog} written for it.
+ */
+@Entity
+@Table(name = "deal_balance")
+public class DealBalance implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "deal_id")
+    private Long dealId;
+
+    @NotNull
+    @Column(name = "balance", precision = 21, scale = 2, nullable = false)
+    private BigDecimal balance;
+
+    @NotNull
+    @Column(name = "last_log_id", nullable = false)
+    private Long lastLogId;
+
+    public Long getDealId() {
+        return dealId;
+    }
+
+    public DealBalance dealId(Long dealId) {
+        this.dealId = dealId;
+        return this;
+    }
+
+    public void setDealId(Long dealId) {
+        this.dealId = dealId;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public DealBalance balance(BigDecimal balance) {
+        this.balance = balance;
+        return this;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public Long getLastLogId() {
+        return lastLogId;
+    }
+
+    public DealBalance lastLogId(Long lastLogId) {
+        this.lastLogId = lastLogId;
+        return this;
+    }
+
+    public void setLastLogId(Long lastLogId) {
+        this.lastLogId = lastLogId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DealBalance)) {
+            return false;
+        }
+        return dealId != null && dealId.equals(((DealBalance) o).dealId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    @Override
+    public String toString() {
+        return "DealBalance{" +
+            "dealId=" + getDealId() +
+            ", balance=" + getBalance() +
+            ", lastLogId=" + getLastLogId() +
+            "}";
+    }
+}
@@ -0,0 +1,185 @@
+package com.pavelf.loanexchange.domain;
+
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A PaymentRun, one charging run of the deals with the given payment interval for a period.
+ */
+@Entity
+@Table(name = "payment_run")
+public class PaymentRun implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
+    @SequenceGenerator(name = "sequenceGenerator")
+    private Long id;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_every", nullable = false)
+    private PaymentInterval paymentEvery;
+
+    @NotNull
+    @Column(name = "period", nullable = false)
+    private LocalDate period;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private PaymentRunStatus status;
+
+    @NotNull
+    @Column(name = "started_at", nullable = false)
+    private Instant startedAt;
+
+    /**
+     * When a node charging the run last reported progress, a run not reporting for long is resumed by another node.
+     */
+    @NotNull
+    @Column(name = "heartbeat_at", nullable = false)
+    private Instant heartbeatAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    @Column(name = "deals_charged")
+    private Long dealsCharged;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public PaymentInterval getPaymentEvery() {
+        return paymentEvery;
+    }
+
+    public PaymentRun paymentEvery(PaymentInterval paymentEvery) {
+        this.paymentEvery = paymentEvery;
+        return this;
+    }
+
+    public void setPaymentEvery(PaymentInterval paymentEvery) {
+        this.paymentEvery = paymentEvery;
+    }
+
+    public LocalDate getPeriod() {
+        return period;
+    }
+
+    public PaymentRun period(LocalDate period) {
+        this.period = period;
+        return this;
+    }
+
+    public void setPeriod(LocalDate period) {
+        this.period = period;
+    }
+
+    public PaymentRunStatus getStatus() {
+        return status;
+    }
+
+    public PaymentRun status(PaymentRunStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    public void setStatus(PaymentRunStatus status) {
+        this.status = status;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public PaymentRun startedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+        return this;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getHeartbeatAt() {
+        return heartbeatAt;
+    }
+
+    public PaymentRun heartbeatAt(Instant heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+        return this;
+    }
+
+    public void setHeartbeatAt(Instant heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public PaymentRun finishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+        return this;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public Long getDealsCharged() {
+        return dealsCharged;
+    }
+
+    public PaymentRun dealsCharged(Long dealsCharged) {
+        this.dealsCharged = dealsCharged;
+        return this;
+    }
+
+    public void setDealsCharged(Long dealsCharged) {
+        this.dealsCharged = dealsCharged;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PaymentRun)) {
+            return false;
+        }
+        return id != null && id.equals(((PaymentRun) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentRun{" +
+            "id=" + getId() +
+            ", paymentEvery='" + getPaymentEvery() + "'" +
+            ", period='" + getPeriod() + "'" +
+            ", status='" + getStatus() + "'" +
+            ", startedAt='" + getStartedAt() + "'" +
+            ", heartbeatAt='" + getHeartbeatAt() + "'" +
+            ", finishedAt='" + getFinishedAt() + "'" +
+            ", dealsCharged=" + getDealsCharged() +
+            "}";
+    }
+}
@@ -0,0 +1,125 @@
+package com.pavelf.loanexchange.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A PaymentRunItem, the mark that a deal was charged for a period.
+ */
+@Entity
+@Table(name = "payment_run_item")
+public class PaymentRunItem implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
+    @SequenceGenerator(name = "sequenceGenerator")
+    private Long id;
+
+    @NotNull
+    @Column(name = "period", nullable = false)
+    private LocalDate period;
+
+    @NotNull
+    @Column(name = "jhi_date", nullable = false)
+    private Instant date;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JsonIgnore
+    private PaymentRun run;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JsonIgnore
+    private Deal deal;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDate getPeriod() {
+        return period;
+    }
+
+    public PaymentRunItem period(LocalDate period) {
+        this.period = period;
+        return this;
+    }
+
+    public void setPeriod(LocalDate period) {
+        this.period = period;
+    }
+
+    public Instant getDate() {
+        return date;
+    }
+
+    public PaymentRunItem date(Instant date) {
+        this.date = date;
+        return this;
+    }
+
+    public void setDate(Instant date) {
+        this.date = date;
+    }
+
+    public PaymentRun getRun() {
+        return run;
+    }
+
+    public PaymentRunItem run(PaymentRun run) {
+        this.run = run;
+        return this;
+    }
+
+    public void setRun(PaymentRun run) {
+        this.run = run;
+    }
+
+    public Deal getDeal() {
+        return deal;
+    }
+
+    public PaymentRunItem deal(Deal deal) {
+        this.deal = deal;
+        return this;
+    }
+
+    public void setDeal(Deal deal) {
+        this.deal = deal;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PaymentRunItem)) {
+            return false;
+        }
+        return id != null && id.equals(((PaymentRunItem) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentRunItem{" +
+            "id=" + getId() +
+            ", period='" + getPeriod() + "'" +
+            ", date='" + getDate() + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,8 @@
+package com.pavelf.loanexchange.domain.enumeration;
+
+/**
+ * The PaymentRunStatus enumeration.
+ */
+public enum PaymentRunStatus {
+    RUNNING, COMPLETED
+}
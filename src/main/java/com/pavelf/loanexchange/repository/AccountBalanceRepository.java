@@ -0,0 +1,47 @@
+package com.pavelf.loanexchange.repository;
+
+import com.pavelf.loanexchange.domain.AccountBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Spring Data  repository for the AccountBalance entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface AccountBalanceRepository extends JpaRepository<AccountBalance, Long> {
+
+    /**
+     * Reads the balance with {@code SELECT ... FOR UPDATE}, holding the row until the transaction ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT ab FROM AccountBalance AS ab WHERE ab.accountId = ?1")
+    Optional<AccountBalance> findOneForUpdate(Long accountId);
+
+    @Modifying
+    @Query(value = "DELETE FROM account_balance", nativeQuery = true)
+    int deleteAllBalances();
+
+    @Modifying
+    @Query(value = "INSERT INTO account_balance (account_id, balance, last_log_id) " +
+        "SELECT bl.account_id, bl.old_value + bl.amount_changed, bl.id FROM balance_log bl " +
+        "WHERE bl.id = (SELECT MAX(b.id) FROM balance_log b WHERE b.account_id = bl.account_id)", nativeQuery = true)
+    int rebuildFromLog();
+
+    /**
+     * Rows of (account id, balance by the log, balance by the projection) for every account where they differ.
+     */
+    @Query(value = "SELECT bl.account_id, bl.old_value + bl.amount_changed, ab.balance FROM balance_log bl " +
+        "LEFT JOIN account_balance ab ON ab.account_id = bl.account_id " +
+        "WHERE bl.id = (SELECT MAX(b.id) FROM balance_log b WHERE b.account_id = bl.account_id) " +
+        "AND (ab.account_id IS NULL OR ab.last_log_id <> bl.id OR ab.balance <> bl.old_value + bl.amount_changed)",
+        nativeQuery = true)
+    List<Object[]> findMismatchesWithLog();
+}
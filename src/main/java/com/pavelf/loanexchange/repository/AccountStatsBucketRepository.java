@@ -0,0 +1,19 @@
+package com.pavelf.loanexchange.repository;
+
+import com.pavelf.loanexchange.domain.AccountStatsBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Spring Data  repository for the AccountStatsBucket entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface AccountStatsBucketRepository extends JpaRepository<AccountStatsBucket, AccountStatsBucket.Key> {
+
+    @Query("SELECT s FROM AccountStatsBucket AS s WHERE s.accountId = ?1 ORDER BY s.period, s.type")
+    List<AccountStatsBucket> findAllForAccount(Long accountId);
+}
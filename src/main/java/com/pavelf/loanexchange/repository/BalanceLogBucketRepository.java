@@ -0,0 +1,64 @@
+package com.pavelf.loanexchange.repository;
+
+import com.pavelf.loanexchange.domain.BalanceLogBucket;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Spring Data  repository for the BalanceLogBucket entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface BalanceLogBucketRepository extends JpaRepository<BalanceLogBucket, Long> {
+
+    @Query("SELECT b FROM BalanceLogBucket AS b WHERE b.accountId = ?1 AND b.type = ?2 AND b.period = ?3")
+    Optional<BalanceLogBucket> findOneForAccount(Long accountId, BalanceLogEvent type, LocalDate period);
+
+    @Query("SELECT b FROM BalanceLogBucket AS b WHERE b.accountId = ?1 AND b.period BETWEEN ?2 AND ?3 " +
+        "ORDER BY b.period, b.type")
+    List<BalanceLogBucket> findAllForAccount(Long accountId, LocalDate from, LocalDate to);
+
+    @Query("SELECT b FROM BalanceLogBucket AS b WHERE b.accountId IS NULL AND b.period BETWEEN ?1 AND ?2 " +
+        "ORDER BY b.period, b.type")
+    List<BalanceLogBucket> findAllForPlatform(LocalDate from, LocalDate to);
+
+    /**
+     * The last day rolled up into platform-wide buckets, or {@code null} if none was.
+     */
+    @Query("SELECT MAX(b.period) FROM BalanceLogBucket AS b WHERE b.accountId IS NULL")
+    LocalDate findLastPlatformPeriod();
+
+    /**
+     * The first day with an account bucket, or {@code null} if there is none.
+     */
+    @Query("SELECT MIN(b.period) FROM BalanceLogBucket AS b WHERE b.accountId IS NOT NULL")
+    LocalDate findFirstAccountPeriod();
+
+    /**
+     * Rows of (type, day, incoming, outgoing, entries) summed over the buckets of all the accounts.
+     */
+    @Query("SELECT b.type, b.period, SUM(b.incoming), SUM(b.outgoing), SUM(b.entries) FROM BalanceLogBucket AS b " +
+        "WHERE b.accountId IS NOT NULL AND b.period BETWEEN ?1 AND ?2 GROUP BY b.type, b.period")
+    List<Object[]> sumAccountBuckets(LocalDate from, LocalDate to);
+
+    @Modifying
+    @Query("DELETE FROM BalanceLogBucket AS b WHERE b.accountId IS NULL AND b.period >= ?1")
+    int deletePlatformBucketsFrom(LocalDate from);
+
+    /**
+     * Locks the rollup of the platform-wide buckets until the end of the transaction.
+     *
+     * @return 1, or 0 if the lock row is missing.
+     */
+    @Modifying
+    @Query(value = "UPDATE scheduled_task_lock SET locked_at = CURRENT_TIMESTAMP " +
+        "WHERE name = 'balance_log_platform_rollup'", nativeQuery = true)
+    int lockPlatformRollup();
+}
@@ -0,0 +1,37 @@
+package com.pavelf.loanexchange.repository;
+
+import com.pavelf.loanexchange.domain.DealBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Spring Data  repository for the DealBalance entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface DealBalanceRepository extends JpaRepository<DealBalance, Long> {
+
+    @Modifying
+    @Query(value = "DELETE FROM deal_balance", nativeQuery = true)
+    int deleteAllBalances();
+
+    @Modifying
+    @Query(value = "INSERT INTO deal_balance (deal_id, balance, last_log_id) " +
+        "SELECT bl.deal_id, bl.old_value + bl.amount_changed, bl.id FROM balance_log bl " +
+        "WHERE bl.id = (SELECT MAX(b.id) FROM balance_log b WHERE b.deal_id = bl.deal_id)", nativeQuery = true)
+    int rebuildFromLog();
+
+    /**
+     * Rows of (deal id, balance by the log, balance by the projection) for every deal where they differ.
+     */
+    @Query(value = "SELECT bl.deal_id, bl.old_value + bl.amount_changed, db.balance FROM balance_log bl " +
+        "LEFT JOIN deal_balance db ON db.deal_id = bl.deal_id " +
+        "WHERE bl.id = (SELECT MAX(b.id) FROM balance_log b WHERE b.deal_id = bl.deal_id) " +
+        "AND (db.deal_id IS NULL OR db.last_log_id <> bl.id OR db.balance <> bl.old_value + bl.amount_changed)",
+        nativeQuery = true)
+    List<Object[]> findMismatchesWithLog();
+}
@@ -2,12 +2,18 @@ package com.pavelf.loanexchange.repository;
 
 import com.pavelf.loanexchange.domain.Deal;
 import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Spring Data  repository for the Deal entity.
@@ -22,10 +28,25 @@ public interface DealRepository extends JpaRepository<Deal, Long>, JpaSpecificat
     @Query("select deal from Deal deal where deal.recipient.login = ?#{principal.username}")
     List<Deal> findByRecipientIsCurrentUser();
 
+    /**
+     * Reads the deal with {@code SELECT ... FOR UPDATE}, holding the row until the transaction ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT deal FROM Deal AS deal WHERE deal.id = ?1")
+    Optional<Deal> findOneForUpdate(Long id);
+
     @Query("SELECT COUNT(deal) FROM Deal AS deal WHERE deal.recipient = ?1 AND deal.status = 'ACTIVE'")
     int countActiveDealsForRecipient(User recipient);
 
-    @Query("SELECT COUNT(d) FROM Deal AS d WHERE d.id = ?2 AND (d.recipient = ?1 OR d.emitter = ?1)")
-    int isDealExistWithThisUserParticipating(User user, Long dealId);
+    @Query("SELECT COUNT(d) FROM Deal AS d WHERE d.id = ?2 AND (d.recipient.id = ?1 OR d.emitter.id = ?1)")
+    int isDealExistWithThisUserParticipating(Long userId, Long dealId);
+
+    /**
+     * Ids of the deals with the status and payment interval after the given one, in order; a page of them bounds a
+     * chunk of a payment run.
+     */
+    @Query("SELECT d.id FROM Deal AS d WHERE d.status = ?1 AND d.paymentEvery = ?2 AND d.id > ?3 ORDER BY d.id")
+    List<Long> findIdsWithStatusAndPaymentEveryAfter(DealStatus status, PaymentInterval paymentEvery, Long afterId,
+                                                     Pageable pageable);
 
 }
@@ -0,0 +1,66 @@
+package com.pavelf.loanexchange.repository;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keyset (seek) pagination of entities with a {@code Long id}, in descending order of id. A page is read by one query
+ * seeking below the id of the last entity seen, so its cost does not grow with the position, and no count is run.
+ * <p>
+ * The pages are in id order only, not in date order: the ids come in pooled blocks per node, and dates may be set by
+ * the client, so a higher id is not always a later entity.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class KeysetRepository {
+
+    private static final String ID = "id";
+
+    private final EntityManager entityManager;
+
+    public KeysetRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @param domainClass the entity to read.
+     * @param specification the filter, as for {@code JpaSpecificationExecutor}.
+     * @param after the id of the last entity of the previous page, or {@code null} for the first page.
+     * @param size the page size.
+     * @return the entities matching the specification with ids below {@code after}, in descending order of id.
+     */
+    public <T> Slice<T> findAll(Class<T> domainClass, Specification<T> specification, Long after, int size) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(domainClass);
+        Root<T> root = query.from(domainClass);
+
+        List<Predicate> predicates = new ArrayList<>();
+        Predicate filter = specification.toPredicate(root, query, cb);
+        if (filter != null) {
+            predicates.add(filter);
+        }
+        if (after != null) {
+            predicates.add(cb.lessThan(root.get(ID), after));
+        }
+        query.select(root).where(predicates.toArray(new Predicate[0])).orderBy(cb.desc(root.get(ID)));
+
+        // one more than a page tells whether there is a next one
+        List<T> content = entityManager.createQuery(query).setMaxResults(size + 1).getResultList();
+        boolean hasNext = content.size() > size;
+        return new SliceImpl<>(hasNext ? content.subList(0, size) : content,
+            PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, ID)), hasNext);
+    }
+}
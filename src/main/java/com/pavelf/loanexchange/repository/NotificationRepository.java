@@ -1,6 +1,7 @@
 package com.pavelf.loanexchange.repository;
 
 import com.pavelf.loanexchange.domain.Notification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
@@ -18,4 +19,9 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     @Query("select notification from Notification notification where notification.recipient.login = ?#{principal.username}")
     List<Notification> findByRecipientIsCurrentUser();
 
+    /**
+     * Notifications of a user written after the given one, which a reconnecting event stream missed.
+     */
+    List<Notification> findByRecipientIdAndIdGreaterThanOrderByIdAsc(Long recipientId, Long id, Pageable pageable);
+
 }
@@ -0,0 +1,25 @@
+package com.pavelf.loanexchange.repository;
+
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.PaymentRunItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data  repository for the PaymentRunItem entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface PaymentRunItemRepository extends JpaRepository<PaymentRunItem, Long> {
+
+    @Query("SELECT i.deal.id FROM PaymentRunItem AS i WHERE i.period = ?1 AND i.deal IN ?2")
+    List<Long> findChargedDealIds(LocalDate period, Collection<Deal> deals);
+
+    long countByRun(PaymentRun run);
+}
@@ -0,0 +1,30 @@
+package com.pavelf.loanexchange.repository;
+
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Spring Data  repository for the PaymentRun entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface PaymentRunRepository extends JpaRepository<PaymentRun, Long> {
+
+    Optional<PaymentRun> findOneByPaymentEveryAndPeriod(PaymentInterval paymentEvery, LocalDate period);
+
+    List<PaymentRun> findAllByStatusAndHeartbeatAtBefore(PaymentRunStatus status, Instant heartbeatBefore);
+
+    @Modifying
+    @Query("UPDATE PaymentRun r SET r.heartbeatAt = ?2 WHERE r.id = ?1 AND r.status = ?3 AND r.heartbeatAt < ?4")
+    int updateHeartbeat(Long id, Instant heartbeatAt, PaymentRunStatus status, Instant heartbeatBefore);
+}
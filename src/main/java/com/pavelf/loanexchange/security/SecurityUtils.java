@@ -33,6 +33,18 @@ public final class SecurityUtils {
             });
     }
 
+    /**
+     * Get the id of the current user, as carried by its {@link UserPrincipal}.
+     *
+     * @return the id of the current user, empty when the principal does not carry it.
+     */
+    public static Optional<Long> getCurrentUserId() {
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        return Optional.ofNullable(securityContext.getAuthentication())
+            .filter(authentication -> authentication.getPrincipal() instanceof UserPrincipal)
+            .map(authentication -> ((UserPrincipal) authentication.getPrincipal()).getId());
+    }
+
     /**
      * Get the JWT of the current user.
      *
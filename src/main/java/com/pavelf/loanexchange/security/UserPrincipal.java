@@ -0,0 +1,30 @@
+package com.pavelf.loanexchange.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * The authenticated user together with the id of its {@link com.pavelf.loanexchange.domain.User}, so the current user
+ * can be referred to without looking it up by login.
+ */
+public class UserPrincipal extends User {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+
+    /**
+     * @param id the id of the user, {@code null} when it is not known, e.g. for a token issued without it.
+     */
+    public UserPrincipal(Long id, String username, String password,
+                         Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -7,15 +7,18 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 
 public class JWTConfigurer extends SecurityConfigurerAdapter<DefaultSecurityFilterChain, HttpSecurity> {
 
-    private TokenProvider tokenProvider;
+    private TokenAuthenticationCache tokenAuthenticationCache;
 
-    public JWTConfigurer(TokenProvider tokenProvider) {
-        this.tokenProvider = tokenProvider;
+    private StreamTicketStore streamTicketStore;
+
+    public JWTConfigurer(TokenAuthenticationCache tokenAuthenticationCache, StreamTicketStore streamTicketStore) {
+        this.tokenAuthenticationCache = tokenAuthenticationCache;
+        this.streamTicketStore = streamTicketStore;
     }
 
     @Override
     public void configure(HttpSecurity http) throws Exception {
-        JWTFilter customFilter = new JWTFilter(tokenProvider);
+        JWTFilter customFilter = new JWTFilter(tokenAuthenticationCache, streamTicketStore);
         http.addFilterBefore(customFilter, UsernamePasswordAuthenticationFilter.class);
     }
 }
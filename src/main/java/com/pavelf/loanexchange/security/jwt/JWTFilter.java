@@ -1,6 +1,5 @@
 package com.pavelf.loanexchange.security.jwt;
 
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.GenericFilterBean;
@@ -15,15 +14,21 @@ import java.io.IOException;
 /**
  * Filters incoming requests and installs a Spring Security principal if a header corresponding to a valid user is
  * found.
+ * <p>
+ * Browsers cannot set headers on an {@code EventSource}, so a request opening the notification stream may carry a
+ * ticket of the {@link StreamTicketStore} instead. A token is never read from the URL.
  */
 public class JWTFilter extends GenericFilterBean {
 
     public static final String AUTHORIZATION_HEADER = "Authorization";
 
-    private TokenProvider tokenProvider;
+    private TokenAuthenticationCache tokenAuthenticationCache;
 
-    public JWTFilter(TokenProvider tokenProvider) {
-        this.tokenProvider = tokenProvider;
+    private StreamTicketStore streamTicketStore;
+
+    public JWTFilter(TokenAuthenticationCache tokenAuthenticationCache, StreamTicketStore streamTicketStore) {
+        this.tokenAuthenticationCache = tokenAuthenticationCache;
+        this.streamTicketStore = streamTicketStore;
     }
 
     @Override
@@ -31,9 +36,15 @@ public class JWTFilter extends GenericFilterBean {
         throws IOException, ServletException {
         HttpServletRequest httpServletRequest = (HttpServletRequest) servletRequest;
         String jwt = resolveToken(httpServletRequest);
-        if (StringUtils.hasText(jwt) && this.tokenProvider.validateToken(jwt)) {
-            Authentication authentication = this.tokenProvider.getAuthentication(jwt);
-            SecurityContextHolder.getContext().setAuthentication(authentication);
+        if (StringUtils.hasText(jwt)) {
+            this.tokenAuthenticationCache.getAuthentication(jwt)
+                .ifPresent(authentication -> SecurityContextHolder.getContext().setAuthentication(authentication));
+        } else {
+            String ticket = resolveStreamTicket(httpServletRequest);
+            if (StringUtils.hasText(ticket)) {
+                this.streamTicketStore.redeem(ticket)
+                    .ifPresent(authentication -> SecurityContextHolder.getContext().setAuthentication(authentication));
+            }
         }
         filterChain.doFilter(servletRequest, servletResponse);
     }
@@ -45,4 +56,12 @@ public class JWTFilter extends GenericFilterBean {
         }
         return null;
     }
+
+    private String resolveStreamTicket(HttpServletRequest request) {
+        if ("GET".equals(request.getMethod())
+            && (request.getContextPath() + StreamTicketStore.STREAM_PATH).equals(request.getRequestURI())) {
+            return request.getParameter(StreamTicketStore.TICKET_PARAMETER);
+        }
+        return null;
+    }
 }
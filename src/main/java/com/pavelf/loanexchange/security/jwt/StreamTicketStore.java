@@ -0,0 +1,77 @@
+package com.pavelf.loanexchange.security.jwt;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived, single-use tickets opening the notification stream at {@value #STREAM_PATH}.
+ * <p>
+ * Browsers cannot set headers on an {@code EventSource}, and a token in the URL ends up in the logs of every proxy
+ * on the way, so a client asks for a ticket with its token in the header and opens the stream with the ticket in the
+ * {@value #TICKET_PARAMETER} parameter. A ticket grants the authentication it was issued for, for
+ * {@code application.notifications.stream.ticket-time-to-live-seconds} at most and on that path only.
+ * <p>
+ * Tickets are signed by the {@link TokenProvider} and kept nowhere, so any node opens a stream with a ticket issued by
+ * another. A ticket is used up by revoking its id in the {@link TokenRevocationStore}, whose key on the id lets only
+ * the first use through on any node.
+ */
+@Component
+public class StreamTicketStore {
+
+    public static final String STREAM_PATH = "/api/notifications/stream";
+
+    public static final String TICKET_PARAMETER = "ticket";
+
+    private final TokenProvider tokenProvider;
+
+    private final TokenRevocationStore tokenRevocationStore;
+
+    private final long timeToLiveMillis;
+
+    private final Counter issued;
+
+    private final Counter redeemed;
+
+    private final Counter rejected;
+
+    public StreamTicketStore(TokenProvider tokenProvider, TokenRevocationStore tokenRevocationStore,
+                             MeterRegistry meterRegistry, ApplicationProperties applicationProperties) {
+        this.tokenProvider = tokenProvider;
+        this.tokenRevocationStore = tokenRevocationStore;
+        this.timeToLiveMillis = TimeUnit.SECONDS.toMillis(
+            applicationProperties.getNotifications().getStream().getTicketTimeToLiveSeconds());
+        this.issued = meterRegistry.counter("loanexchange.notification.stream.tickets", "result", "issued");
+        this.redeemed = meterRegistry.counter("loanexchange.notification.stream.tickets", "result", "redeemed");
+        this.rejected = meterRegistry.counter("loanexchange.notification.stream.tickets", "result", "rejected");
+    }
+
+    /**
+     * @param authentication the authentication of the client asking for the ticket.
+     * @return a new ticket granting that authentication.
+     */
+    public String issue(Authentication authentication) {
+        String ticket = tokenProvider.createStreamTicket(authentication, timeToLiveMillis);
+        issued.increment();
+        return ticket;
+    }
+
+    /**
+     * Uses up a ticket.
+     *
+     * @param ticket the ticket of the request.
+     * @return the authentication the ticket was issued for, or empty if it is not valid, used or expired.
+     */
+    public Optional<Authentication> redeem(String ticket) {
+        Optional<Authentication> authentication = tokenProvider.parseStreamTicket(ticket)
+            .filter(claims -> tokenRevocationStore.revoke(claims.getId(), claims.getExpiration().toInstant()))
+            .map(claims -> tokenProvider.getAuthentication(ticket, claims));
+        (authentication.isPresent() ? redeemed : rejected).increment();
+        return authentication;
+    }
+}
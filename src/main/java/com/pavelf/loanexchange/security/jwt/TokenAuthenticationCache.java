@@ -0,0 +1,105 @@
+package com.pavelf.loanexchange.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.util.Optional;
+
+/**
+ * Keeps the verified tokens with their authentication, so a token is parsed and its signature checked on its first
+ * use only, and later requests with the same token get the authentication from memory.
+ * <p>
+ * The tokens are kept in the {@value #TOKEN_AUTHENTICATIONS_CACHE} cache, sized and timed by
+ * {@code application.cache.regions.token-authentications} and never kept past their own expiry; a full cache evicts
+ * the tokens least recently used, which are verified again on their next use. Invalid tokens are not kept, and the
+ * {@link TokenDenyList} is checked on every use, so a revoked token is rejected at once.
+ */
+@Component
+public class TokenAuthenticationCache {
+
+    public static final String TOKEN_AUTHENTICATIONS_CACHE = "tokenAuthentications";
+
+    private final TokenProvider tokenProvider;
+
+    private final TokenDenyList tokenDenyList;
+
+    private final Cache<Object, Object> entries;
+
+    private final Timer verifyTimer;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    public TokenAuthenticationCache(TokenProvider tokenProvider, TokenDenyList tokenDenyList,
+                                    CacheManager cacheManager, MeterRegistry meterRegistry) {
+        this.tokenProvider = tokenProvider;
+        this.tokenDenyList = tokenDenyList;
+        this.entries = cacheManager.getCache(TOKEN_AUTHENTICATIONS_CACHE);
+        this.verifyTimer = Timer.builder("loanexchange.jwt.verify")
+            .description("Time to parse a token and check its signature")
+            .register(meterRegistry);
+        // the hit ratio is hits / (hits + misses)
+        this.hits = meterRegistry.counter("loanexchange.jwt.cache", "result", "hit");
+        this.misses = meterRegistry.counter("loanexchange.jwt.cache", "result", "miss");
+    }
+
+    /**
+     * @param token the token of the request.
+     * @return the authentication of the token, or empty if the token is not valid or was revoked.
+     */
+    public Optional<Authentication> getAuthentication(String token) {
+        long now = System.currentTimeMillis();
+        Entry entry = (Entry) entries.get(token);
+        if (entry != null && entry.expiresAt > now) {
+            hits.increment();
+            return isRevoked(entry.tokenId) ? Optional.empty() : Optional.of(entry.authentication);
+        }
+        misses.increment();
+        if (entry != null) {
+            entries.remove(token, entry);
+        }
+
+        Optional<Claims> claims = verifyTimer.record(() -> tokenProvider.parseToken(token));
+        if (!claims.isPresent() || isRevoked(claims.get().getId())) {
+            return Optional.empty();
+        }
+        Authentication authentication = tokenProvider.getAuthentication(token, claims.get());
+
+        long expiresAt = claims.get().getExpiration() != null ? claims.get().getExpiration().getTime()
+            : Long.MAX_VALUE;
+        entries.put(token, new Entry(authentication, expiresAt, claims.get().getId()));
+        return Optional.of(authentication);
+    }
+
+    /**
+     * Tokens issued without an id cannot be revoked.
+     */
+    private boolean isRevoked(String tokenId) {
+        return tokenId != null && tokenDenyList.isRevoked(tokenId);
+    }
+
+    private static final class Entry {
+
+        private final Authentication authentication;
+
+        /**
+         * The expiry of the token.
+         */
+        private final long expiresAt;
+
+        private final String tokenId;
+
+        private Entry(Authentication authentication, long expiresAt, String tokenId) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+            this.tokenId = tokenId;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.pavelf.loanexchange.security.jwt;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The ids of the revoked tokens of this node, checked for every authenticated request.
+ * <p>
+ * A Bloom filter answers first: it never misses a revoked id and rejects most ids it has not seen with a few reads
+ * of a compact bit array. Only the ids it may contain are looked up in the exact set of revoked ids with their
+ * expiry, so a false positive of the filter never rejects a token. As ids cannot be removed
+ * from a Bloom filter, {@link #purgeExpired(long)} builds both anew from the ids that have not expired.
+ * <p>
+ * The list is filled by {@link TokenRevocationStore}, from the deny-list in the database.
+ */
+@Component
+public class TokenDenyList {
+
+    private static final int HASHES = 7;
+
+    /**
+     * Bits per expected id that keep the false positives of the filter around 1% with {@link #HASHES} hashes.
+     */
+    private static final int BITS_PER_ID = 10;
+
+    private final int bitCount;
+
+    private volatile State state;
+
+    public TokenDenyList(ApplicationProperties applicationProperties) {
+        long bits = (long) BITS_PER_ID * applicationProperties.getSecurity().getRevocation().getExpectedTokens();
+        this.bitCount = (int) Math.max(Long.SIZE, Math.min(bits, Integer.MAX_VALUE - Long.SIZE));
+        this.state = new State(bitCount);
+    }
+
+    /**
+     * @param tokenId the id of a token.
+     * @return whether the token was revoked.
+     */
+    public boolean isRevoked(String tokenId) {
+        State current = state;
+        return current.mightContain(tokenId) && current.expiries.containsKey(tokenId);
+    }
+
+    /**
+     * Revokes a token until it expires.
+     *
+     * @param tokenId the id of the token.
+     * @param expiresAt the expiry of the token in epoch milliseconds; it is not listed past it.
+     */
+    public void revoke(String tokenId, long expiresAt) {
+        State current = state;
+        // the exact set first, so an id the filter reports is always found there
+        current.expiries.merge(tokenId, expiresAt, Math::max);
+        current.add(tokenId);
+    }
+
+    /**
+     * Drops the ids of the tokens expired at the given time, which need no listing as the tokens are rejected anyway.
+     *
+     * @return the number of ids dropped.
+     */
+    public synchronized int purgeExpired(long now) {
+        State current = state;
+        State next = new State(bitCount);
+        // ids revoked while the new state is filled go to the old one, so they are copied over once it is replaced
+        int before = current.expiries.size();
+        current.expiries.forEach((tokenId, expiresAt) -> {
+            if (expiresAt > now) {
+                next.expiries.put(tokenId, expiresAt);
+                next.add(tokenId);
+            }
+        });
+        state = next;
+        current.expiries.forEach((tokenId, expiresAt) -> {
+            if (expiresAt > now && !next.expiries.containsKey(tokenId)) {
+                revoke(tokenId, expiresAt);
+            }
+        });
+        return Math.max(0, before - next.expiries.size());
+    }
+
+    public int size() {
+        return state.expiries.size();
+    }
+
+    private static final class State {
+
+        private final AtomicLongArray bits;
+
+        private final int bitCount;
+
+        private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+
+        private State(int bitCount) {
+            this.bits = new AtomicLongArray((bitCount + Long.SIZE - 1) / Long.SIZE);
+            this.bitCount = bitCount;
+        }
+
+        private void add(String tokenId) {
+            long hash = hash(tokenId);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                long mask = 1L << bit;
+                int index = bit / Long.SIZE;
+                long word;
+                do {
+                    word = bits.get(index);
+                } while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask));
+            }
+        }
+
+        private boolean mightContain(String tokenId) {
+            long hash = hash(tokenId);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                if ((bits.get(bit / Long.SIZE) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 64 bits of FNV-1a over the characters of the id, mixed so both halves serve as independent hashes.
+         */
+        private static long hash(String tokenId) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < tokenId.length(); i++) {
+                hash ^= tokenId.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.pavelf.loanexchange.security.jwt;
 
+import com.pavelf.loanexchange.security.UserPrincipal;
+
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.*;
@@ -12,7 +14,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
@@ -28,6 +29,10 @@ public class TokenProvider implements InitializingBean {
 
     private static final String AUTHORITIES_KEY = "auth";
 
+    private static final String USER_ID_KEY = "uid";
+
+    private static final String STREAM_TICKET_AUDIENCE = "notification-stream";
+
     private Key key;
 
     private long tokenValidityInMilliseconds;
@@ -61,10 +66,6 @@ public class TokenProvider implements InitializingBean {
     }
 
     public String createToken(Authentication authentication, boolean rememberMe) {
-        String authorities = authentication.getAuthorities().stream()
-            .map(GrantedAuthority::getAuthority)
-            .collect(Collectors.joining(","));
-
         long now = (new Date()).getTime();
         Date validity;
         if (rememberMe) {
@@ -73,34 +74,105 @@ public class TokenProvider implements InitializingBean {
             validity = new Date(now + this.tokenValidityInMilliseconds);
         }
 
-        return Jwts.builder()
-            .setSubject(authentication.getName())
-            .claim(AUTHORITIES_KEY, authorities)
+        return builderFor(authentication)
             .signWith(key, SignatureAlgorithm.HS512)
             .setExpiration(validity)
             .compact();
     }
 
+    /**
+     * Creates a ticket opening the notification stream, see {@link StreamTicketStore}. It carries the claims of a token
+     * for the same authentication, and an audience which keeps {@link #parseToken(String)} from accepting it.
+     *
+     * @param authentication the authentication the ticket grants.
+     * @param validityInMilliseconds how long the ticket may wait for its use.
+     * @return the signed ticket.
+     */
+    public String createStreamTicket(Authentication authentication, long validityInMilliseconds) {
+        return builderFor(authentication)
+            .setAudience(STREAM_TICKET_AUDIENCE)
+            .signWith(key, SignatureAlgorithm.HS512)
+            .setExpiration(new Date(System.currentTimeMillis() + validityInMilliseconds))
+            .compact();
+    }
+
+    /**
+     * Verifies the signature, the expiry and the audience of a stream ticket and reads its claims.
+     *
+     * @param ticket the ticket to parse.
+     * @return the claims of the ticket, or empty if it is not a valid stream ticket.
+     */
+    public Optional<Claims> parseStreamTicket(String ticket) {
+        try {
+            return Optional.of(Jwts.parser().setSigningKey(key).requireAudience(STREAM_TICKET_AUDIENCE)
+                .parseClaimsJws(ticket).getBody());
+        } catch (JwtException | IllegalArgumentException e) {
+            log.info("Invalid stream ticket.");
+            log.trace("Invalid stream ticket trace: {}", e);
+        }
+        return Optional.empty();
+    }
+
+    private JwtBuilder builderFor(Authentication authentication) {
+        String authorities = authentication.getAuthorities().stream()
+            .map(GrantedAuthority::getAuthority)
+            .collect(Collectors.joining(","));
+
+        JwtBuilder builder = Jwts.builder()
+            .setId(UUID.randomUUID().toString())
+            .setSubject(authentication.getName())
+            .claim(AUTHORITIES_KEY, authorities);
+        if (authentication.getPrincipal() instanceof UserPrincipal) {
+            builder.claim(USER_ID_KEY, ((UserPrincipal) authentication.getPrincipal()).getId());
+        }
+        return builder;
+    }
+
     public Authentication getAuthentication(String token) {
         Claims claims = Jwts.parser()
             .setSigningKey(key)
             .parseClaimsJws(token)
             .getBody();
 
+        return getAuthentication(token, claims);
+    }
+
+    /**
+     * Builds the authentication of a token from its claims, as returned by {@link #parseToken(String)}.
+     */
+    public Authentication getAuthentication(String token, Claims claims) {
         Collection<? extends GrantedAuthority> authorities =
             Arrays.stream(claims.get(AUTHORITIES_KEY).toString().split(","))
                 .map(SimpleGrantedAuthority::new)
                 .collect(Collectors.toList());
 
-        User principal = new User(claims.getSubject(), "", authorities);
+        // tokens issued before the user id was added to them carry no id, the user is then looked up by login
+        UserPrincipal principal = new UserPrincipal(claims.get(USER_ID_KEY, Long.class), claims.getSubject(), "",
+            authorities);
 
         return new UsernamePasswordAuthenticationToken(principal, token, authorities);
     }
 
     public boolean validateToken(String authToken) {
+        return parseToken(authToken).isPresent();
+    }
+
+    /**
+     * Verifies the signature and the expiry of the token and reads its claims, in a single parse. A token with an
+     * audience, such as a stream ticket, is not valid.
+     *
+     * @param authToken the token to parse.
+     * @return the claims of the token, or empty if the token is not valid.
+     */
+    public Optional<Claims> parseToken(String authToken) {
         try {
-            Jwts.parser().setSigningKey(key).parseClaimsJws(authToken);
-            return true;
+            Claims claims = Jwts.parser().setSigningKey(key).parseClaimsJws(authToken).getBody();
+            if (claims.getAudience() != null) {
+                // a stream ticket, or any other token meant for a single purpose
+                log.info("JWT token with an audience.");
+                return Optional.empty();
+            }
+            return Optional.of(claims);
         } catch (io.jsonwebtoken.security.SecurityException | MalformedJwtException e) {
             log.info("Invalid JWT signature.");
             log.trace("Invalid JWT signature trace: {}", e);
@@ -114,6 +186,6 @@ public class TokenProvider implements InitializingBean {
             log.info("JWT token compact of handler are invalid.");
             log.trace("JWT token compact of handler are invalid trace: {}", e);
         }
-        return false;
+        return Optional.empty();
     }
 }
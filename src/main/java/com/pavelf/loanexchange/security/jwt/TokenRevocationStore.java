@@ -0,0 +1,123 @@
+package com.pavelf.loanexchange.security.jwt;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * The deny-list of revoked token ids, kept in the {@code revoked_token} table and mirrored into the
+ * {@link TokenDenyList} of every node, so a request is checked against memory only.
+ * <p>
+ * The nodes poll the table for the revocations stamped after the newest one they have seen. Rows commit out of the
+ * order they are stamped in, so each poll looks again {@code application.security.revocation.window-seconds} behind
+ * that watermark; listing an id twice does no harm. Rows of expired tokens are deleted by the purge.
+ * <p>
+ * Revocations and purges commit in transactions of their own, so they neither wait for nor abort the transaction of
+ * the caller, which on PostgreSQL the key violation of a token revoked twice would.
+ */
+@Component
+public class TokenRevocationStore {
+
+    private final Logger log = LoggerFactory.getLogger(TokenRevocationStore.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TokenDenyList tokenDenyList;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final long windowMillis;
+
+    /**
+     * The newest revocation read, in the time of the database; {@code null} until one is read.
+     */
+    private Timestamp watermark;
+
+    public TokenRevocationStore(JdbcTemplate jdbcTemplate, TokenDenyList tokenDenyList,
+                                PlatformTransactionManager transactionManager,
+                                ApplicationProperties applicationProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tokenDenyList = tokenDenyList;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.windowMillis = applicationProperties.getSecurity().getRevocation().getWindowSeconds() * 1000L;
+    }
+
+    /**
+     * Revokes a token until it expires. The revocation is committed, and the token denied on this node, on return.
+     *
+     * @param tokenId the id of the token.
+     * @param expiresAt the expiry of the token.
+     * @return whether this call revoked the token, {@code false} if any node revoked it before.
+     */
+    public boolean revoke(String tokenId, Instant expiresAt) {
+        boolean revoked = true;
+        try {
+            transactionTemplate.execute(status -> jdbcTemplate.update(
+                "INSERT INTO revoked_token (token_id, expires_at, revoked_date) VALUES (?, ?, CURRENT_TIMESTAMP)",
+                tokenId, Timestamp.from(expiresAt)));
+        } catch (DuplicateKeyException e) {
+            log.debug("Token {} is already revoked", tokenId);
+            revoked = false;
+        }
+        tokenDenyList.revoke(tokenId, expiresAt.toEpochMilli());
+        return revoked;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        poll();
+    }
+
+    /**
+     * Lists the tokens revoked by any node since the last poll.
+     *
+     * @return the number of revocations read.
+     */
+    @Scheduled(fixedDelayString = "${application.security.revocation.poll-interval-millis:5000}")
+    public synchronized int poll() {
+        int[] count = {0};
+        RowCallbackHandler handler = rs -> {
+            tokenDenyList.revoke(rs.getString(1), rs.getTimestamp(2).getTime());
+            Timestamp revokedDate = rs.getTimestamp(3);
+            if (watermark == null || revokedDate.after(watermark)) {
+                watermark = revokedDate;
+            }
+            count[0]++;
+        };
+
+        if (watermark == null) {
+            // until a revocation is read, the next poll loads all of them again, which is cheap while there are none
+            jdbcTemplate.query("SELECT token_id, expires_at, revoked_date FROM revoked_token " +
+                "WHERE expires_at > CURRENT_TIMESTAMP", handler);
+        } else {
+            jdbcTemplate.query("SELECT token_id, expires_at, revoked_date FROM revoked_token " +
+                "WHERE revoked_date > ?", handler, new Timestamp(watermark.getTime() - windowMillis));
+        }
+        return count[0];
+    }
+
+    /**
+     * Drops the revocations of the expired tokens, which are rejected anyway.
+     */
+    @Scheduled(fixedDelayString = "${application.security.revocation.purge-interval-millis:3600000}")
+    public void purge() {
+        int deleted = transactionTemplate.execute(status ->
+            jdbcTemplate.update("DELETE FROM revoked_token WHERE expires_at < CURRENT_TIMESTAMP"));
+        int dropped = tokenDenyList.purgeExpired(System.currentTimeMillis());
+        log.debug("Purged {} revoked tokens from the deny-list and {} from memory", deleted, dropped);
+    }
+}
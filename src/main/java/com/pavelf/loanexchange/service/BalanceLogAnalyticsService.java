@@ -0,0 +1,156 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.aop.retry.RetryOnConcurrencyFailure;
+import com.pavelf.loanexchange.domain.BalanceLogBucket;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.repository.BalanceLogBucketRepository;
+import com.pavelf.loanexchange.service.dto.BalanceFlowDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Service for the money flows of the ledger, read from the {@link BalanceLogBucket} rollup instead of the ledger.
+ * <p>
+ * The account buckets are written with every ledger entry. The platform-wide buckets of a day are rolled up from
+ * the account buckets once the day (UTC) is over, and the days not rolled up yet are summed from the account
+ * buckets when read, so a window of any length costs one bucket per day and event type.
+ */
+@Service
+@Transactional(readOnly = true)
+public class BalanceLogAnalyticsService {
+
+    /**
+     * Length of the periods the flows are reported for.
+     */
+    public enum Interval {
+        DAY, WEEK, MONTH;
+
+        /**
+         * The first day of the period of the day, weeks starting on Monday.
+         */
+        LocalDate startOf(LocalDate day) {
+            switch (this) {
+                case WEEK:
+                    return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH:
+                    return day.withDayOfMonth(1);
+                default:
+                    return day;
+            }
+        }
+    }
+
+    private final Logger log = LoggerFactory.getLogger(BalanceLogAnalyticsService.class);
+
+    private final BalanceLogBucketRepository balanceLogBucketRepository;
+
+    public BalanceLogAnalyticsService(BalanceLogBucketRepository balanceLogBucketRepository) {
+        this.balanceLogBucketRepository = balanceLogBucketRepository;
+    }
+
+    /**
+     * Flows of the account between two days, both included.
+     *
+     * @return one flow per period and event type with an entry, ordered by period and type.
+     */
+    public List<BalanceFlowDTO> getAccountFlows(Long accountId, Interval interval, LocalDate from, LocalDate to) {
+        Map<LocalDate, Map<BalanceLogEvent, BalanceFlowDTO>> flows = new TreeMap<>();
+        balanceLogBucketRepository.findAllForAccount(accountId, from, to).forEach(bucket ->
+            add(flows, interval, from, bucket.getPeriod(), bucket.getType(), bucket.getIncoming(),
+                bucket.getOutgoing(), bucket.getEntries()));
+        return flatten(flows);
+    }
+
+    /**
+     * Flows of all the accounts of the platform between two days, both included.
+     *
+     * @return one flow per period and event type with an entry, ordered by period and type.
+     */
+    public List<BalanceFlowDTO> getPlatformFlows(Interval interval, LocalDate from, LocalDate to) {
+        Map<LocalDate, Map<BalanceLogEvent, BalanceFlowDTO>> flows = new TreeMap<>();
+        LocalDate lastRolledUp = balanceLogBucketRepository.findLastPlatformPeriod();
+        LocalDate tailFrom = from;
+
+        if (lastRolledUp != null && !lastRolledUp.isBefore(from)) {
+            LocalDate rolledUpTo = lastRolledUp.isBefore(to) ? lastRolledUp : to;
+            balanceLogBucketRepository.findAllForPlatform(from, rolledUpTo).forEach(bucket ->
+                add(flows, interval, from, bucket.getPeriod(), bucket.getType(), bucket.getIncoming(),
+                    bucket.getOutgoing(), bucket.getEntries()));
+            tailFrom = lastRolledUp.plusDays(1);
+        }
+
+        if (!tailFrom.isAfter(to)) {
+            balanceLogBucketRepository.sumAccountBuckets(tailFrom, to).forEach(row ->
+                add(flows, interval, from, (LocalDate) row[1], (BalanceLogEvent) row[0], (BigDecimal) row[2],
+                    (BigDecimal) row[3], ((Number) row[4]).longValue()));
+        }
+        return flatten(flows);
+    }
+
+    /**
+     * Rolls the account buckets of the days which are over up into platform-wide buckets. The last day rolled up
+     * before is rolled up again, to take in the entries committed after it was.
+     * <p>
+     * Every node runs the rollup, so it first locks its row of {@code scheduled_task_lock}. The transaction reads
+     * committed data, so a node which waited for the lock sees the buckets written by the node which held it and
+     * replaces them rather than adding its own.
+     *
+     * @return the number of platform-wide buckets written.
+     */
+    @Scheduled(cron = "0 5 * * * *", zone = "UTC")
+    @RetryOnConcurrencyFailure
+    @Transactional
+    public int rollUpPlatformBuckets() {
+        if (balanceLogBucketRepository.lockPlatformRollup() == 0) {
+            log.warn("No lock row for the rollup of the platform-wide balance log buckets, rolling up unlocked.");
+        }
+        LocalDate lastDayOver = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+        LocalDate from = balanceLogBucketRepository.findLastPlatformPeriod();
+        if (from == null) {
+            from = balanceLogBucketRepository.findFirstAccountPeriod();
+        }
+        if (from == null || from.isAfter(lastDayOver)) {
+            return 0;
+        }
+
+        balanceLogBucketRepository.deletePlatformBucketsFrom(from);
+        List<BalanceLogBucket> buckets = new ArrayList<>();
+        for (Object[] row : balanceLogBucketRepository.sumAccountBuckets(from, lastDayOver)) {
+            buckets.add(new BalanceLogBucket().type((BalanceLogEvent) row[0]).period((LocalDate) row[1])
+                .incoming((BigDecimal) row[2]).outgoing((BigDecimal) row[3]).entries(((Number) row[4]).longValue()));
+        }
+        balanceLogBucketRepository.saveAll(buckets);
+        log.info("Rolled up {} platform-wide balance log buckets for {} to {}.", buckets.size(), from, lastDayOver);
+        return buckets.size();
+    }
+
+    private static void add(Map<LocalDate, Map<BalanceLogEvent, BalanceFlowDTO>> flows, Interval interval,
+                            LocalDate from, LocalDate day, BalanceLogEvent type, BigDecimal incoming,
+                            BigDecimal outgoing, long entries) {
+        LocalDate start = interval.startOf(day);
+        LocalDate period = start.isBefore(from) ? from : start;
+        flows.computeIfAbsent(period, key -> new EnumMap<>(BalanceLogEvent.class))
+            .computeIfAbsent(type, key -> new BalanceFlowDTO(period, type))
+            .add(incoming, outgoing, entries);
+    }
+
+    private static List<BalanceFlowDTO> flatten(Map<LocalDate, Map<BalanceLogEvent, BalanceFlowDTO>> flows) {
+        List<BalanceFlowDTO> result = new ArrayList<>();
+        flows.values().forEach(types -> result.addAll(types.values()));
+        return result;
+    }
+}
@@ -0,0 +1,175 @@
+package com.pavelf.loanexchange.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.web.rest.specifications.BalanceLogSpecification;
+import org.hibernate.jpa.QueryHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Service for exporting {@link BalanceLog} entries.
+ * <p>
+ * The rows are read through a forward-only cursor with a fixed fetch size and written out one by one as scalar
+ * columns, so neither the persistence context nor the heap grows with the number of rows exported.
+ */
+@Service
+@Transactional(readOnly = true)
+public class BalanceLogExportService {
+
+    /**
+     * Export formats, one row per entry.
+     */
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String mediaType;
+
+        private final String extension;
+
+        Format(String mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String[] COLUMNS = {"id", "date", "type", "oldValue", "amountChanged", "accountId", "dealId"};
+
+    private final Logger log = LoggerFactory.getLogger(BalanceLogExportService.class);
+
+    private final EntityManager entityManager;
+
+    private final ObjectMapper objectMapper;
+
+    public BalanceLogExportService(EntityManager entityManager, ObjectMapper objectMapper) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Writes the entries matching the specification in the order they were logged.
+     *
+     * @return the number of entries written.
+     */
+    public long export(BalanceLogSpecification specification, Format format, OutputStream out) throws IOException {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<BalanceLog> root = query.from(BalanceLog.class);
+        query.multiselect(root.get("id"), root.get("date"), root.get("type"), root.get("oldValue"),
+            root.get("amountChanged"), root.get("account").get("id"), root.get("deal").get("id"));
+        Predicate filter = specification.toPredicate(root, query, cb);
+        if (filter != null) {
+            query.where(filter);
+        }
+        query.orderBy(cb.asc(root.get("id")));
+
+        try (Stream<Tuple> rows = entityManager.createQuery(query)
+            .setHint(QueryHints.HINT_FETCH_SIZE, FETCH_SIZE)
+            .setHint(QueryHints.HINT_READONLY, true)
+            .getResultStream()) {
+            long written = write(rows.iterator(), format, out);
+            log.debug("Exported {} balance logs as {}", written, format);
+            return written;
+        }
+    }
+
+    /**
+     * Writes an export without entries, which is only the CSV header.
+     */
+    public void exportNothing(Format format, OutputStream out) throws IOException {
+        write(Collections.emptyIterator(), format, out);
+    }
+
+    private long write(Iterator<Tuple> rows, Format format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long written = 0;
+        if (format == Format.NDJSON) {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)
+                .setRootValueSeparator(new SerializedString("\n"));
+            while (rows.hasNext()) {
+                writeJson(generator, rows.next());
+                written++;
+            }
+            generator.flush();
+            if (written > 0) {
+                writer.write('\n');
+            }
+        } else {
+            writer.write(String.join(",", COLUMNS));
+            writer.write('\n');
+            while (rows.hasNext()) {
+                writeCsv(writer, rows.next());
+                written++;
+            }
+        }
+        writer.flush();
+        return written;
+    }
+
+    private static void writeCsv(Writer writer, Tuple row) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = row.get(i);
+            if (value instanceof BigDecimal) {
+                writer.write(((BigDecimal) value).toPlainString());
+            } else if (value != null) {
+                // ids, ISO-8601 instants and event names never need quoting
+                writer.write(value.toString());
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static void writeJson(JsonGenerator generator, Tuple row) throws IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            Object value = row.get(i);
+            generator.writeFieldName(COLUMNS[i]);
+            if (value == null) {
+                generator.writeNull();
+            } else if (value instanceof Long) {
+                generator.writeNumber((Long) value);
+            } else if (value instanceof BigDecimal) {
+                generator.writeNumber(((BigDecimal) value).toPlainString());
+            } else {
+                // ISO-8601 instants and event names
+                generator.writeString(value.toString());
+            }
+        }
+        generator.writeEndObject();
+    }
+}
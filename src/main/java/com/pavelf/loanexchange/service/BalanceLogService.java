@@ -1,133 +1,212 @@
 package com.pavelf.loanexchange.service;
 
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.config.ApplicationProperties.Payments.AccrualMode;
 import com.pavelf.loanexchange.domain.AccountStats;
 import com.pavelf.loanexchange.domain.BalanceLog;
 import com.pavelf.loanexchange.domain.Deal;
-import com.pavelf.loanexchange.domain.Notification;
+import com.pavelf.loanexchange.domain.PaymentRun;
 import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
 import com.pavelf.loanexchange.domain.enumeration.DealStatus;
 import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
-import com.pavelf.loanexchange.repository.BalanceLogRepository;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+import com.pavelf.loanexchange.repository.AccountStatsBucketRepository;
 import com.pavelf.loanexchange.repository.DealRepository;
-import com.pavelf.loanexchange.repository.NotificationRepository;
 import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class BalanceLogService {
 
-    private final BalanceLogRepository balanceLogRepository;
+    private static final ZoneId PAYMENT_ZONE = ZoneId.of("Europe/Moscow");
+
+    /**
+     * How long a run may go without a heartbeat before another node resumes it; each chunk charged is a heartbeat.
+     */
+    private static final long STALE_RUN_HEARTBEAT_MINUTES = 10;
+
     private final DealRepository dealRepository;
-    private final NotificationRepository notificationRepository;
+    private final NotificationWriter notificationWriter;
+    private final LedgerService ledgerService;
+    private final InterestChargingEngine interestChargingEngine;
+    private final PaymentRunService paymentRunService;
+    private final BulkAccrualService bulkAccrualService;
+    private final AccountStatsBucketRepository accountStatsBucketRepository;
+    private final AccrualMode accrualMode;
     private final Logger log = LoggerFactory.getLogger(BalanceLogService.class);
 
-    public BalanceLogService(BalanceLogRepository balanceLogRepository, DealRepository dealRepository,
-                             NotificationRepository notificationRepository) {
-        this.balanceLogRepository = balanceLogRepository;
+    public BalanceLogService(DealRepository dealRepository, NotificationWriter notificationWriter,
+                             LedgerService ledgerService, InterestChargingEngine interestChargingEngine,
+                             PaymentRunService paymentRunService, BulkAccrualService bulkAccrualService,
+                             AccountStatsBucketRepository accountStatsBucketRepository,
+                             ApplicationProperties applicationProperties) {
         this.dealRepository = dealRepository;
-        this.notificationRepository = notificationRepository;
+        this.notificationWriter = notificationWriter;
+        this.ledgerService = ledgerService;
+        this.interestChargingEngine = interestChargingEngine;
+        this.paymentRunService = paymentRunService;
+        this.bulkAccrualService = bulkAccrualService;
+        this.accountStatsBucketRepository = accountStatsBucketRepository;
+        this.accrualMode = applicationProperties.getPayments().getAccrualMode();
+    }
+
+    /**
+     * Charges a chunk of deals within the caller's transaction, deals are charged in id order with either mode.
+     *
+     * @return the number of deals processed.
+     */
+    int processChunk(PaymentRun run, DealSpecification chunk, AccrualMode mode) {
+        if (mode == AccrualMode.BULK) {
+            return bulkAccrualService.accrue(run, chunk);
+        }
+        List<Deal> deals = dealRepository.findAll(chunk, Sort.by("id"));
+        processPayments(run, deals);
+        return deals.size();
     }
 
-    private void processPayments(List<Deal> deals) {
-        deals.forEach(deal -> {
+    private void processPayments(PaymentRun run, List<Deal> deals) {
+        final Set<Long> alreadyCharged = paymentRunService.findChargedDealIds(run, deals);
+
+        deals.stream().filter(deal -> !alreadyCharged.contains(deal.getId())).forEach(deal -> {
             final Instant now = Instant.now();
-            final BalanceLog debtorBalance = balanceLogRepository.findLastLogForUser(deal.getRecipient()).get();
-            final BalanceLog creditorBalance = balanceLogRepository.findLastLogForUser(deal.getEmitter()).get();
-            final BalanceLog dealBalance = balanceLogRepository.findLastLogForDeal(deal).get();
+            // an account nothing was logged for yet starts at zero
+            final BigDecimal debtorBalance = ledgerService.getAccountBalance(deal.getRecipient())
+                .orElse(BigDecimal.ZERO);
+            final BigDecimal creditorBalance = ledgerService.getAccountBalance(deal.getEmitter())
+                .orElse(BigDecimal.ZERO);
+            final BigDecimal dealBalance = ledgerService.getDealBalance(deal).get();
             final BigDecimal averagePayment = deal.getAveragePayment();
 
             //plus percent on deal balance
-            BalanceLog chargePercent = new BalanceLog().date(now).oldValue(dealBalance.getCurrentAccountBalance())
+            BalanceLog chargePercent = new BalanceLog().date(now).oldValue(dealBalance)
                 .amountChanged(deal.getPercentCharge()).type(BalanceLogEvent.PERCENT_CHARGE).deal(deal);
-            balanceLogRepository.save(chargePercent);
+            ledgerService.append(chargePercent);
 
             //minus on debtor balance
-            BalanceLog minusBalance = new BalanceLog().date(now).oldValue(debtorBalance.getCurrentAccountBalance())
+            BalanceLog minusBalance = new BalanceLog().date(now).oldValue(debtorBalance)
                 .amountChanged(averagePayment.negate()).type(BalanceLogEvent.DEAL_PAYMENT).account(deal.getRecipient());
-            balanceLogRepository.save(minusBalance);
+            ledgerService.append(minusBalance);
 
             //minus payment on deal balance
             BalanceLog dealPayment = new BalanceLog().date(now).oldValue(chargePercent.getCurrentAccountBalance())
                 .amountChanged(averagePayment.negate()).type(BalanceLogEvent.DEAL_PAYMENT).deal(deal);
-            balanceLogRepository.save(dealPayment);
+            ledgerService.append(dealPayment);
 
             //plus payment on creditor balance
-            BalanceLog addPayment = new BalanceLog().date(now).oldValue(creditorBalance.getCurrentAccountBalance())
+            BalanceLog addPayment = new BalanceLog().date(now).oldValue(creditorBalance)
                 .amountChanged(averagePayment).type(BalanceLogEvent.DEAL_PAYMENT).account(deal.getEmitter());
-            balanceLogRepository.save(addPayment);
+            ledgerService.append(addPayment);
 
             //check if deal can be closed
             if (chargePercent.getCurrentAccountBalance().compareTo(BigDecimal.ZERO) == 0) {
                 deal.setStatus(DealStatus.SUCCESS);
                 dealRepository.save(deal);
-                notificationRepository.save(new Notification().date(now).type(BalanceLogEvent.DEAL_CLOSED)
-                    .recipient(deal.getRecipient()).associatedDeal(deal));
-                notificationRepository.save(new Notification().date(now).type(BalanceLogEvent.DEAL_CLOSED)
-                    .recipient(deal.getEmitter()).associatedDeal(deal));
+                notificationWriter.publish(
+                    NotificationEvent.of(now, BalanceLogEvent.DEAL_CLOSED, deal.getRecipient(), deal));
+                notificationWriter.publish(
+                    NotificationEvent.of(now, BalanceLogEvent.DEAL_CLOSED, deal.getEmitter(), deal));
             }
+
+            paymentRunService.markCharged(run, deal);
         });
     }
 
     @Scheduled(cron = "0 0 0 * * *", zone = "Europe/Moscow")
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public void chargePercentForEveryDayDeals() {
         log.info("chargePercentForEveryDayDeals() started.");
-
-        DealSpecification specification = new DealSpecification();
-        specification.setWithStatus(DealStatus.ACTIVE);
-        specification.setPaymentEvery(PaymentInterval.DAY);
-
-        List<Deal> activeDeals = dealRepository.findAll(specification);
-        processPayments(activeDeals);
-
+        chargePercent(PaymentInterval.DAY, LocalDate.now(PAYMENT_ZONE));
         log.info("chargePercentForEveryDayDeals() ended.");
     }
 
     @Scheduled(cron = "0 0 0 1 1/1 *", zone = "Europe/Moscow")
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public void chargePercentForEveryMonthDeals() {
         log.info("chargePercentForEveryMonthDeals() started.");
-
-        DealSpecification specification = new DealSpecification();
-        specification.setWithStatus(DealStatus.ACTIVE);
-        specification.setPaymentEvery(PaymentInterval.MONTH);
-
-        List<Deal> activeDeals = dealRepository.findAll(specification);
-        processPayments(activeDeals);
-
+        chargePercent(PaymentInterval.MONTH, LocalDate.now(PAYMENT_ZONE).withDayOfMonth(1));
         log.info("chargePercentForEveryMonthDeals() ended.");
     }
 
     @Scheduled(cron = "0 0 0 * * *", zone = "Europe/Moscow")
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public void chargePercentForSinglePaymentDeals() {
         log.info("chargePercentForSinglePaymentDeals() started.");
+        chargePercent(PaymentInterval.ONE_TIME, LocalDate.now(PAYMENT_ZONE));
+        log.info("chargePercentForSinglePaymentDeals() ended.");
+    }
+
+    /**
+     * Resumes runs which were interrupted, e.g. by a node going down in the middle of charging, told from runs still
+     * being charged by their heartbeat. Only the deals without a {@link com.pavelf.loanexchange.domain.PaymentRunItem}
+     * for the period are charged.
+     */
+    @Scheduled(initialDelay = 60_000, fixedDelay = 300_000)
+    public void resumeIncompletePaymentRuns() {
+        Instant heartbeatBefore = Instant.now().minus(STALE_RUN_HEARTBEAT_MINUTES, ChronoUnit.MINUTES);
+        paymentRunService.findIncompleteRuns(heartbeatBefore).stream()
+            .filter(run -> paymentRunService.takeOverStaleRun(run, heartbeatBefore))
+            .forEach(run -> {
+                log.info("Resuming incomplete payment run {}", run);
+                chargePercent(run.getPaymentEvery(), run.getPeriod());
+            });
+    }
+
+    /**
+     * Charges every active deal with the given payment interval for the period, skipping deals already charged
+     * for it. Safe to call again for the same period, e.g. to rerun a missed night.
+     *
+     * @param paymentEvery payment interval of the deals to charge.
+     * @param period the day charged, or the first day of the month for monthly deals.
+     */
+    public void chargePercent(PaymentInterval paymentEvery, LocalDate period) {
+        PaymentRun run;
+        try {
+            run = paymentRunService.startRun(paymentEvery, period);
+        } catch (DataIntegrityViolationException e) {
+            // started by another node at the same moment
+            run = paymentRunService.startRun(paymentEvery, period);
+        }
+
+        if (run.getStatus() == PaymentRunStatus.COMPLETED) {
+            log.info("Payment run for {} deals, period {} is already completed.", paymentEvery, period);
+            return;
+        }
 
         DealSpecification specification = new DealSpecification();
         specification.setWithStatus(DealStatus.ACTIVE);
-        specification.setPaymentEvery(PaymentInterval.ONE_TIME);
-        specification.setEndDateIntervalEnd(Instant.now().plus(1, ChronoUnit.DAYS).toEpochMilli());
+        specification.setPaymentEvery(paymentEvery);
 
-        List<Deal> activeDeals = dealRepository.findAll(specification);
-        processPayments(activeDeals);
+        if (paymentEvery == PaymentInterval.ONE_TIME) {
+            specification.setEndDateIntervalEnd(period.plusDays(1).atStartOfDay(PAYMENT_ZONE).toInstant().toEpochMilli());
+        }
 
-        log.info("chargePercentForSinglePaymentDeals() ended.");
+        final PaymentRun paymentRun = run;
+        InterestChargingEngine.Report report = interestChargingEngine.charge(paymentEvery.name(), specification,
+            chunk -> processChunk(paymentRun, chunk, accrualMode),
+            () -> paymentRunService.heartbeat(paymentRun));
+
+        if (report.getFailedChunks() == 0) {
+            paymentRunService.completeRun(run);
+        }
     }
 
+    /**
+     * Stats of the account read from its rollup, which holds one bucket per event type and month, so the cost
+     * does not grow with the number of ledger entries.
+     */
+    @Transactional(readOnly = true)
     public AccountStats getAccountStats(Long forUserId) {
-        AccountStats stats = new AccountStats();
-        stats.setAllTimeIncoming(balanceLogRepository.getSumWhereChangeIsPositive(forUserId));
-        stats.setAllTimePaymentForLoan(balanceLogRepository.getAmountChangedSumForUser(forUserId, BalanceLogEvent.DEAL_PAYMENT));
-        return stats;
+        return AccountStats.of(accountStatsBucketRepository.findAllForAccount(forUserId));
     }
 }
@@ -0,0 +1,331 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.config.cache.CacheInvalidation;
+import com.pavelf.loanexchange.config.cache.CacheInvalidationBus;
+import com.pavelf.loanexchange.domain.AccountStatsBucket;
+import com.pavelf.loanexchange.domain.BalanceLogBucket;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.Notification;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Charges a chunk of deals with a fixed number of {@code INSERT ... SELECT} and {@code UPDATE} statements
+ * instead of four {@link com.pavelf.loanexchange.domain.BalanceLog} entities per deal.
+ * <p>
+ * The ledger written is the same as the one written by {@code BalanceLogService.processPayments}: amounts are
+ * computed with the arithmetic of {@link Deal#getAveragePayment()} and {@link Deal#getPercentCharge()}, and an
+ * account paying or paid by several deals of the chunk gets one row per deal and role, chained in deal id order.
+ * The ids come in blocks from the {@link IdAllocator}, in that order. The chunk is selected by inserting its
+ * {@code payment_run_item} rows first, so deals already charged for the period are skipped the same way. The account
+ * stats of the month and the ledger buckets of the day are updated from the same cohort.
+ */
+@Service
+@Transactional
+public class BulkAccrualService {
+
+    private static final String PERCENT_CHARGE = "d.start_balance * d.jhi_percent";
+
+    private static final String QUOTIENT = "((" + PERCENT_CHARGE + " * d.term + d.start_balance) / d.term)";
+
+    private static final String ROUNDED_QUOTIENT = "CAST(" + QUOTIENT + " AS DECIMAL(38, 4))";
+
+    /**
+     * {@link Deal#getAveragePayment()}. The cast rounds the division HALF_UP on both databases, so a tie rounded up
+     * to an odd last digit is taken back to get the HALF_EVEN rounding of {@link java.math.BigDecimal#divide}.
+     */
+    private static final String AVERAGE_PAYMENT = "CASE WHEN d.payment_every = '" + PaymentInterval.ONE_TIME + "' " +
+        "THEN d.start_balance * (d.jhi_percent + 1) " +
+        "WHEN " + QUOTIENT + " - " + ROUNDED_QUOTIENT + " = -0.00005 " +
+        "AND MOD(CAST(" + ROUNDED_QUOTIENT + " * 10000 AS DECIMAL(38, 0)), 2) = 1 " +
+        "THEN " + ROUNDED_QUOTIENT + " - 0.0001 " +
+        "ELSE " + ROUNDED_QUOTIENT + " END";
+
+    /**
+     * Sum of the payments as the ledger stores them, each rounded to the scale of {@code balance_log}.
+     */
+    private static final String LOGGED_PAYMENT_SUM = "SUM(CAST(" + AVERAGE_PAYMENT + " AS DECIMAL(21, 2)))";
+
+    private static final String COHORT = "FROM payment_run_item c JOIN deal d ON d.id = c.deal_id " +
+        "WHERE c.run_id = :runId AND c.jhi_date = :now AND c.deal_id BETWEEN :idFrom AND :idTo";
+
+    /**
+     * One payment per deal and role, the debit of the debtor before the credit of the creditor of a deal, as the
+     * entity path logs them. The old value of each includes the payments before it in either role, so the chain of an
+     * account which borrows on some deals of the chunk and lends on others is kept. An account nothing was logged for
+     * yet has no balance row and starts at zero, as in {@link LedgerService#append}.
+     */
+    private static final String ACCOUNT_PAYMENTS = "SELECT l.deal_id, l.leg, l.account_id, l.amount, " +
+        "COALESCE(ab.balance, 0) AS balance, " +
+        "SUM(l.amount) OVER (PARTITION BY l.account_id ORDER BY l.deal_id, l.leg) AS paid " +
+        "FROM (SELECT d.id AS deal_id, 0 AS leg, d.recipient_id AS account_id, -(" + AVERAGE_PAYMENT + ") AS amount " +
+        COHORT + " UNION ALL SELECT d.id, 1, d.emitter_id, " + AVERAGE_PAYMENT + " " + COHORT + ") l " +
+        "LEFT JOIN account_balance ab ON ab.account_id = l.account_id";
+
+    private static final String INSERT_DEAL_LOG =
+        "INSERT INTO balance_log (id, jhi_date, old_value, amount_changed, jhi_type, deal_id) ";
+
+    private static final String INSERT_ACCOUNT_LOG =
+        "INSERT INTO balance_log (id, jhi_date, old_value, amount_changed, jhi_type, account_id) ";
+
+    private static final String INSERT_NOTIFICATION =
+        "INSERT INTO notification (id, jhi_date, jhi_type, recipient_id, associated_deal_id) ";
+
+    private final Logger log = LoggerFactory.getLogger(BulkAccrualService.class);
+
+    private final EntityManager entityManager;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final NotificationHub notificationHub;
+    private final UnreadNotificationCounter unreadNotificationCounter;
+    private final IdAllocator idAllocator;
+
+    public BulkAccrualService(EntityManager entityManager, CacheInvalidationBus cacheInvalidationBus,
+                              NotificationHub notificationHub, UnreadNotificationCounter unreadNotificationCounter,
+                              IdAllocator idAllocator) {
+        this.entityManager = entityManager;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.notificationHub = notificationHub;
+        this.unreadNotificationCounter = unreadNotificationCounter;
+        this.idAllocator = idAllocator;
+    }
+
+    /**
+     * Charges the deals of the chunk which were not charged for the period of the run yet.
+     *
+     * @param run the payment run the chunk belongs to.
+     * @param chunk status, payment interval, id range and optional end date of the deals to charge.
+     * @return the number of deals charged.
+     */
+    public int accrue(PaymentRun run, DealSpecification chunk) {
+        final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        int charged = markCharged(run, chunk, now);
+        if (charged == 0) {
+            return 0;
+        }
+
+        // plus percent on deal balance
+        execute(run, chunk, now, INSERT_DEAL_LOG + withIds(
+            ":now, r.balance, r.charge, '" + BalanceLogEvent.PERCENT_CHARGE + "', r.deal_id",
+            "SELECT d.id AS deal_id, db.balance, " + PERCENT_CHARGE + " AS charge " + COHORT.replace("WHERE",
+                "JOIN deal_balance db ON db.deal_id = d.id WHERE"), "deal_id", charged));
+
+        // minus on debtor balance, plus payment on creditor balance
+        execute(run, chunk, now, INSERT_ACCOUNT_LOG + withIds(
+            ":now, r.balance + r.paid - r.amount, r.amount, '" + BalanceLogEvent.DEAL_PAYMENT + "', r.account_id",
+            ACCOUNT_PAYMENTS, "deal_id, leg", 2 * charged));
+
+        // minus payment on deal balance
+        execute(run, chunk, now, INSERT_DEAL_LOG + withIds(
+            ":now, r.balance + r.charge, -r.payment, '" + BalanceLogEvent.DEAL_PAYMENT + "', r.deal_id",
+            "SELECT d.id AS deal_id, db.balance, " + PERCENT_CHARGE + " AS charge, " + AVERAGE_PAYMENT +
+                " AS payment " + COHORT.replace("WHERE", "JOIN deal_balance db ON db.deal_id = d.id WHERE"),
+            "deal_id", charged));
+
+        // close deals whose balance is paid off, before the deal balance moves on
+        int closed = execute(run, chunk, now, "UPDATE deal SET status = '" + DealStatus.SUCCESS + "', version = version + 1 " +
+            "WHERE id IN (SELECT d.id " + COHORT.replace("WHERE", "JOIN deal_balance db ON db.deal_id = d.id WHERE") +
+            " AND db.balance + " + PERCENT_CHARGE + " = 0)");
+        if (closed > 0) {
+            String closedCohort = COHORT + " AND d.status = '" + DealStatus.SUCCESS + "'";
+            execute(run, chunk, now, INSERT_NOTIFICATION + withIds(
+                ":now, '" + BalanceLogEvent.DEAL_CLOSED + "', r.account_id, r.deal_id",
+                "SELECT d.id AS deal_id, 0 AS leg, d.recipient_id AS account_id " + closedCohort +
+                    " UNION ALL SELECT d.id, 1, d.emitter_id " + closedCohort, "deal_id, leg", 2 * closed));
+            pushClosedNotifications(run, chunk, now);
+            entityManager.getEntityManagerFactory().getCache().evict(Deal.class);
+            cacheInvalidationBus.publish(CacheInvalidation.clear(Deal.class.getName()));
+        }
+
+        execute(run, chunk, now, "UPDATE deal_balance SET " +
+            "balance = balance + (SELECT " + PERCENT_CHARGE + " - " + AVERAGE_PAYMENT + " " + COHORT +
+            " AND d.id = deal_balance.deal_id), " +
+            "last_log_id = (SELECT MAX(bl.id) FROM balance_log bl " +
+            "WHERE bl.deal_id = deal_balance.deal_id AND bl.jhi_date = :now) " +
+            "WHERE deal_id IN (SELECT d.id " + COHORT + ")");
+        // balance rows at zero for the accounts logged for the first time, which the payments are added to next
+        execute(run, chunk, now, "INSERT INTO account_balance (account_id, balance, last_log_id) " +
+            "SELECT bl.account_id, 0, MAX(bl.id) FROM balance_log bl WHERE bl.jhi_date = :now " +
+            "AND bl.account_id IN (SELECT d.recipient_id " + COHORT + " UNION SELECT d.emitter_id " + COHORT + ") " +
+            "AND NOT EXISTS (SELECT 1 FROM account_balance ab WHERE ab.account_id = bl.account_id) " +
+            "GROUP BY bl.account_id");
+        execute(run, chunk, now, accountBalanceSql("recipient_id", "-"));
+        execute(run, chunk, now, accountBalanceSql("emitter_id", "+"));
+
+        // account stats of the month and ledger buckets of the day
+        updateRollup(run, chunk, now, "account_stats", 0, AccountStatsBucket.periodOf(now));
+        updateRollup(run, chunk, now, "balance_log_bucket", charged, BalanceLogBucket.periodOf(now));
+
+        log.debug("Bulk accrual charged {} deals of chunk [{}, {}], closed {}.", charged, chunk.getIdFrom(),
+            chunk.getIdTo(), closed);
+        return charged;
+    }
+
+    private int markCharged(PaymentRun run, DealSpecification chunk, Instant now) {
+        StringBuilder candidates = new StringBuilder("FROM deal d ")
+            .append("WHERE d.status = :status AND d.payment_every = :paymentEvery ")
+            .append("AND d.id BETWEEN :idFrom AND :idTo ")
+            .append("AND NOT EXISTS (SELECT 1 FROM payment_run_item i WHERE i.deal_id = d.id AND i.period = :period)");
+        if (chunk.getEndDateIntervalEnd() != null) {
+            candidates.append(" AND d.end_date <= :endDate");
+        }
+
+        // the chunk transaction is serializable, so the insert selects the deals counted here
+        int count = ((Number) bindCandidates(entityManager.createNativeQuery("SELECT COUNT(*) " + candidates),
+            run, chunk).getSingleResult()).intValue();
+        if (count == 0) {
+            return 0;
+        }
+        Query query = entityManager.createNativeQuery(
+            "INSERT INTO payment_run_item (id, period, jhi_date, run_id, deal_id) " +
+                withIds(":period, :now, :runId, r.deal_id", "SELECT d.id AS deal_id " + candidates, "deal_id", count));
+        bindCandidates(query, run, chunk).setParameter("runId", run.getId()).setParameter("now", now);
+        return query.executeUpdate();
+    }
+
+    private Query bindCandidates(Query query, PaymentRun run, DealSpecification chunk) {
+        query.setParameter("period", run.getPeriod())
+            .setParameter("status", chunk.getWithStatus().name())
+            .setParameter("paymentEvery", chunk.getPaymentEvery().name())
+            .setParameter("idFrom", chunk.getIdFrom())
+            .setParameter("idTo", chunk.getIdTo());
+        if (chunk.getEndDateIntervalEnd() != null) {
+            query.setParameter("endDate", Instant.ofEpochMilli(chunk.getEndDateIntervalEnd()));
+        }
+        return query;
+    }
+
+    /**
+     * The rows of an {@code INSERT ... SELECT}, each with an id out of blocks allocated by the {@link IdAllocator}.
+     *
+     * @param columns the inserted columns after the id, selected from the rows as {@code r}.
+     * @param rows the statement selecting the rows.
+     * @param orderBy columns of the rows in the order of which the ids are given.
+     * @param maxRows at least the number of rows selected.
+     * @return the statement selecting the rows with their ids.
+     */
+    private String withIds(String columns, String rows, String orderBy, int maxRows) {
+        StringBuilder blocks = new StringBuilder();
+        List<Long> bases = idAllocator.allocateBlocks(maxRows);
+        for (int i = 0; i < bases.size(); i++) {
+            blocks.append(i == 0 ? "SELECT " : " UNION ALL SELECT ").append(i).append(" AS idx, ")
+                .append(bases.get(i)).append(" AS base");
+        }
+        return "SELECT b.base + MOD(r.rn - 1, " + IdAllocator.BLOCK_SIZE + "), " + columns + " " +
+            "FROM (SELECT ROW_NUMBER() OVER (ORDER BY " + orderBy + ") AS rn, q.* FROM (" + rows + ") q) r " +
+            "JOIN (" + blocks + ") b ON b.idx = (r.rn - 1) / " + IdAllocator.BLOCK_SIZE;
+    }
+
+    private String accountBalanceSql(String accountColumn, String sign) {
+        return "UPDATE account_balance SET " +
+            "balance = balance " + sign + " (SELECT SUM(" + AVERAGE_PAYMENT + ") " + COHORT +
+            " AND d." + accountColumn + " = account_balance.account_id), " +
+            "last_log_id = (SELECT MAX(bl.id) FROM balance_log bl " +
+            "WHERE bl.account_id = account_balance.account_id AND bl.jhi_date = :now) " +
+            "WHERE account_id IN (SELECT d." + accountColumn + " " + COHORT + ")";
+    }
+
+    /**
+     * Adds the payments of the chunk to the rollup rows of the period which already exist.
+     */
+    private String updateRollupSql(String table, String accountColumn, String sign) {
+        String totalColumn = "+".equals(sign) ? "incoming" : "outgoing";
+        String cohort = COHORT + " AND d." + accountColumn + " = " + table + ".account_id";
+        return "UPDATE " + table + " SET " +
+            totalColumn + " = " + totalColumn + " " + sign + " (SELECT " + LOGGED_PAYMENT_SUM + " " + cohort + "), " +
+            "entries = entries + (SELECT COUNT(*) " + cohort + ") " +
+            "WHERE jhi_type = '" + BalanceLogEvent.DEAL_PAYMENT + "' AND period = :period " +
+            "AND account_id IN (SELECT d." + accountColumn + " " + COHORT + ")";
+    }
+
+    /**
+     * Creates the rollup rows of the period which do not exist yet.
+     */
+    private String insertRollupSql(String table, int maxRows, String accountColumn, String sign) {
+        String rows = "SELECT d." + accountColumn + " AS account_id, '" +
+            BalanceLogEvent.DEAL_PAYMENT + "' AS jhi_type, :period AS period, " +
+            ("+".equals(sign) ? LOGGED_PAYMENT_SUM + " AS incoming, 0 AS outgoing"
+                : "0 AS incoming, -" + LOGGED_PAYMENT_SUM + " AS outgoing") + ", COUNT(*) AS entries " + COHORT +
+            " AND NOT EXISTS (SELECT 1 FROM " + table + " s WHERE s.account_id = d." + accountColumn +
+            " AND s.jhi_type = '" + BalanceLogEvent.DEAL_PAYMENT + "' AND s.period = :period) " +
+            "GROUP BY d." + accountColumn;
+        String columns = "account_id, jhi_type, period, incoming, outgoing, entries";
+        if (maxRows == 0) {
+            return "INSERT INTO " + table + " (" + columns + ") " + rows;
+        }
+        return "INSERT INTO " + table + " (id, " + columns + ") " +
+            withIds("r." + columns.replace(", ", ", r."), rows, "account_id", maxRows);
+    }
+
+    /**
+     * Hands the closing notifications of the chunk to the {@link NotificationHub} and the
+     * {@link UnreadNotificationCounter} once the chunk commits.
+     */
+    private void pushClosedNotifications(PaymentRun run, DealSpecification chunk, Instant now) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = bindChunk(entityManager.createNativeQuery(
+            "SELECT n.id, n.recipient_id, n.associated_deal_id FROM notification n " +
+                "WHERE n.jhi_date = :now AND n.jhi_type = '" + BalanceLogEvent.DEAL_CLOSED + "' " +
+                "AND n.associated_deal_id IN (SELECT d.id " + COHORT + ")"), run, chunk, now).getResultList();
+        List<Notification> notifications = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            notifications.add(new NotificationEvent(now, BalanceLogEvent.DEAL_CLOSED, toLong(row[1]), toLong(row[2]))
+                .toNotification(toLong(row[0])));
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                unreadNotificationCounter.increment(notifications);
+                notificationHub.publish(notifications);
+            }
+        });
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    private int execute(PaymentRun run, DealSpecification chunk, Instant now, String sql) {
+        return bindChunk(entityManager.createNativeQuery(sql), run, chunk, now).executeUpdate();
+    }
+
+    /**
+     * Adds the payments of the chunk to the {@code DEAL_PAYMENT} rows of the period of a rollup table. The rows
+     * which exist are updated before the missing ones are inserted, so that no payment is counted twice.
+     *
+     * @param maxRows at least the number of rows to insert in a table with ids, {@code 0} for a table without.
+     */
+    private void updateRollup(PaymentRun run, DealSpecification chunk, Instant now, String table, int maxRows,
+                              LocalDate period) {
+        for (String sql : new String[]{
+            updateRollupSql(table, "recipient_id", "-"), insertRollupSql(table, maxRows, "recipient_id", "-"),
+            updateRollupSql(table, "emitter_id", "+"), insertRollupSql(table, maxRows, "emitter_id", "+")}) {
+            bindChunk(entityManager.createNativeQuery(sql), run, chunk, now).setParameter("period", period)
+                .executeUpdate();
+        }
+    }
+
+    private Query bindChunk(Query query, PaymentRun run, DealSpecification chunk, Instant now) {
+        return query.setParameter("runId", run.getId())
+            .setParameter("now", now)
+            .setParameter("idFrom", chunk.getIdFrom())
+            .setParameter("idTo", chunk.getIdTo());
+    }
+}
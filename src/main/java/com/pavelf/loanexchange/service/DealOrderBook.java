@@ -0,0 +1,427 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory order book of the {@link DealStatus#PENDING} deals, which debtors browse far more often than deals
+ * change. The deals of each payment interval are kept sorted by success rate and by start balance, so the
+ * {@code successRate} and {@code withStartBalance} filters read a range of a sorted set instead of the database.
+ * <p>
+ * {@link DealService} hands every deal it writes to {@link #update} once the transaction commits. The book is
+ * rebuilt from the database on startup and every {@code application.deals.order-book.rebuild-interval-millis},
+ * which takes in the changes made elsewhere, such as on the other nodes. The changes handed over while a rebuild
+ * reads the database are applied again on top of it, and an older version of a deal never replaces a newer one.
+ */
+@Service
+public class DealOrderBook {
+
+    /**
+     * Ascending orders of the properties the book can sort by.
+     */
+    private static final Map<String, Comparator<Entry>> SORTABLE;
+
+    static {
+        Map<String, Comparator<Entry>> sortable = new HashMap<>();
+        sortable.put("id", Comparator.comparing(entry -> entry.id));
+        sortable.put("successRate", Comparator.comparing(entry -> entry.successRate));
+        sortable.put("startBalance", Comparator.comparing(entry -> entry.startBalance));
+        sortable.put("percent", Comparator.comparing(entry -> entry.percent));
+        sortable.put("term", Comparator.comparing(entry -> entry.term));
+        sortable.put("dateOpen", Comparator.comparing(entry -> entry.dateOpen));
+        SORTABLE = Collections.unmodifiableMap(sortable);
+    }
+
+    private static final Comparator<Entry> NEWEST_FIRST = SORTABLE.get("id").reversed();
+
+    private static final Comparator<Entry> BY_SUCCESS_RATE =
+        Comparator.<Entry, Integer>comparing(entry -> entry.successRate).reversed().thenComparing(NEWEST_FIRST);
+
+    private static final Comparator<Entry> BY_START_BALANCE =
+        Comparator.<Entry, BigDecimal>comparing(entry -> entry.startBalance).thenComparing(NEWEST_FIRST);
+
+    private final Logger log = LoggerFactory.getLogger(DealOrderBook.class);
+
+    private final DealRepository dealRepository;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final boolean enabled;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Index index = new Index();
+
+    /**
+     * The changes handed over since the running rebuild started, {@code null} between rebuilds.
+     */
+    private List<Entry> replay;
+
+    private volatile long lastRebuilt;
+
+    public DealOrderBook(DealRepository dealRepository, PlatformTransactionManager transactionManager,
+                         ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.dealRepository = dealRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = applicationProperties.getDeals().getOrderBook().isEnabled();
+
+        Gauge.builder("loanexchange.order.book.size", this, DealOrderBook::size)
+            .description("Pending deals in the order book")
+            .register(meterRegistry);
+        TimeGauge.builder("loanexchange.order.book.staleness", this, TimeUnit.MILLISECONDS, DealOrderBook::staleness)
+            .description("Time since the order book was last rebuilt from the database")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return whether the deals matching the specification, in the given order, can be read from the book: only
+     * the pending deals with the order book filters, once the book has been built.
+     */
+    public boolean canServe(DealSpecification params, Sort sort) {
+        return enabled && lastRebuilt > 0 && params.getWithStatus() == DealStatus.PENDING &&
+            params.getForEmitter() == null && params.getForRecipient() == null &&
+            params.getOnlyAvailableToDebtor() == null && params.getDealId() == null &&
+            params.getEndDateIntervalStart() == null && params.getEndDateIntervalEnd() == null &&
+            params.getIdFrom() == null && params.getIdTo() == null &&
+            sort.stream().allMatch(order -> SORTABLE.containsKey(order.getProperty()));
+    }
+
+    /**
+     * A page of the pending deals matching the specification, see {@link #canServe}.
+     */
+    public Page<Deal> findAll(DealSpecification params, Pageable pageable) {
+        List<Entry> matches = match(params, null, comparatorOf(pageable.getSort()));
+        int from = (int) Math.min(pageable.getOffset(), matches.size());
+        int to = Math.min(from + pageable.getPageSize(), matches.size());
+        return new PageImpl<>(toDeals(matches.subList(from, to)), pageable, matches.size());
+    }
+
+    /**
+     * A page of the pending deals matching the specification below the given id, in descending order of id, as
+     * {@code KeysetRepository} reads it.
+     */
+    public Slice<Deal> findAll(DealSpecification params, Long after, int size) {
+        List<Entry> matches = match(params, after, NEWEST_FIRST);
+        boolean hasNext = matches.size() > size;
+        return new SliceImpl<>(toDeals(hasNext ? matches.subList(0, size) : matches),
+            PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, "id")), hasNext);
+    }
+
+    /**
+     * Takes the state of the deal into the book once the current transaction commits, or at once outside of one.
+     */
+    public void update(Deal deal) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(Entry.of(deal));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                apply(Entry.of(deal));
+            }
+        });
+    }
+
+    /**
+     * Drops a deleted deal from the book.
+     */
+    public void remove(Long id) {
+        if (enabled) {
+            apply(Entry.removed(id));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        rebuild();
+    }
+
+    /**
+     * Rebuilds the book from the pending deals of the database.
+     */
+    @Scheduled(fixedDelayString = "${application.deals.order-book.rebuild-interval-millis:60000}",
+        initialDelayString = "${application.deals.order-book.rebuild-interval-millis:60000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            replay = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Index rebuilt = new Index();
+        try {
+            DealSpecification pending = new DealSpecification();
+            pending.setWithStatus(DealStatus.PENDING);
+            readOnlyTransaction.execute(status -> {
+                dealRepository.findAll(pending).forEach(deal -> rebuilt.apply(Entry.of(deal)));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not rebuild the order book, keeping the current one: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                replay = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            replay.forEach(rebuilt::apply);
+            replay = null;
+            index = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lastRebuilt = System.currentTimeMillis();
+        log.debug("Rebuilt the order book with {} pending deals", rebuilt.size);
+    }
+
+    private void apply(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            index.apply(entry);
+            if (replay != null) {
+                replay.add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<Entry> match(DealSpecification params, Long after, Comparator<Entry> order) {
+        PaymentInterval[] intervals = params.getPaymentEvery() == null ? PaymentInterval.values()
+            : new PaymentInterval[] {params.getPaymentEvery()};
+        List<Entry> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (PaymentInterval interval : intervals) {
+                for (Entry entry : index.candidates(interval, params)) {
+                    if (entry.matches(params) && (after == null || entry.id < after)) {
+                        matches.add(entry);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(order);
+        return matches;
+    }
+
+    private static Comparator<Entry> comparatorOf(Sort sort) {
+        Comparator<Entry> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<Entry> property = SORTABLE.get(order.getProperty());
+            property = order.isDescending() ? property.reversed() : property;
+            comparator = comparator == null ? property : comparator.thenComparing(property);
+        }
+        return comparator == null ? NEWEST_FIRST : comparator.thenComparing(NEWEST_FIRST);
+    }
+
+    private static List<Deal> toDeals(List<Entry> entries) {
+        return entries.stream().map(Entry::toDeal).collect(Collectors.toList());
+    }
+
+    private double size() {
+        lock.readLock().lock();
+        try {
+            return index.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double staleness() {
+        return lastRebuilt > 0 ? System.currentTimeMillis() - lastRebuilt : Double.NaN;
+    }
+
+    /**
+     * The pending deals of each payment interval, sorted, and the last state seen of every deal.
+     */
+    private static final class Index {
+
+        /**
+         * The last state of every deal handed over or loaded, the deals which left the book included, so a late
+         * older state cannot bring one back.
+         */
+        private final Map<Long, Entry> latest = new HashMap<>();
+
+        private final Map<PaymentInterval, NavigableSet<Entry>> bySuccessRate = new EnumMap<>(PaymentInterval.class);
+
+        private final Map<PaymentInterval, NavigableSet<Entry>> byStartBalance = new EnumMap<>(PaymentInterval.class);
+
+        private int size;
+
+        private Index() {
+            for (PaymentInterval interval : PaymentInterval.values()) {
+                bySuccessRate.put(interval, new TreeSet<>(BY_SUCCESS_RATE));
+                byStartBalance.put(interval, new TreeSet<>(BY_START_BALANCE));
+            }
+        }
+
+        private void apply(Entry entry) {
+            Entry previous = latest.get(entry.id);
+            if (previous != null) {
+                if (previous.version > entry.version) {
+                    return;
+                }
+                if (previous.pending) {
+                    bySuccessRate.get(previous.paymentEvery).remove(previous);
+                    byStartBalance.get(previous.paymentEvery).remove(previous);
+                    size--;
+                }
+            }
+            latest.put(entry.id, entry);
+            if (entry.pending) {
+                bySuccessRate.get(entry.paymentEvery).add(entry);
+                byStartBalance.get(entry.paymentEvery).add(entry);
+                size++;
+            }
+        }
+
+        /**
+         * The pending deals of the interval within the range of the success rate or start balance filter.
+         */
+        private Collection<Entry> candidates(PaymentInterval interval, DealSpecification params) {
+            if (params.getSuccessRate() != null) {
+                // highest rates first, the probe sorts after every deal of the lowest rate wanted
+                return bySuccessRate.get(interval)
+                    .headSet(Entry.probe(params.getSuccessRate(), null, Long.MIN_VALUE), false);
+            }
+            if (params.getWithStartBalance() != null) {
+                // lowest balances first, the probe sorts before every deal of the lowest balance wanted
+                return byStartBalance.get(interval)
+                    .tailSet(Entry.probe(null, BigDecimal.valueOf(params.getWithStartBalance()), Long.MAX_VALUE), true);
+            }
+            return bySuccessRate.get(interval);
+        }
+    }
+
+    /**
+     * The state of a deal, as committed.
+     */
+    private static final class Entry {
+
+        private final long id;
+
+        private final long version;
+
+        private final boolean pending;
+
+        private final Instant dateOpen;
+
+        private final Instant dateBecomeActive;
+
+        private final Instant endDate;
+
+        private final BigDecimal startBalance;
+
+        private final BigDecimal percent;
+
+        private final Integer successRate;
+
+        private final Integer term;
+
+        private final PaymentInterval paymentEvery;
+
+        private Entry(long id, long version, boolean pending, Instant dateOpen, Instant dateBecomeActive,
+                      Instant endDate, BigDecimal startBalance, BigDecimal percent, Integer successRate, Integer term,
+                      PaymentInterval paymentEvery) {
+            this.id = id;
+            this.version = version;
+            this.pending = pending;
+            this.dateOpen = dateOpen;
+            this.dateBecomeActive = dateBecomeActive;
+            this.endDate = endDate;
+            this.startBalance = startBalance;
+            this.percent = percent;
+            this.successRate = successRate;
+            this.term = term;
+            this.paymentEvery = paymentEvery;
+        }
+
+        private static Entry of(Deal deal) {
+            return new Entry(deal.getId(), deal.getVersion() == null ? 0 : deal.getVersion(),
+                deal.getStatus() == DealStatus.PENDING, deal.getDateOpen(), deal.getDateBecomeActive(),
+                deal.getEndDate(), deal.getStartBalance(), deal.getPercent(), deal.getSuccessRate(), deal.getTerm(),
+                deal.getPaymentEvery());
+        }
+
+        private static Entry removed(Long id) {
+            return new Entry(id, Long.MAX_VALUE, false, null, null, null, null, null, null, null, null);
+        }
+
+        private static Entry probe(Integer successRate, BigDecimal startBalance, long id) {
+            return new Entry(id, 0, true, null, null, null, startBalance, null, successRate, null, null);
+        }
+
+        private boolean matches(DealSpecification params) {
+            return (params.getSuccessRate() == null || successRate >= params.getSuccessRate()) &&
+                (params.getWithStartBalance() == null ||
+                    startBalance.compareTo(BigDecimal.valueOf(params.getWithStartBalance())) >= 0) &&
+                (params.getMinTerm() == null || term >= params.getMinTerm());
+        }
+
+        private Deal toDeal() {
+            Deal deal = new Deal().dateOpen(dateOpen).dateBecomeActive(dateBecomeActive).endDate(endDate)
+                .startBalance(startBalance).percent(percent)
+                .successRate(successRate).term(term).paymentEvery(paymentEvery).status(DealStatus.PENDING);
+            deal.setId(id);
+            deal.setVersion(version);
+            return deal;
+        }
+    }
+}
@@ -1,26 +1,32 @@
 package com.pavelf.loanexchange.service;
 
+import com.pavelf.loanexchange.aop.retry.RetryOnConcurrencyFailure;
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.config.ApplicationProperties.Deals.AcceptanceLocking;
 import com.pavelf.loanexchange.domain.BalanceLog;
 import com.pavelf.loanexchange.domain.Deal;
-import com.pavelf.loanexchange.domain.Notification;
 import com.pavelf.loanexchange.domain.User;
 import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
 import com.pavelf.loanexchange.domain.enumeration.DealStatus;
 import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
-import com.pavelf.loanexchange.repository.BalanceLogRepository;
 import com.pavelf.loanexchange.repository.DealRepository;
-import com.pavelf.loanexchange.repository.NotificationRepository;
 import com.pavelf.loanexchange.security.AuthoritiesConstants;
 import com.pavelf.loanexchange.security.SecurityUtils;
 import com.pavelf.loanexchange.web.rest.errors.BadRequestAlertException;
 import com.pavelf.loanexchange.web.rest.errors.NotEnoughMoneyException;
+import com.pavelf.loanexchange.web.rest.errors.PreconditionFailedException;
+import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Optional;
 
 /**
  * Service for managing deals.
@@ -29,28 +35,40 @@ import java.time.temporal.ChronoUnit;
 public class DealService {
 
     private final UserService userService;
-    private final BalanceLogRepository balanceLogRepository;
     private final DealRepository dealRepository;
-    private final NotificationRepository notificationRepository;
-
-    public DealService(UserService userService, BalanceLogRepository balanceLogRepository, DealRepository dealRepository,
-                       NotificationRepository notificationRepository) {
+    private final NotificationWriter notificationWriter;
+    private final LedgerService ledgerService;
+    private final DealOrderBook dealOrderBook;
+    private final TransactionTemplate serializableTransaction;
+    private final TransactionTemplate readCommittedTransaction;
+    private final AcceptanceLocking acceptanceLocking;
+
+    public DealService(UserService userService, DealRepository dealRepository,
+                       NotificationWriter notificationWriter, LedgerService ledgerService,
+                       DealOrderBook dealOrderBook, PlatformTransactionManager transactionManager,
+                       ApplicationProperties applicationProperties) {
         this.userService = userService;
-        this.balanceLogRepository = balanceLogRepository;
         this.dealRepository = dealRepository;
-        this.notificationRepository = notificationRepository;
+        this.notificationWriter = notificationWriter;
+        this.ledgerService = ledgerService;
+        this.dealOrderBook = dealOrderBook;
+        this.serializableTransaction = new TransactionTemplate(transactionManager);
+        this.serializableTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        this.readCommittedTransaction = new TransactionTemplate(transactionManager);
+        this.readCommittedTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.acceptanceLocking = applicationProperties.getDeals().getAcceptanceLocking();
     }
 
     /**
      * Creates new {@link Deal} if possible.
      * @throws NotEnoughMoneyException if not enough money on balance
      * */
+    @RetryOnConcurrencyFailure
     @Transactional(isolation = Isolation.SERIALIZABLE)
     public Deal createDealForCurrentUser(Deal deal) {
-        User loggedInUser = userService.getUserWithAuthorities().get();
-        BalanceLog balanceLog = balanceLogRepository.findLastLogForUser(loggedInUser)
+        User loggedInUser = userService.getCurrentUserReference().get();
+        BigDecimal currentBalance = ledgerService.getAccountBalance(loggedInUser)
             .orElseThrow(NotEnoughMoneyException::new);
-        BigDecimal currentBalance = balanceLog.getCurrentAccountBalance();
 
         if (currentBalance.compareTo(deal.getStartBalance()) < 0) {
             throw new NotEnoughMoneyException();
@@ -66,12 +84,13 @@ public class DealService {
         BalanceLog minusFromAccount = new BalanceLog().date(now).oldValue(currentBalance).account(loggedInUser)
             .amountChanged(deal.getStartBalance().negate()).type(BalanceLogEvent.NEW_DEAL_OPEN);
 
-        balanceLogRepository.save(minusFromAccount);
+        ledgerService.append(minusFromAccount);
 
         BalanceLog plusOnDeal = new BalanceLog().date(now).oldValue(BigDecimal.ZERO)
             .amountChanged(deal.getStartBalance()).type(BalanceLogEvent.NEW_DEAL_OPEN).deal(saved);
 
-        balanceLogRepository.save(plusOnDeal);
+        ledgerService.append(plusOnDeal);
+        dealOrderBook.update(saved);
 
         return saved;
     }
@@ -85,18 +104,37 @@ public class DealService {
 
     /**
      * Tries to accept deal with current logged in user.
+     * <p>
+     * With {@link AcceptanceLocking#SERIALIZABLE} the acceptance runs at SERIALIZABLE isolation. With
+     * {@link AcceptanceLocking#PESSIMISTIC} it runs at READ COMMITTED and locks the deal row and then the debtor's
+     * account with {@code SELECT ... FOR UPDATE}, so only acceptances of the same deal or by the same debtor wait
+     * for each other.
+     * @throws PreconditionFailedException if {@code toProcess} carries a version other than the current one
      * @throws BadRequestAlertException if could not process acceptance
      * */
-    @Transactional(isolation = Isolation.SERIALIZABLE)
+    @RetryOnConcurrencyFailure
     public Deal acceptDeal(Deal toProcess) {
-        Deal deal = dealRepository.findById(toProcess.getId()).get();
+        if (acceptanceLocking == AcceptanceLocking.PESSIMISTIC) {
+            return readCommittedTransaction.execute(status -> acceptDeal(toProcess, true));
+        }
+        return serializableTransaction.execute(status -> acceptDeal(toProcess, false));
+    }
+
+    private Deal acceptDeal(Deal toProcess, boolean lockRows) {
+        Deal deal = (lockRows ? dealRepository.findOneForUpdate(toProcess.getId())
+            : dealRepository.findById(toProcess.getId())).get();
+        checkVersion(toProcess, deal);
 
         if (deal.getStatus() != DealStatus.PENDING) {
             throw new BadRequestAlertException("Deal is not in pending status.", "deal", "dealactive");
         }
 
-        User loggedInUser = userService.getUserWithAuthorities().get();
+        User loggedInUser = userService.getCurrentUserReference().get();
         final Instant now = Instant.now();
+
+        // with row locks the debtor's account is locked before counting, so the count cannot go stale
+        final Optional<BigDecimal> accountBalance = lockRows ? ledgerService.getAccountBalanceForUpdate(loggedInUser)
+            : ledgerService.getAccountBalance(loggedInUser);
         final int activeDealsForRecipient = dealRepository.countActiveDealsForRecipient(loggedInUser);
 
         if (activeDealsForRecipient > 0 && !SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.SYSTEM)) {
@@ -109,54 +147,82 @@ public class DealService {
         deal.setEndDate(now.plus(deal.getTerm(), ChronoUnit.DAYS));
         deal.setRecipient(loggedInUser);
 
-        BigDecimal balance = balanceLogRepository.findLastLogForDeal(deal)
-            .map(BalanceLog::getCurrentAccountBalance).orElse(BigDecimal.ZERO);
+        BigDecimal balance = ledgerService.getDealBalance(deal).orElse(BigDecimal.ZERO);
 
         BalanceLog plusOnDebtorAccount = new BalanceLog().date(now).amountChanged(balance)
-            .type(BalanceLogEvent.LOAN_TAKEN).account(loggedInUser).oldValue(BigDecimal.ZERO);
-
-        balanceLogRepository.findLastLogForUser(loggedInUser)
-            .ifPresent(log -> plusOnDebtorAccount.oldValue(log.getCurrentAccountBalance()));
+            .type(BalanceLogEvent.LOAN_TAKEN).account(loggedInUser).oldValue(accountBalance.orElse(BigDecimal.ZERO));
 
         Deal updated = dealRepository.save(deal);
-        balanceLogRepository.save(plusOnDebtorAccount);
-        notificationRepository.save(new Notification().date(now).type(BalanceLogEvent.LOAN_TAKEN)
-            .recipient(deal.getEmitter()).associatedDeal(deal));
+        ledgerService.append(plusOnDebtorAccount);
+        notificationWriter.publish(NotificationEvent.of(now, BalanceLogEvent.LOAN_TAKEN, deal.getEmitter(), deal));
+        dealOrderBook.update(updated);
 
         return updated;
     }
 
     /**
      * Updates deal for creditor.
+     * @throws PreconditionFailedException if {@code toUpdate} carries a version other than the current one
      * */
+    @RetryOnConcurrencyFailure
     @Transactional(isolation = Isolation.SERIALIZABLE)
     public Deal updateDeal(Deal toUpdate) {
         Deal deal = dealRepository.findById(toUpdate.getId()).get();
+        checkVersion(toUpdate, deal);
 
         if (toUpdate.getStatus() == DealStatus.CLOSED && deal.getStatus() == DealStatus.PENDING) {
 
             final Instant now = Instant.now();
-            User loggedInUser = userService.getUserWithAuthorities().get();
+            User loggedInUser = userService.getCurrentUserReference().get();
 
-            BigDecimal balance = balanceLogRepository.findLastLogForDeal(deal)
-                .map(BalanceLog::getCurrentAccountBalance).orElse(BigDecimal.ZERO);
+            BigDecimal balance = ledgerService.getDealBalance(deal).orElse(BigDecimal.ZERO);
 
             BalanceLog plusOnCreditorAccount = new BalanceLog().date(now).amountChanged(balance)
                 .type(BalanceLogEvent.DEAL_CLOSED).account(loggedInUser).oldValue(BigDecimal.ZERO);
 
-            balanceLogRepository.findLastLogForUser(loggedInUser)
-                .ifPresent(log -> plusOnCreditorAccount.oldValue(log.getCurrentAccountBalance()));
+            ledgerService.getAccountBalance(loggedInUser).ifPresent(plusOnCreditorAccount::oldValue);
 
             deal.setStatus(DealStatus.CLOSED);
-            balanceLogRepository.save(plusOnCreditorAccount);
+            ledgerService.append(plusOnCreditorAccount);
         }
 
         Deal updated = dealRepository.save(deal);
+        dealOrderBook.update(updated);
 
         return updated;
     }
 
-    private int computeSuccessRate(Deal deal) {
+    /**
+     * Replaces the deal with the given state as is, for administrators. The version check of {@link Deal} keeps
+     * a concurrent change from being overwritten.
+     * @throws PreconditionFailedException if {@code deal} carries a version other than the current one
+     * */
+    @RetryOnConcurrencyFailure
+    @Transactional
+    public Deal replaceDeal(Deal deal) {
+        Deal current = dealRepository.findById(deal.getId())
+            .orElseThrow(() -> new BadRequestAlertException("Invalid id", "deal", "idnotfound"));
+        checkVersion(deal, current);
+        // a copy, as a retry checks the version of the argument again
+        Deal replacement = new Deal();
+        BeanUtils.copyProperties(deal, replacement, "version");
+        replacement.setVersion(current.getVersion());
+        Deal replaced = dealRepository.saveAndFlush(replacement);
+        dealOrderBook.update(replaced);
+        return replaced;
+    }
+
+    /**
+     * A version mismatch is the client's stale state, not a race, so it is reported rather than retried.
+     */
+    private static void checkVersion(Deal expected, Deal current) {
+        if (expected.getVersion() != null && !expected.getVersion().equals(current.getVersion())) {
+            throw new PreconditionFailedException("Deal was changed since version " + expected.getVersion() + ".",
+                "deal", "versionmismatch");
+        }
+    }
+
+    int computeSuccessRate(Deal deal) {
         final int term = deal.getTerm();
         final double percent = deal.getPercent().doubleValue();
         final PaymentInterval paymentEvery = deal.getPaymentEvery();
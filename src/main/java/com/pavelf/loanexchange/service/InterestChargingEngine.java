@@ -0,0 +1,234 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Charges active deals in chunks of consecutive ids instead of one transaction for the whole set.
+ * <p>
+ * The bounds of each chunk are the first and the last of the next {@code chunk-size} ids of the deals to charge,
+ * read by keyset, so a chunk holds up to that many deals however sparse their ids are.
+ * <p>
+ * Every chunk is processed in its own SERIALIZABLE transaction on the interest charging pool,
+ * so a serialization conflict only rolls back and retries that chunk.
+ */
+@Service
+public class InterestChargingEngine {
+
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+
+    private final Logger log = LoggerFactory.getLogger(InterestChargingEngine.class);
+
+    private final DealRepository dealRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor executor;
+    private final ApplicationProperties.Payments properties;
+    private final MeterRegistry meterRegistry;
+
+    public InterestChargingEngine(DealRepository dealRepository, PlatformTransactionManager transactionManager,
+                                  @Qualifier("interestChargingExecutor") Executor executor,
+                                  ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.dealRepository = dealRepository;
+        this.executor = executor;
+        this.properties = applicationProperties.getPayments();
+        this.meterRegistry = meterRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Splits the deals matching the specification into id ranges of up to {@code chunk-size} deals and hands each
+     * range to the processor.
+     *
+     * @param run name of the run, used in logs and metric tags.
+     * @param specification filter of the deals to charge, must define status and payment interval.
+     * @param processor charges a chunk of deals within the chunk transaction.
+     * @return the summary of the run.
+     */
+    public Report charge(String run, DealSpecification specification, ChunkProcessor processor) {
+        return charge(run, specification, processor, () -> { });
+    }
+
+    /**
+     * Charges like {@link #charge(String, DealSpecification, ChunkProcessor)}, reporting every committed chunk.
+     *
+     * @param heartbeat run on the pool thread after a chunk commits, outside of its transaction.
+     */
+    public Report charge(String run, DealSpecification specification, ChunkProcessor processor, Runnable heartbeat) {
+        final long start = System.nanoTime();
+        final int chunkSize = Math.max(properties.getChunkSize(), 1);
+
+        List<CompletableFuture<ChunkResult>> chunks = new ArrayList<>();
+
+        List<Long> ids;
+        long afterId = Long.MIN_VALUE;
+        do {
+            ids = dealRepository.findIdsWithStatusAndPaymentEveryAfter(specification.getWithStatus(),
+                specification.getPaymentEvery(), afterId, PageRequest.of(0, chunkSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+            DealSpecification chunk = chunkOf(specification, ids.get(0), afterId);
+            chunks.add(CompletableFuture.supplyAsync(() -> processChunk(run, chunk, processor, heartbeat),
+                executor));
+        } while (ids.size() == chunkSize);
+
+        Report report = new Report(run);
+        chunks.stream().map(CompletableFuture::join).forEach(report::add);
+        report.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        meterRegistry.counter("loanexchange.interest.deals", "run", run).increment(report.deals);
+        log.info("{} charged {} deals in {} chunks ({} failed) within {} ms, {} deals/sec.", run, report.deals,
+            report.chunks, report.failedChunks, report.elapsedMillis, String.format("%.1f", report.getDealsPerSecond()));
+        return report;
+    }
+
+    private ChunkResult processChunk(String run, DealSpecification chunk, ChunkProcessor processor,
+                                     Runnable heartbeat) {
+        for (int attempt = 1; ; attempt++) {
+            final long start = System.nanoTime();
+            try {
+                Integer processed = transactionTemplate.execute(status -> processor.process(chunk));
+                long elapsed = System.nanoTime() - start;
+                chunkTimer(run, "success").record(elapsed, TimeUnit.NANOSECONDS);
+                log.debug("{} chunk [{}, {}] charged {} deals in {} ms.", run, chunk.getIdFrom(), chunk.getIdTo(),
+                    processed, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                beat(run, heartbeat);
+                return new ChunkResult(processed, false);
+            } catch (RuntimeException e) {
+                chunkTimer(run, "failure").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (attempt > properties.getMaxChunkRetries()) {
+                    log.error("{} chunk [{}, {}] failed after {} attempts.", run, chunk.getIdFrom(), chunk.getIdTo(),
+                        attempt, e);
+                    return new ChunkResult(0, true);
+                }
+                log.warn("{} chunk [{}, {}] failed on attempt {}, retrying: {}", run, chunk.getIdFrom(),
+                    chunk.getIdTo(), attempt, e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void beat(String run, Runnable heartbeat) {
+        try {
+            heartbeat.run();
+        } catch (RuntimeException e) {
+            // the chunk is committed, so it is not retried for a missed heartbeat
+            log.warn("{} heartbeat failed: {}", run, e.getMessage());
+        }
+    }
+
+    private Timer chunkTimer(String run, String outcome) {
+        return meterRegistry.timer("loanexchange.interest.chunk", "run", run, "outcome", outcome);
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private DealSpecification chunkOf(DealSpecification specification, long idFrom, long idTo) {
+        DealSpecification chunk = new DealSpecification();
+        chunk.setWithStatus(specification.getWithStatus());
+        chunk.setPaymentEvery(specification.getPaymentEvery());
+        chunk.setEndDateIntervalStart(specification.getEndDateIntervalStart());
+        chunk.setEndDateIntervalEnd(specification.getEndDateIntervalEnd());
+        chunk.setIdFrom(idFrom);
+        chunk.setIdTo(idTo);
+        return chunk;
+    }
+
+    /**
+     * Charges the deals of a single chunk.
+     */
+    @FunctionalInterface
+    public interface ChunkProcessor {
+
+        /**
+         * @param chunk the specification of the run narrowed to the id range of the chunk.
+         * @return the number of deals processed.
+         */
+        int process(DealSpecification chunk);
+    }
+
+    private static class ChunkResult {
+
+        private final int deals;
+        private final boolean failed;
+
+        ChunkResult(int deals, boolean failed) {
+            this.deals = deals;
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * Summary of a single charging run.
+     */
+    public static class Report {
+
+        private final String run;
+        private int chunks;
+        private int failedChunks;
+        private int deals;
+        private long elapsedMillis;
+
+        Report(String run) {
+            this.run = run;
+        }
+
+        private void add(ChunkResult result) {
+            chunks++;
+            deals += result.deals;
+            if (result.failed) {
+                failedChunks++;
+            }
+        }
+
+        public String getRun() {
+            return run;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public int getFailedChunks() {
+            return failedChunks;
+        }
+
+        public int getDeals() {
+            return deals;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getDealsPerSecond() {
+            return elapsedMillis == 0 ? deals : deals * 1000.0 / elapsedMillis;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.domain.AccountBalance;
+import com.pavelf.loanexchange.domain.AccountStatsBucket;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.BalanceLogBucket;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.DealBalance;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.repository.AccountBalanceRepository;
+import com.pavelf.loanexchange.repository.AccountStatsBucketRepository;
+import com.pavelf.loanexchange.repository.BalanceLogBucketRepository;
+import com.pavelf.loanexchange.repository.BalanceLogRepository;
+import com.pavelf.loanexchange.repository.DealBalanceRepository;
+import com.pavelf.loanexchange.repository.UserRepository;
+import com.pavelf.loanexchange.service.dto.BalanceMismatchDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Service for writing {@link BalanceLog} entries and keeping the balance projections, the account stats and the
+ * ledger buckets in step with them.
+ */
+@Service
+@Transactional
+public class LedgerService {
+
+    private final Logger log = LoggerFactory.getLogger(LedgerService.class);
+
+    private final BalanceLogRepository balanceLogRepository;
+    private final AccountBalanceRepository accountBalanceRepository;
+    private final DealBalanceRepository dealBalanceRepository;
+    private final UserRepository userRepository;
+    private final AccountStatsBucketRepository accountStatsBucketRepository;
+    private final BalanceLogBucketRepository balanceLogBucketRepository;
+
+    public LedgerService(BalanceLogRepository balanceLogRepository, AccountBalanceRepository accountBalanceRepository,
+                         DealBalanceRepository dealBalanceRepository, UserRepository userRepository,
+                         AccountStatsBucketRepository accountStatsBucketRepository,
+                         BalanceLogBucketRepository balanceLogBucketRepository) {
+        this.balanceLogRepository = balanceLogRepository;
+        this.accountBalanceRepository = accountBalanceRepository;
+        this.dealBalanceRepository = dealBalanceRepository;
+        this.userRepository = userRepository;
+        this.accountStatsBucketRepository = accountStatsBucketRepository;
+        this.balanceLogBucketRepository = balanceLogBucketRepository;
+    }
+
+    /**
+     * Saves the log entry and applies it to the account or deal balance within the caller's transaction.
+     */
+    public BalanceLog append(BalanceLog balanceLog) {
+        BalanceLog saved = balanceLogRepository.save(balanceLog);
+
+        if (saved.getAccount() != null) {
+            Long accountId = saved.getAccount().getId();
+            AccountBalance balance = accountBalanceRepository.findById(accountId)
+                .orElseGet(() -> new AccountBalance().accountId(accountId));
+            balance.balance(saved.getCurrentAccountBalance()).lastLogId(saved.getId());
+            accountBalanceRepository.save(balance);
+
+            AccountStatsBucket stats = accountStatsBucketRepository.findById(AccountStatsBucket.Key.of(saved))
+                .orElseGet(() -> AccountStatsBucket.of(saved));
+            accountStatsBucketRepository.save(stats.add(saved));
+
+            BalanceLogBucket bucket = balanceLogBucketRepository.findOneForAccount(accountId, saved.getType(),
+                BalanceLogBucket.periodOf(saved.getDate())).orElseGet(() -> BalanceLogBucket.of(saved));
+            balanceLogBucketRepository.save(bucket.add(saved));
+        }
+
+        if (saved.getDeal() != null) {
+            Long dealId = saved.getDeal().getId();
+            DealBalance balance = dealBalanceRepository.findById(dealId)
+                .orElseGet(() -> new DealBalance().dealId(dealId));
+            balance.balance(saved.getCurrentAccountBalance()).lastLogId(saved.getId());
+            dealBalanceRepository.save(balance);
+        }
+
+        return saved;
+    }
+
+    /**
+     * Current balance of the account, or empty if nothing was ever logged for it.
+     */
+    @Transactional(readOnly = true)
+    public Optional<BigDecimal> getAccountBalance(User account) {
+        return accountBalanceRepository.findById(account.getId()).map(AccountBalance::getBalance);
+    }
+
+    /**
+     * Current balance of the account, locking the account until the caller's transaction ends. The lock is taken
+     * on the balance row, or on the user row if nothing was ever logged for the account and it has no balance row yet.
+     */
+    public Optional<BigDecimal> getAccountBalanceForUpdate(User account) {
+        Optional<BigDecimal> balance = accountBalanceRepository.findOneForUpdate(account.getId())
+            .map(AccountBalance::getBalance);
+        if (!balance.isPresent()) {
+            userRepository.findOneForUpdate(account.getId());
+        }
+        return balance;
+    }
+
+    /**
+     * Current balance of the deal, or empty if nothing was ever logged for it.
+     */
+    @Transactional(readOnly = true)
+    public Optional<BigDecimal> getDealBalance(Deal deal) {
+        return dealBalanceRepository.findById(deal.getId()).map(DealBalance::getBalance);
+    }
+
+    /**
+     * Drops the account balance projection and recomputes it from the last log entry of every account.
+     */
+    public void rebuildAccountBalances() {
+        log.info("rebuildAccountBalances() started.");
+        accountBalanceRepository.deleteAllBalances();
+        int rebuilt = accountBalanceRepository.rebuildFromLog();
+        log.info("rebuildAccountBalances() ended, {} accounts rebuilt.", rebuilt);
+    }
+
+    /**
+     * Drops the deal balance projection and recomputes it from the last log entry of every deal.
+     */
+    public void rebuildDealBalances() {
+        log.info("rebuildDealBalances() started.");
+        dealBalanceRepository.deleteAllBalances();
+        int rebuilt = dealBalanceRepository.rebuildFromLog();
+        log.info("rebuildDealBalances() ended, {} deals rebuilt.", rebuilt);
+    }
+
+    /**
+     * Compares both balance projections against the ledger.
+     *
+     * @return every account and deal whose projected balance differs from its last log entry.
+     */
+    @Transactional(readOnly = true)
+    public List<BalanceMismatchDTO> checkConsistency() {
+        List<BalanceMismatchDTO> mismatches = new ArrayList<>();
+        accountBalanceRepository.findMismatchesWithLog().forEach(row ->
+            mismatches.add(toMismatch(BalanceMismatchDTO.Projection.ACCOUNT, row)));
+        dealBalanceRepository.findMismatchesWithLog().forEach(row ->
+            mismatches.add(toMismatch(BalanceMismatchDTO.Projection.DEAL, row)));
+
+        if (!mismatches.isEmpty()) {
+            log.warn("Balance projections disagree with the ledger: {}", mismatches);
+        }
+        return mismatches;
+    }
+
+    private BalanceMismatchDTO toMismatch(BalanceMismatchDTO.Projection projection, Object[] row) {
+        return new BalanceMismatchDTO(projection, ((Number) row[0]).longValue(),
+            (BigDecimal) row[1], (BigDecimal) row[2]);
+    }
+}
@@ -0,0 +1,84 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.Notification;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A notification to be written by the {@link NotificationWriter}. It holds the ids only, as it outlives the
+ * transaction it was published in.
+ */
+public final class NotificationEvent {
+
+    private final Instant date;
+
+    private final BalanceLogEvent type;
+
+    private final Long recipientId;
+
+    private final Long associatedDealId;
+
+    public NotificationEvent(Instant date, BalanceLogEvent type, Long recipientId, Long associatedDealId) {
+        this.date = Objects.requireNonNull(date);
+        this.type = Objects.requireNonNull(type);
+        this.recipientId = recipientId;
+        this.associatedDealId = associatedDealId;
+    }
+
+    public static NotificationEvent of(Instant date, BalanceLogEvent type, User recipient, Deal associatedDeal) {
+        return new NotificationEvent(date, type, recipient == null ? null : recipient.getId(),
+            associatedDeal == null ? null : associatedDeal.getId());
+    }
+
+    /**
+     * The notification written for this event, as clients read it; the associations hold their ids only.
+     *
+     * @param id the id the notification was written with.
+     * @return the notification.
+     */
+    public Notification toNotification(Long id) {
+        Notification notification = new Notification().date(date).type(type);
+        notification.setId(id);
+        if (recipientId != null) {
+            User recipient = new User();
+            recipient.setId(recipientId);
+            notification.setRecipient(recipient);
+        }
+        if (associatedDealId != null) {
+            Deal associatedDeal = new Deal();
+            associatedDeal.setId(associatedDealId);
+            notification.setAssociatedDeal(associatedDeal);
+        }
+        return notification;
+    }
+
+    public Instant getDate() {
+        return date;
+    }
+
+    public BalanceLogEvent getType() {
+        return type;
+    }
+
+    public Long getRecipientId() {
+        return recipientId;
+    }
+
+    public Long getAssociatedDealId() {
+        return associatedDealId;
+    }
+
+    @Override
+    public String toString() {
+        return "NotificationEvent{" +
+            "date=" + date +
+            ", type=" + type +
+            ", recipientId=" + recipientId +
+            ", associatedDealId=" + associatedDealId +
+            "}";
+    }
+}
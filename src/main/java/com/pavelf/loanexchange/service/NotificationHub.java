@@ -0,0 +1,319 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.domain.Notification;
+import com.pavelf.loanexchange.repository.NotificationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes the notifications to the open event streams of their recipients, so clients need not poll for them.
+ * <p>
+ * The connections are split into {@code application.notifications.stream.shards} shards by user id. Each shard
+ * queues its deliveries and runs them in order on at most one thread at a time, so a slow client holds up its shard
+ * only, and never the {@link NotificationWriter}. A delivery which does not fit in the queue of its shard is dropped:
+ * the client gets it again when it reconnects.
+ * <p>
+ * The events carry the ids of the notifications. A client reconnecting with a {@code Last-Event-ID} is sent the
+ * notifications written after that id, or a {@code reset} event telling it to read the list again when there are
+ * more than {@code replay-limit} of them. A notification written while the client reconnects may be sent twice, with
+ * the same id. The hub only knows the connections of its own node.
+ */
+@Service
+public class NotificationHub {
+
+    public static final String NOTIFICATION_EVENT = "notification";
+
+    public static final String RESET_EVENT = "reset";
+
+    private final Logger log = LoggerFactory.getLogger(NotificationHub.class);
+
+    private final NotificationRepository notificationRepository;
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final Shard[] shards;
+
+    private final long timeoutMillis;
+
+    private final int replayLimit;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final Counter pushed;
+
+    private final Counter dropped;
+
+    private final Counter replayed;
+
+    public NotificationHub(NotificationRepository notificationRepository,
+                           @Qualifier("notificationStreamExecutor") ThreadPoolTaskExecutor executor,
+                           MeterRegistry meterRegistry, ApplicationProperties applicationProperties) {
+        ApplicationProperties.Notifications.Stream properties = applicationProperties.getNotifications().getStream();
+        this.notificationRepository = notificationRepository;
+        this.executor = executor;
+        this.shards = new Shard[properties.getShards()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(properties.getShardQueueCapacity());
+        }
+        this.timeoutMillis = properties.getTimeoutMillis();
+        this.replayLimit = properties.getReplayLimit();
+
+        Gauge.builder("loanexchange.notification.stream.connections", connections, AtomicInteger::get)
+            .description("Open notification streams")
+            .register(meterRegistry);
+        Gauge.builder("loanexchange.notification.stream.backlog", this, NotificationHub::backlog)
+            .description("Deliveries waiting in the shards of the notification hub")
+            .register(meterRegistry);
+        this.pushed = meterRegistry.counter("loanexchange.notification.stream.pushed");
+        this.dropped = meterRegistry.counter("loanexchange.notification.stream.dropped");
+        this.replayed = meterRegistry.counter("loanexchange.notification.stream.replayed");
+    }
+
+    /**
+     * Opens an event stream of the notifications of a user.
+     *
+     * @param userId the id of the user.
+     * @param lastEventId the id of the last notification the client received, or {@code null} on the first connection.
+     * @return the event stream.
+     */
+    public SseEmitter subscribe(Long userId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Shard shard = shardOf(userId);
+        Connection connection = new Connection(shard, userId, emitter);
+        shard.add(connection);
+        connections.incrementAndGet();
+        emitter.onCompletion(connection::close);
+        emitter.onTimeout(connection::close);
+        emitter.onError(e -> connection.close());
+
+        if (lastEventId != null && !shard.submit(() -> replay(connection, lastEventId))) {
+            // the client reconnects with the same Last-Event-ID
+            dropped.increment();
+            connection.close();
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    /**
+     * Queues the notifications for the open streams of their recipients.
+     *
+     * @param notifications written notifications, whose recipient holds its id.
+     */
+    public void publish(Collection<Notification> notifications) {
+        for (Notification notification : notifications) {
+            if (notification.getRecipient() == null) {
+                continue;
+            }
+            Long recipientId = notification.getRecipient().getId();
+            Shard shard = shardOf(recipientId);
+            if (shard.isConnected(recipientId) && !shard.submit(() -> deliver(shard, recipientId, notification))) {
+                dropped.increment();
+            }
+        }
+    }
+
+    /**
+     * Sends a comment to every open stream, so proxies do not close the idle ones and the dead ones are found.
+     */
+    @Scheduled(fixedDelayString = "${application.notifications.stream.heartbeat-interval-millis:30000}")
+    public void heartbeat() {
+        for (Shard shard : shards) {
+            shard.submit(() -> {
+                for (Connection connection : shard.connections()) {
+                    send(connection, SseEmitter.event().comment("heartbeat"));
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of open streams on this node.
+     */
+    public int connections() {
+        return connections.get();
+    }
+
+    /**
+     * @return the number of deliveries waiting in the shards.
+     */
+    public int backlog() {
+        int backlog = 0;
+        for (Shard shard : shards) {
+            backlog += shard.tasks.size();
+        }
+        return backlog;
+    }
+
+    private void deliver(Shard shard, Long recipientId, Notification notification) {
+        for (Connection connection : shard.connectionsOf(recipientId)) {
+            if (send(connection, notificationEvent(notification))) {
+                pushed.increment();
+            }
+        }
+    }
+
+    private void replay(Connection connection, Long lastEventId) {
+        List<Notification> missed = notificationRepository.findByRecipientIdAndIdGreaterThanOrderByIdAsc(
+            connection.userId, lastEventId, PageRequest.of(0, replayLimit + 1));
+        if (missed.size() > replayLimit) {
+            send(connection, SseEmitter.event().name(RESET_EVENT).data(lastEventId));
+            return;
+        }
+        for (Notification notification : missed) {
+            if (!send(connection, notificationEvent(notification))) {
+                return;
+            }
+            replayed.increment();
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder notificationEvent(Notification notification) {
+        return SseEmitter.event()
+            .id(notification.getId().toString())
+            .name(NOTIFICATION_EVENT)
+            .data(notification, MediaType.APPLICATION_JSON);
+    }
+
+    private boolean send(Connection connection, SseEmitter.SseEventBuilder event) {
+        try {
+            connection.emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // the client is gone or the stream completed, the container completes the emitter
+            log.debug("Could not push to the stream of user {}: {}", connection.userId, e.toString());
+            connection.close();
+            return false;
+        }
+    }
+
+    private Shard shardOf(Long userId) {
+        return shards[(int) Math.floorMod(userId, (long) shards.length)];
+    }
+
+    private final class Connection {
+
+        private final Shard shard;
+
+        private final Long userId;
+
+        private final SseEmitter emitter;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Connection(Shard shard, Long userId, SseEmitter emitter) {
+            this.shard = shard;
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                shard.remove(this);
+                connections.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The connections of a share of the users, and the deliveries to them, run one after the other.
+     */
+    private final class Shard implements Runnable {
+
+        private final Map<Long, List<Connection>> byUser = new HashMap<>();
+
+        private final BlockingQueue<Runnable> tasks;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Shard(int capacity) {
+            this.tasks = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private synchronized void add(Connection connection) {
+            byUser.computeIfAbsent(connection.userId, id -> new ArrayList<>(1)).add(connection);
+        }
+
+        private synchronized void remove(Connection connection) {
+            List<Connection> ofUser = byUser.get(connection.userId);
+            if (ofUser != null && ofUser.remove(connection) && ofUser.isEmpty()) {
+                byUser.remove(connection.userId);
+            }
+        }
+
+        private synchronized boolean isConnected(Long userId) {
+            return byUser.containsKey(userId);
+        }
+
+        private synchronized List<Connection> connectionsOf(Long userId) {
+            List<Connection> ofUser = byUser.get(userId);
+            return ofUser == null ? Collections.emptyList() : new ArrayList<>(ofUser);
+        }
+
+        private synchronized List<Connection> connections() {
+            List<Connection> all = new ArrayList<>();
+            byUser.values().forEach(all::addAll);
+            return all;
+        }
+
+        private boolean submit(Runnable task) {
+            if (!tasks.offer(task)) {
+                return false;
+            }
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (TaskRejectedException e) {
+                    // shutting down
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Notification stream delivery failed", e);
+                }
+            }
+            scheduled.set(false);
+            // a task queued after the last poll but before the flag was cleared found the shard scheduled
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
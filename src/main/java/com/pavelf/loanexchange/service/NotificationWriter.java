@@ -0,0 +1,254 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.domain.Notification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes the notifications out of the transactions that cause them, so they do not lengthen the critical sections
+ * of the deals and the payments.
+ * <p>
+ * A notification is queued once its transaction commits, and dropped with it on rollback. A background writer takes
+ * whatever is queued, up to {@code application.notifications.batch-size}, and inserts it in one JDBC batch. When the
+ * queue is full, the committing thread waits {@code offer-timeout-millis} for room and then writes a batch itself,
+ * so a slow database slows the producers down instead of losing notifications. On shutdown the writer drains the
+ * queue before the application closes.
+ * <p>
+ * The ids of a batch are allocated by the {@link IdAllocator} before it is inserted, and the written notifications
+ * are handed to the {@link NotificationHub} and the {@link UnreadNotificationCounter} with them.
+ */
+@Service
+public class NotificationWriter {
+
+    private static final long POLL_TIMEOUT_MILLIS = 500;
+
+    private final Logger log = LoggerFactory.getLogger(NotificationWriter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final IdAllocator idAllocator;
+
+    private final NotificationHub notificationHub;
+
+    private final UnreadNotificationCounter unreadNotificationCounter;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final BlockingQueue<NotificationEvent> queue;
+
+    private final int batchSize;
+
+    private final long offerTimeoutMillis;
+
+    private final long shutdownTimeoutMillis;
+
+    private final String insertSql;
+
+    private final Timer flushTimer;
+
+    private final Counter dropped;
+
+    private volatile boolean running;
+
+    private Future<?> writer;
+
+    public NotificationWriter(JdbcTemplate jdbcTemplate, IdAllocator idAllocator, NotificationHub notificationHub,
+                              UnreadNotificationCounter unreadNotificationCounter,
+                              PlatformTransactionManager transactionManager,
+                              @Qualifier("notificationWriterExecutor") ThreadPoolTaskExecutor executor,
+                              MeterRegistry meterRegistry, ApplicationProperties applicationProperties) {
+        ApplicationProperties.Notifications properties = applicationProperties.getNotifications();
+        this.jdbcTemplate = jdbcTemplate;
+        this.idAllocator = idAllocator;
+        this.notificationHub = notificationHub;
+        this.unreadNotificationCounter = unreadNotificationCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // a full queue has the batch written from afterCommit, where the committed transaction is still bound
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.batchSize = properties.getBatchSize();
+        this.offerTimeoutMillis = properties.getOfferTimeoutMillis();
+        this.shutdownTimeoutMillis = properties.getShutdownTimeoutMillis();
+        this.insertSql = "INSERT INTO notification (id, jhi_date, jhi_type, recipient_id, associated_deal_id) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+        Gauge.builder("loanexchange.notification.queue.depth", queue, BlockingQueue::size)
+            .description("Notifications waiting to be written")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("loanexchange.notification.flush")
+            .description("Time to write a batch of notifications")
+            .register(meterRegistry);
+        this.dropped = meterRegistry.counter("loanexchange.notification.dropped");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = executor.submit(this::run);
+    }
+
+    /**
+     * Stops the writer once it has written everything queued, and writes what is left if it does not finish in time.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            writer.get(shutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            log.warn("Notification writer did not drain in time: {}", e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left = flush();
+        if (left > 0) {
+            log.info("Wrote {} queued notifications on shutdown", left);
+        }
+    }
+
+    /**
+     * Queues the notification for writing once the current transaction commits, or at once outside a transaction.
+     */
+    public void publish(NotificationEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    enqueue(event);
+                }
+            });
+        } else {
+            enqueue(event);
+        }
+    }
+
+    /**
+     * Writes everything queued on the calling thread.
+     *
+     * @return the number of notifications written.
+     */
+    public int flush() {
+        int written = 0;
+        List<NotificationEvent> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            written += write(batch);
+            batch.clear();
+        }
+        return written;
+    }
+
+    private void enqueue(NotificationEvent event) {
+        try {
+            if (running && queue.offer(event, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // the writer falls behind or is stopped: the producer pays for a batch, which makes room for the others
+        List<NotificationEvent> batch = new ArrayList<>(batchSize);
+        batch.add(event);
+        queue.drainTo(batch, batchSize - 1);
+        write(batch);
+    }
+
+    private void run() {
+        List<NotificationEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                NotificationEvent first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private int write(List<NotificationEvent> batch) {
+        List<Notification> written;
+        try {
+            written = flushTimer.record(() -> transactionTemplate.execute(status -> {
+                List<Long> ids = idAllocator.allocate(batch.size());
+                jdbcTemplate.batchUpdate(insertSql, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        NotificationEvent event = batch.get(i);
+                        ps.setLong(1, ids.get(i));
+                        ps.setTimestamp(2, Timestamp.from(event.getDate()));
+                        ps.setString(3, event.getType().name());
+                        setId(ps, 4, event.getRecipientId());
+                        setId(ps, 5, event.getAssociatedDealId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                });
+                List<Notification> notifications = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    notifications.add(batch.get(i).toNotification(ids.get(i)));
+                }
+                return notifications;
+            }));
+        } catch (DataAccessException e) {
+            // notifications are not financial records, losing a batch must not stop the writer
+            dropped.increment(batch.size());
+            log.error("Could not write {} notifications: {}", batch.size(), e.toString());
+            return 0;
+        }
+        unreadNotificationCounter.increment(written);
+        notificationHub.publish(written);
+        return written.size();
+    }
+
+    private static void setId(PreparedStatement ps, int index, Long id) throws SQLException {
+        if (id == null) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, id);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.PaymentRunItem;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+import com.pavelf.loanexchange.repository.PaymentRunItemRepository;
+import com.pavelf.loanexchange.repository.PaymentRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Service for the payment run ledger, which records every deal charged for a period.
+ * <p>
+ * A deal can be charged only once per period: the (deal, period) pair is unique in {@code payment_run_item},
+ * so a crashed or concurrent run skips what was already committed instead of charging it twice.
+ */
+@Service
+@Transactional
+public class PaymentRunService {
+
+    private final Logger log = LoggerFactory.getLogger(PaymentRunService.class);
+
+    private final PaymentRunRepository paymentRunRepository;
+    private final PaymentRunItemRepository paymentRunItemRepository;
+
+    public PaymentRunService(PaymentRunRepository paymentRunRepository,
+                             PaymentRunItemRepository paymentRunItemRepository) {
+        this.paymentRunRepository = paymentRunRepository;
+        this.paymentRunItemRepository = paymentRunItemRepository;
+    }
+
+    /**
+     * Returns the run for the period, creating it if no node has started it yet.
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException if another node created it concurrently.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public PaymentRun startRun(PaymentInterval paymentEvery, LocalDate period) {
+        return paymentRunRepository.findOneByPaymentEveryAndPeriod(paymentEvery, period)
+            .orElseGet(() -> {
+                log.debug("Starting payment run for {} deals, period {}", paymentEvery, period);
+                return paymentRunRepository.saveAndFlush(new PaymentRun().paymentEvery(paymentEvery).period(period)
+                    .status(PaymentRunStatus.RUNNING).startedAt(Instant.now()).heartbeatAt(Instant.now()));
+            });
+    }
+
+    /**
+     * Reports the run as progressing, in a transaction of its own.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void heartbeat(PaymentRun run) {
+        Instant now = Instant.now();
+        paymentRunRepository.updateHeartbeat(run.getId(), now, PaymentRunStatus.RUNNING, now);
+    }
+
+    /**
+     * Takes over a run whose heartbeat is older than the given instant, by beating for it. Of the nodes finding
+     * the same stale run, only one takes it over.
+     *
+     * @return whether the run was taken over.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean takeOverStaleRun(PaymentRun run, Instant heartbeatBefore) {
+        return paymentRunRepository.updateHeartbeat(run.getId(), Instant.now(), PaymentRunStatus.RUNNING,
+            heartbeatBefore) == 1;
+    }
+
+    /**
+     * Marks the run completed and stores the number of deals charged by it.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public PaymentRun completeRun(PaymentRun run) {
+        PaymentRun completed = paymentRunRepository.findById(run.getId()).get();
+        completed.status(PaymentRunStatus.COMPLETED).finishedAt(Instant.now())
+            .dealsCharged(paymentRunItemRepository.countByRun(completed));
+        log.debug("Completed payment run: {}", completed);
+        return paymentRunRepository.save(completed);
+    }
+
+    /**
+     * Ids of the given deals which were already charged for the period of the run.
+     */
+    public Set<Long> findChargedDealIds(PaymentRun run, Collection<Deal> deals) {
+        if (deals.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(paymentRunItemRepository.findChargedDealIds(run.getPeriod(), deals));
+    }
+
+    /**
+     * Records the deal as charged within the caller's transaction.
+     */
+    public void markCharged(PaymentRun run, Deal deal) {
+        paymentRunItemRepository.save(new PaymentRunItem().run(run).deal(deal).period(run.getPeriod())
+            .date(Instant.now()));
+    }
+
+    /**
+     * Runs which are not completed and whose last heartbeat is older than the given instant.
+     */
+    @Transactional(readOnly = true)
+    public List<PaymentRun> findIncompleteRuns(Instant heartbeatBefore) {
+        return paymentRunRepository.findAllByStatusAndHeartbeatAtBefore(PaymentRunStatus.RUNNING, heartbeatBefore);
+    }
+}
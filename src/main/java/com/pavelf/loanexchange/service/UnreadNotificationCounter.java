@@ -0,0 +1,203 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.domain.Notification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the notifications each user has not seen, which are the ones written after the last notification the user
+ * acknowledged, its watermark, kept in the {@code notification_watermark} table.
+ * <p>
+ * The count of a user is read from the database on first use and then served from memory: the notifications written
+ * on this node are added to it once they commit, and acknowledging resets it. A notification whose id is not above
+ * the newest one counted is not added again. The counts are read again after
+ * {@code application.notifications.unread.time-to-live-seconds}, which takes in the notifications written or deleted
+ * elsewhere, such as on the other nodes. They are kept in the {@value #UNREAD_COUNTS_CACHE} cache, sized by
+ * {@code application.cache.regions.unread-notifications}, which evicts the counts least recently used when full.
+ */
+@Service
+public class UnreadNotificationCounter {
+
+    public static final String UNREAD_COUNTS_CACHE = "unreadNotificationCounts";
+
+    private static final String MOVE_WATERMARK_SQL = "UPDATE notification_watermark SET last_seen_id = ? " +
+        "WHERE user_id = ? AND last_seen_id < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final long timeToLiveMillis;
+
+    private final Cache<Object, Object> counts;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    public UnreadNotificationCounter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                     CacheManager cacheManager, MeterRegistry meterRegistry,
+                                     ApplicationProperties applicationProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.timeToLiveMillis = TimeUnit.SECONDS.toMillis(
+            applicationProperties.getNotifications().getUnread().getTimeToLiveSeconds());
+        this.counts = cacheManager.getCache(UNREAD_COUNTS_CACHE);
+        this.hits = meterRegistry.counter("loanexchange.notification.unread", "result", "hit");
+        this.misses = meterRegistry.counter("loanexchange.notification.unread", "result", "miss");
+    }
+
+    /**
+     * @param userId the id of the user.
+     * @return the number of notifications of the user written after its watermark.
+     */
+    public long getUnreadCount(Long userId) {
+        long now = System.currentTimeMillis();
+        Unread unread = (Unread) counts.get(userId);
+        if (unread != null && unread.expiresAt > now) {
+            hits.increment();
+            return unread.count;
+        }
+        misses.increment();
+        // read under the lock of the entry, so the notifications committing meanwhile are counted once
+        return update(userId, (entry, arguments) -> {
+            Unread current = (Unread) entry.getValue();
+            if (current != null && current.expiresAt > now) {
+                return current.count;
+            }
+            Unread loaded = load(userId, now);
+            entry.setValue(loaded);
+            return loaded.count;
+        });
+    }
+
+    /**
+     * Adds committed notifications to the counts of their recipients kept in memory.
+     *
+     * @param notifications written notifications, whose recipient holds its id.
+     */
+    public void increment(Collection<Notification> notifications) {
+        for (Notification notification : notifications) {
+            if (notification.getRecipient() != null) {
+                update(notification.getRecipient().getId(), (entry, arguments) -> {
+                    if (entry.exists()) {
+                        entry.setValue(((Unread) entry.getValue()).plus(notification.getId()));
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Moves the watermark of a user forward to a notification the user has seen; it never moves back. The watermark
+     * only ever takes the id of a notification of the user, the newest one at or below the given id, so an id past
+     * the newest notification does not mark the notifications still to come as seen.
+     * <p>
+     * Each statement commits in a transaction of its own, whether or not the caller runs in one: on PostgreSQL the key
+     * violation of a concurrent first acknowledgement aborts the transaction it happens in, so the update retried
+     * after it needs a new one.
+     *
+     * @param userId the id of the user.
+     * @param lastSeenId the id of the newest notification the user has seen.
+     * @return the number of notifications of the user still unseen.
+     */
+    public long acknowledge(Long userId, Long lastSeenId) {
+        Long seenId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM notification WHERE recipient_id = ? AND id <= ?",
+            Long.class, userId, lastSeenId);
+        if (seenId == null) {
+            // none of the notifications of the user is seen
+            return getUnreadCount(userId);
+        }
+
+        if (moveWatermark(userId, seenId) == 0) {
+            try {
+                transactionTemplate.execute(status -> jdbcTemplate.update(
+                    "INSERT INTO notification_watermark (user_id, last_seen_id) VALUES (?, ?)", userId, seenId));
+            } catch (DuplicateKeyException e) {
+                // the user has a watermark, which is at or past the notification or was just inserted concurrently
+                moveWatermark(userId, seenId);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        return update(userId, (entry, arguments) -> {
+            Unread current = (Unread) entry.getValue();
+            Unread updated = current != null && current.expiresAt > now && seenId >= current.maxId
+                ? current.reset(seenId) : load(userId, now);
+            entry.setValue(updated);
+            return updated.count;
+        });
+    }
+
+    /**
+     * Runs an update of the count of a user under the lock of its entry, rethrowing what the update threw.
+     */
+    private <T> T update(Long userId, EntryProcessor<Object, Object, T> processor) {
+        try {
+            return counts.invoke(userId, processor);
+        } catch (EntryProcessorException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private int moveWatermark(Long userId, Long lastSeenId) {
+        return transactionTemplate.execute(status ->
+            jdbcTemplate.update(MOVE_WATERMARK_SQL, lastSeenId, userId, lastSeenId));
+    }
+
+    private Unread load(Long userId, long now) {
+        Long lastSeenId = DataAccessUtils.singleResult(jdbcTemplate.queryForList(
+            "SELECT last_seen_id FROM notification_watermark WHERE user_id = ?", Long.class, userId));
+        long watermark = lastSeenId == null ? 0L : lastSeenId;
+        return jdbcTemplate.queryForObject("SELECT COUNT(CASE WHEN id > ? THEN 1 END), COALESCE(MAX(id), 0) " +
+                "FROM notification WHERE recipient_id = ?",
+            (rs, rowNum) -> new Unread(rs.getLong(1), Math.max(rs.getLong(2), watermark), now + timeToLiveMillis),
+            watermark, userId);
+    }
+
+    private static final class Unread {
+
+        private final long count;
+
+        /**
+         * The newest notification counted or seen.
+         */
+        private final long maxId;
+
+        private final long expiresAt;
+
+        private Unread(long count, long maxId, long expiresAt) {
+            this.count = count;
+            this.maxId = maxId;
+            this.expiresAt = expiresAt;
+        }
+
+        private Unread plus(long notificationId) {
+            return notificationId > maxId ? new Unread(count + 1, notificationId, expiresAt) : this;
+        }
+
+        private Unread reset(long lastSeenId) {
+            return new Unread(0, Math.max(maxId, lastSeenId), expiresAt);
+        }
+    }
+}
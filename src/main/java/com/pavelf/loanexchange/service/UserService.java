@@ -1,6 +1,8 @@
 package com.pavelf.loanexchange.service;
 
 import com.pavelf.loanexchange.config.Constants;
+import com.pavelf.loanexchange.config.cache.CacheInvalidation;
+import com.pavelf.loanexchange.config.cache.CacheInvalidationBus;
 import com.pavelf.loanexchange.domain.Authority;
 import com.pavelf.loanexchange.domain.User;
 import com.pavelf.loanexchange.repository.AuthorityRepository;
@@ -44,11 +46,14 @@ public class UserService {
 
     private final CacheManager cacheManager;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, AuthorityRepository authorityRepository, CacheManager cacheManager) {
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, AuthorityRepository authorityRepository, CacheManager cacheManager, CacheInvalidationBus cacheInvalidationBus) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.authorityRepository = authorityRepository;
         this.cacheManager = cacheManager;
+        this.cacheInvalidationBus = cacheInvalidationBus;
     }
 
     public Optional<User> activateRegistration(String key) {
@@ -270,6 +275,29 @@ public class UserService {
         return SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneWithAuthoritiesByLogin);
     }
 
+    /**
+     * Get the id of the current user from its principal, looking the user up by login only when the principal
+     * does not carry the id.
+     *
+     * @return the id of the current user.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> getCurrentUserId() {
+        Optional<Long> id = SecurityUtils.getCurrentUserId();
+        return id.isPresent() ? id : getUserWithAuthorities().map(User::getId);
+    }
+
+    /**
+     * Get a reference to the current user, to associate it or query by it; the user is only loaded when a
+     * property other than its id is read.
+     *
+     * @return the reference to the current user.
+     */
+    @Transactional(readOnly = true)
+    public Optional<User> getCurrentUserReference() {
+        return getCurrentUserId().map(userRepository::getOne);
+    }
+
     /**
      * Not activated users should be automatically deleted after 3 days.
      * <p>
@@ -297,5 +325,7 @@ public class UserService {
     private void clearUserCaches(User user) {
         Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE)).evict(user.getLogin());
         Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE)).evict(user.getEmail());
+        cacheInvalidationBus.publish(CacheInvalidation.evict(UserRepository.USERS_BY_LOGIN_CACHE, user.getLogin()));
+        cacheInvalidationBus.publish(CacheInvalidation.evict(UserRepository.USERS_BY_EMAIL_CACHE, user.getEmail()));
     }
 }
@@ -0,0 +1,99 @@
+package com.pavelf.loanexchange.service.dto;
+
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * A DTO for the money moved by the ledger entries of one event type within one day, week or month.
+ */
+public class BalanceFlowDTO {
+
+    private LocalDate period;
+
+    private BalanceLogEvent type;
+
+    private BigDecimal incoming = BigDecimal.ZERO;
+
+    private BigDecimal outgoing = BigDecimal.ZERO;
+
+    private long entries;
+
+    public BalanceFlowDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public BalanceFlowDTO(LocalDate period, BalanceLogEvent type) {
+        this.period = period;
+        this.type = type;
+    }
+
+    /**
+     * Adds the totals of a day to the totals of the period.
+     */
+    public BalanceFlowDTO add(BigDecimal incoming, BigDecimal outgoing, long entries) {
+        this.incoming = this.incoming.add(incoming);
+        this.outgoing = this.outgoing.add(outgoing);
+        this.entries += entries;
+        return this;
+    }
+
+    /**
+     * The first day of the period, or the first day of the window if the window starts within the period.
+     */
+    public LocalDate getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(LocalDate period) {
+        this.period = period;
+    }
+
+    public BalanceLogEvent getType() {
+        return type;
+    }
+
+    public void setType(BalanceLogEvent type) {
+        this.type = type;
+    }
+
+    public BigDecimal getIncoming() {
+        return incoming;
+    }
+
+    public void setIncoming(BigDecimal incoming) {
+        this.incoming = incoming;
+    }
+
+    public BigDecimal getOutgoing() {
+        return outgoing;
+    }
+
+    public void setOutgoing(BigDecimal outgoing) {
+        this.outgoing = outgoing;
+    }
+
+    public BigDecimal getNet() {
+        return incoming.add(outgoing);
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public void setEntries(long entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceFlowDTO{" +
+            "period=" + period +
+            ", type=" + type +
+            ", incoming=" + incoming +
+            ", outgoing=" + outgoing +
+            ", entries=" + entries +
+            "}";
+    }
+}
@@ -0,0 +1,74 @@
+package com.pavelf.loanexchange.service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * A DTO describing a balance projection row that disagrees with the ledger.
+ */
+public class BalanceMismatchDTO {
+
+    public enum Projection {
+        ACCOUNT, DEAL
+    }
+
+    private Projection projection;
+
+    private Long ownerId;
+
+    private BigDecimal logBalance;
+
+    private BigDecimal projectedBalance;
+
+    public BalanceMismatchDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public BalanceMismatchDTO(Projection projection, Long ownerId, BigDecimal logBalance, BigDecimal projectedBalance) {
+        this.projection = projection;
+        this.ownerId = ownerId;
+        this.logBalance = logBalance;
+        this.projectedBalance = projectedBalance;
+    }
+
+    public Projection getProjection() {
+        return projection;
+    }
+
+    public void setProjection(Projection projection) {
+        this.projection = projection;
+    }
+
+    public Long getOwnerId() {
+        return ownerId;
+    }
+
+    public void setOwnerId(Long ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public BigDecimal getLogBalance() {
+        return logBalance;
+    }
+
+    public void setLogBalance(BigDecimal logBalance) {
+        this.logBalance = logBalance;
+    }
+
+    public BigDecimal getProjectedBalance() {
+        return projectedBalance;
+    }
+
+    public void setProjectedBalance(BigDecimal projectedBalance) {
+        this.projectedBalance = projectedBalance;
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceMismatchDTO{" +
+            "projection=" + projection +
+            ", ownerId=" + ownerId +
+            ", logBalance=" + logBalance +
+            ", projectedBalance=" + projectedBalance +
+            "}";
+    }
+}
@@ -106,8 +106,7 @@ public class AccountResource {
         if (SecurityUtils.isCurrentUserInRole(ADMIN)) {
             return ResponseEntity.ok(balanceLogService.getAccountStats(userId));
         } else {
-            User loggedInUser = userService.getUserWithAuthorities().get();
-            return ResponseEntity.ok(balanceLogService.getAccountStats(loggedInUser.getId()));
+            return ResponseEntity.ok(balanceLogService.getAccountStats(userService.getCurrentUserId().get()));
         }
     }
 
@@ -1,13 +1,21 @@
 package com.pavelf.loanexchange.web.rest;
 
 import com.pavelf.loanexchange.domain.BalanceLog;
-import com.pavelf.loanexchange.domain.User;
 import com.pavelf.loanexchange.repository.BalanceLogRepository;
 import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.repository.KeysetRepository;
 import com.pavelf.loanexchange.security.SecurityUtils;
+import com.pavelf.loanexchange.service.BalanceLogAnalyticsService;
+import com.pavelf.loanexchange.service.BalanceLogAnalyticsService.Interval;
+import com.pavelf.loanexchange.service.BalanceLogExportService;
+import com.pavelf.loanexchange.service.BalanceLogExportService.Format;
+import com.pavelf.loanexchange.service.LedgerService;
 import com.pavelf.loanexchange.service.UserService;
+import com.pavelf.loanexchange.service.dto.BalanceFlowDTO;
+import com.pavelf.loanexchange.service.dto.BalanceMismatchDTO;
 import com.pavelf.loanexchange.web.rest.errors.BadRequestAlertException;
 import com.pavelf.loanexchange.web.rest.specifications.BalanceLogSpecification;
+import com.pavelf.loanexchange.web.rest.util.KeysetPaginationUtil;
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
 import io.github.jhipster.web.util.ResponseUtil;
@@ -16,16 +24,21 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.validation.Valid;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -51,11 +64,25 @@ public class BalanceLogResource {
 
     private final DealRepository dealRepository;
 
+    private final LedgerService ledgerService;
+
+    private final KeysetRepository keysetRepository;
+
+    private final BalanceLogExportService balanceLogExportService;
+
+    private final BalanceLogAnalyticsService balanceLogAnalyticsService;
+
     public BalanceLogResource(UserService userService, BalanceLogRepository balanceLogRepository,
-                              DealRepository dealRepository) {
+                              DealRepository dealRepository, LedgerService ledgerService,
+                              KeysetRepository keysetRepository, BalanceLogExportService balanceLogExportService,
+                              BalanceLogAnalyticsService balanceLogAnalyticsService) {
         this.userService = userService;
         this.balanceLogRepository = balanceLogRepository;
         this.dealRepository = dealRepository;
+        this.ledgerService = ledgerService;
+        this.keysetRepository = keysetRepository;
+        this.balanceLogExportService = balanceLogExportService;
+        this.balanceLogAnalyticsService = balanceLogAnalyticsService;
     }
 
     /**
@@ -72,38 +99,39 @@ public class BalanceLogResource {
         if (balanceLog.getId() != null) {
             throw new BadRequestAlertException("A new balanceLog cannot already have an ID", ENTITY_NAME, "idexists");
         }
-        BalanceLog result = balanceLogRepository.save(balanceLog);
+        BalanceLog result = ledgerService.append(balanceLog);
         return ResponseEntity.created(new URI("/api/balance-logs/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(applicationName, true, ENTITY_NAME, result.getId().toString()))
             .body(result);
     }
 
     /**
-     * {@code PUT  /balance-logs} : Updates an existing balanceLog.
+     * {@code PUT  /balance-logs} : rejected, the ledger is append-only.
+     *
+     * An entry changed in place would leave the balances, stats and buckets derived from it stale, so a mistake is
+     * corrected by posting an entry which reverses it.
      *
      * @param balanceLog the balanceLog to update.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated balanceLog,
-     * or with status {@code 400 (Bad Request)} if the balanceLog is not valid,
-     * or with status {@code 500 (Internal Server Error)} if the balanceLog couldn't be updated.
-     * @throws URISyntaxException if the Location URI syntax is incorrect.
+     * @return never, the request fails with status {@code 400 (Bad Request)}.
      */
     @PutMapping("/balance-logs")
     @PreAuthorize("hasRole(\"" + ADMIN + "\")")
-    public ResponseEntity<BalanceLog> updateBalanceLog(@Valid @RequestBody BalanceLog balanceLog) throws URISyntaxException {
+    public ResponseEntity<BalanceLog> updateBalanceLog(@Valid @RequestBody BalanceLog balanceLog) {
         log.debug("REST request to update BalanceLog : {}", balanceLog);
         if (balanceLog.getId() == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, "idnull");
         }
-        BalanceLog result = balanceLogRepository.save(balanceLog);
-        return ResponseEntity.ok()
-            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, balanceLog.getId().toString()))
-            .body(result);
+        throw new BadRequestAlertException("The ledger is append-only, post a correcting entry instead", ENTITY_NAME,
+            "appendonly");
     }
 
     /**
      * {@code GET  /balance-logs} : get all the balanceLogs.
      *
-     * @param pageable the pagination information.
+     * With the {@code after} parameter the balanceLogs are paged by cursor in descending id order, see
+     * {@link KeysetPaginationUtil}.
+     *
+     * @param pageable the pagination information; only the size is used when paging by cursor.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of balanceLogs in body.
      */
     @GetMapping("/balance-logs")
@@ -112,22 +140,15 @@ public class BalanceLogResource {
                                                               @RequestParam MultiValueMap<String, String> queryParams,
                                                               UriComponentsBuilder uriBuilder) {
         log.debug("REST request to get a page of BalanceLogs");
-        boolean returnEmptyPage = false;
-
-        if (!SecurityUtils.isCurrentUserInRole(ADMIN)) {
-            User loggedInUser = userService.getUserWithAuthorities().get();
-
-            if (params.getForUser() != null) {
-                params.setForUser(loggedInUser.getId());
-            }
-
-            if (params.getForDeal() != null) {
-                returnEmptyPage = dealRepository.isDealExistWithThisUserParticipating(loggedInUser, params.getForDeal()) == 0;
-            }
+        boolean returnEmptyPage = restrictToCurrentUser(params);
 
-            if (params.getForDeal() == null && params.getForUser() == null) {
-                params.setForUser(loggedInUser.getId());
-            }
+        if (KeysetPaginationUtil.isKeysetRequest(queryParams)) {
+            Long after = KeysetPaginationUtil.getCursor(queryParams, ENTITY_NAME);
+            Slice<BalanceLog> slice = returnEmptyPage ? Page.empty(pageable)
+                : keysetRepository.findAll(BalanceLog.class, params, after, pageable.getPageSize());
+            HttpHeaders headers = KeysetPaginationUtil.generateKeysetHttpHeaders(uriBuilder.queryParams(queryParams),
+                slice, BalanceLog::getId);
+            return ResponseEntity.ok().headers(headers).body(slice.getContent());
         }
 
         Page<BalanceLog> page;
@@ -142,6 +163,95 @@ public class BalanceLogResource {
         return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
 
+    /**
+     * {@code GET  /balance-logs/export} : export all the balanceLogs matching the filters, oldest first.
+     * <p>
+     * The rows are streamed to the response as they are read, so any number of them can be exported
+     * in constant memory. The same ownership rules as for {@code GET  /balance-logs} apply.
+     *
+     * @param format {@code csv} or {@code ndjson}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the export in body,
+     * or with status {@code 400 (Bad Request)} if the format is unknown.
+     */
+    @GetMapping("/balance-logs/export")
+    public ResponseEntity<StreamingResponseBody> exportBalanceLogs(BalanceLogSpecification params,
+                                                                   @RequestParam(defaultValue = "csv") String format) {
+        log.debug("REST request to export BalanceLogs as {}", format);
+        final Format exportFormat = Arrays.stream(Format.values())
+            .filter(candidate -> candidate.name().equalsIgnoreCase(format))
+            .findFirst()
+            .orElseThrow(() -> new BadRequestAlertException("Unknown export format", ENTITY_NAME, "formatinvalid"));
+        final boolean exportNothing = restrictToCurrentUser(params);
+
+        StreamingResponseBody body = out -> {
+            if (exportNothing) {
+                balanceLogExportService.exportNothing(exportFormat, out);
+            } else {
+                balanceLogExportService.export(params, exportFormat, out);
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(exportFormat.getMediaType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"balance-logs." + exportFormat.getExtension() + "\"")
+            .body(body);
+    }
+
+    /**
+     * {@code GET  /balance-logs/consistency} : compare the account and deal balance projections against the ledger.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of mismatching balances in body,
+     * empty if the projections are consistent.
+     */
+    @GetMapping("/balance-logs/consistency")
+    @PreAuthorize("hasRole(\"" + ADMIN + "\")")
+    public ResponseEntity<List<BalanceMismatchDTO>> checkBalanceConsistency() {
+        log.debug("REST request to check balance projections consistency");
+        return ResponseEntity.ok(ledgerService.checkConsistency());
+    }
+
+    /**
+     * {@code GET  /balance-logs/flows} : get the money flows of an account per period and event type.
+     *
+     * @param interval {@code DAY}, {@code WEEK} or {@code MONTH}.
+     * @param from the first day of the window (UTC), included.
+     * @param to the last day of the window (UTC), included.
+     * @param userId the account, for administrators only; the current user's account by default.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of flows in body,
+     * or with status {@code 400 (Bad Request)} if the window ends before it starts.
+     */
+    @GetMapping("/balance-logs/flows")
+    public ResponseEntity<List<BalanceFlowDTO>> getBalanceFlows(@RequestParam Interval interval,
+                                                                @RequestParam LocalDate from,
+                                                                @RequestParam LocalDate to,
+                                                                @RequestParam(required = false) Long userId) {
+        log.debug("REST request to get {} balance flows from {} to {} for userid {}", interval, from, to, userId);
+        checkWindow(from, to);
+        if (userId == null || !SecurityUtils.isCurrentUserInRole(ADMIN)) {
+            userId = userService.getCurrentUserId().get();
+        }
+        return ResponseEntity.ok(balanceLogAnalyticsService.getAccountFlows(userId, interval, from, to));
+    }
+
+    /**
+     * {@code GET  /balance-logs/flows/platform} : get the money flows of all the accounts per period and event type.
+     *
+     * @param interval {@code DAY}, {@code WEEK} or {@code MONTH}.
+     * @param from the first day of the window (UTC), included.
+     * @param to the last day of the window (UTC), included.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of flows in body,
+     * or with status {@code 400 (Bad Request)} if the window ends before it starts.
+     */
+    @GetMapping("/balance-logs/flows/platform")
+    @PreAuthorize("hasRole(\"" + ADMIN + "\")")
+    public ResponseEntity<List<BalanceFlowDTO>> getPlatformBalanceFlows(@RequestParam Interval interval,
+                                                                        @RequestParam LocalDate from,
+                                                                        @RequestParam LocalDate to) {
+        log.debug("REST request to get {} platform balance flows from {} to {}", interval, from, to);
+        checkWindow(from, to);
+        return ResponseEntity.ok(balanceLogAnalyticsService.getPlatformFlows(interval, from, to));
+    }
+
     /**
      * {@code GET  /balance-logs/:id} : get the "id" balanceLog.
      *
@@ -157,16 +267,49 @@ public class BalanceLogResource {
     }
 
     /**
-     * {@code DELETE  /balance-logs/:id} : delete the "id" balanceLog.
+     * {@code DELETE  /balance-logs/:id} : rejected, the ledger is append-only, see {@link #updateBalanceLog}.
      *
      * @param id the id of the balanceLog to delete.
-     * @return the {@link ResponseEntity} with status {@code 204 (NO_CONTENT)}.
+     * @return never, the request fails with status {@code 400 (Bad Request)}.
      */
     @DeleteMapping("/balance-logs/{id}")
     @PreAuthorize("hasRole(\"" + ADMIN + "\")")
     public ResponseEntity<Void> deleteBalanceLog(@PathVariable Long id) {
         log.debug("REST request to delete BalanceLog : {}", id);
-        balanceLogRepository.deleteById(id);
-        return ResponseEntity.noContent().headers(HeaderUtil.createEntityDeletionAlert(applicationName, true, ENTITY_NAME, id.toString())).build();
+        throw new BadRequestAlertException("The ledger is append-only, post a correcting entry instead", ENTITY_NAME,
+            "appendonly");
+    }
+
+    /**
+     * Restricts the filters of a user other than an administrator to their own entries.
+     *
+     * @return whether nothing may be returned, because the filter names a deal of somebody else.
+     */
+    private boolean restrictToCurrentUser(BalanceLogSpecification params) {
+        boolean returnEmptyPage = false;
+
+        if (!SecurityUtils.isCurrentUserInRole(ADMIN)) {
+            Long loggedInUserId = userService.getCurrentUserId().get();
+
+            if (params.getForUser() != null) {
+                params.setForUser(loggedInUserId);
+            }
+
+            if (params.getForDeal() != null) {
+                returnEmptyPage = dealRepository.isDealExistWithThisUserParticipating(loggedInUserId, params.getForDeal()) == 0;
+            }
+
+            if (params.getForDeal() == null && params.getForUser() == null) {
+                params.setForUser(loggedInUserId);
+            }
+        }
+
+        return returnEmptyPage;
+    }
+
+    private void checkWindow(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new BadRequestAlertException("The window ends before it starts", ENTITY_NAME, "windowinvalid");
+        }
     }
 }
@@ -1,14 +1,17 @@
 package com.pavelf.loanexchange.web.rest;
 
 import com.pavelf.loanexchange.domain.Deal;
-import com.pavelf.loanexchange.domain.User;
 import com.pavelf.loanexchange.domain.enumeration.DealStatus;
 import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.repository.KeysetRepository;
 import com.pavelf.loanexchange.security.SecurityUtils;
+import com.pavelf.loanexchange.service.DealOrderBook;
 import com.pavelf.loanexchange.service.DealService;
 import com.pavelf.loanexchange.service.UserService;
 import com.pavelf.loanexchange.web.rest.errors.BadRequestAlertException;
+import com.pavelf.loanexchange.web.rest.errors.PreconditionFailedException;
 import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+import com.pavelf.loanexchange.web.rest.util.KeysetPaginationUtil;
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
 import io.github.jhipster.web.util.ResponseUtil;
@@ -17,6 +20,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -52,10 +57,17 @@ public class DealResource {
 
     private final UserService userService;
 
-    public DealResource(DealRepository dealRepository, DealService dealService, UserService userService) {
+    private final KeysetRepository keysetRepository;
+
+    private final DealOrderBook dealOrderBook;
+
+    public DealResource(DealRepository dealRepository, DealService dealService, UserService userService,
+                        KeysetRepository keysetRepository, DealOrderBook dealOrderBook) {
         this.dealRepository = dealRepository;
         this.dealService = dealService;
         this.userService = userService;
+        this.keysetRepository = keysetRepository;
+        this.dealOrderBook = dealOrderBook;
     }
 
     /**
@@ -78,6 +90,7 @@ public class DealResource {
 
         if (SecurityUtils.isCurrentUserInRole(ADMIN)) {
             result = dealRepository.save(deal);
+            dealOrderBook.update(result);
         } else {
             result = dealService.createDealForCurrentUser(deal);
         }
@@ -91,37 +104,51 @@ public class DealResource {
      * {@code PUT  /deals} : Updates an existing deal.
      *
      * @param deal the deal to update.
+     * @param ifMatch the ETag of the version the update is based on; takes precedence over the version in the body.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated deal,
      * or with status {@code 400 (Bad Request)} if the deal is not valid,
+     * or with status {@code 412 (Precondition Failed)} if the deal was changed since the given version,
      * or with status {@code 500 (Internal Server Error)} if the deal couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/deals")
-    public ResponseEntity<Deal> updateDeal(@Valid @RequestBody Deal deal) throws URISyntaxException {
+    public ResponseEntity<Deal> updateDeal(@Valid @RequestBody Deal deal,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+        throws URISyntaxException {
         log.debug("REST request to update Deal : {}", deal);
         if (deal.getId() == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, "idnull");
         }
+        if (ifMatch != null) {
+            deal.setVersion(parseETag(ifMatch));
+        }
 
         Deal result = null;
 
         if (SecurityUtils.isCurrentUserInRole(ADMIN)) {
-            result = dealRepository.save(deal);
+            result = dealService.replaceDeal(deal);
         } else if (SecurityUtils.isCurrentUserInRole(DEBTOR)) {
             result = dealService.acceptDeal(deal);
         } else if (SecurityUtils.isCurrentUserInRole(CREDITOR)) {
             result = dealService.updateDeal(deal);
         }
 
-        return ResponseEntity.ok()
-            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, deal.getId().toString()))
-            .body(result);
+        HttpHeaders headers = HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME,
+            deal.getId().toString());
+        if (result != null) {
+            headers.setETag(eTag(result));
+        }
+        return ResponseEntity.ok().headers(headers).body(result);
     }
 
     /**
      * {@code GET  /deals} : get all the deals.
      *
-     * @param pageable the pagination information.
+     * With the {@code after} parameter the deals are paged by cursor in descending id order, see
+     * {@link KeysetPaginationUtil}.
+     * The pending deals are read from the {@link DealOrderBook} when it can serve the filters and the sort.
+     *
+     * @param pageable the pagination information; only the size is used when paging by cursor.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of deals in body.
      */
     @GetMapping("/deals")
@@ -134,22 +161,34 @@ public class DealResource {
         if (SecurityUtils.isCurrentUserInRole(DEBTOR)) {
 
             if (params.getWithStatus() != DealStatus.PENDING) {
-                User loggedInUser = userService.getUserWithAuthorities().get();
-                params.setForRecipient(loggedInUser.getId());
+                params.setForRecipient(userService.getCurrentUserId().get());
             }
 
         } else if (SecurityUtils.isCurrentUserInRole(CREDITOR)) {
-            User loggedInUser = userService.getUserWithAuthorities().get();
-            params.setForEmitter(loggedInUser.getId());
+            params.setForEmitter(userService.getCurrentUserId().get());
+        }
+
+        if (KeysetPaginationUtil.isKeysetRequest(queryParams)) {
+            Long after = KeysetPaginationUtil.getCursor(queryParams, ENTITY_NAME);
+            Slice<Deal> slice = dealOrderBook.canServe(params, Sort.unsorted())
+                ? dealOrderBook.findAll(params, after, pageable.getPageSize())
+                : keysetRepository.findAll(Deal.class, params, after, pageable.getPageSize());
+            HttpHeaders headers = KeysetPaginationUtil.generateKeysetHttpHeaders(uriBuilder.queryParams(queryParams),
+                slice, Deal::getId);
+            return ResponseEntity.ok().headers(headers).body(slice.getContent());
         }
 
-        Page<Deal> page = dealRepository.findAll(params, pageable);
+        Page<Deal> page = dealOrderBook.canServe(params, pageable.getSort()) ? dealOrderBook.findAll(params, pageable)
+            : dealRepository.findAll(params, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(uriBuilder.queryParams(queryParams), page);
         return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
 
     /**
      * {@code GET  /deals/:id} : get the "id" deal.
+     * <p>
+     * The ETag of the response is the version of the deal, so a request with a matching {@code If-None-Match}
+     * gets {@code 304 (Not Modified)} without a body.
      *
      * @param id the id of the deal to retrieve.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the deal, or with status {@code 404 (Not Found)}.
@@ -161,16 +200,16 @@ public class DealResource {
         params.setDealId(id);
 
         if (SecurityUtils.isCurrentUserInRole(DEBTOR)) {
-            User loggedInUser = userService.getUserWithAuthorities().get();
-            params.setOnlyAvailableToDebtor(loggedInUser.getId());
+            params.setOnlyAvailableToDebtor(userService.getCurrentUserId().get());
 
         } else if (SecurityUtils.isCurrentUserInRole(CREDITOR)) {
-            User loggedInUser = userService.getUserWithAuthorities().get();
-            params.setForEmitter(loggedInUser.getId());
+            params.setForEmitter(userService.getCurrentUserId().get());
         }
 
         Optional<Deal> deal = dealRepository.findOne(params);
-        return ResponseUtil.wrapOrNotFound(deal);
+        HttpHeaders headers = new HttpHeaders();
+        deal.ifPresent(found -> headers.setETag(eTag(found)));
+        return ResponseUtil.wrapOrNotFound(deal, headers);
     }
 
     /**
@@ -184,7 +223,32 @@ public class DealResource {
     public ResponseEntity<Void> deleteDeal(@PathVariable Long id) {
         log.debug("REST request to delete Deal : {}", id);
         dealRepository.deleteById(id);
+        dealOrderBook.remove(id);
         return ResponseEntity.noContent().headers(HeaderUtil.createEntityDeletionAlert(applicationName,
             true, ENTITY_NAME, id.toString())).build();
     }
+
+    private static String eTag(Deal deal) {
+        return "\"" + deal.getVersion() + "\"";
+    }
+
+    /**
+     * @return the version named by a strong ETag, or {@code null} for {@code *}, which matches any version.
+     * @throws PreconditionFailedException if the header names no version of a deal, so it cannot match.
+     */
+    private static Long parseETag(String ifMatch) {
+        String tag = ifMatch.trim();
+        if ("*".equals(tag)) {
+            return null;
+        }
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            try {
+                return Long.valueOf(tag.substring(1, tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // not a version of a deal, so it cannot match
+            }
+        }
+        throw new PreconditionFailedException("If-Match does not name a version of the deal.", ENTITY_NAME,
+            "versionmismatch");
+    }
 }
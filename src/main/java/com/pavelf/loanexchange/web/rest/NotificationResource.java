@@ -1,12 +1,17 @@
 package com.pavelf.loanexchange.web.rest;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.pavelf.loanexchange.domain.Notification;
-import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.repository.KeysetRepository;
 import com.pavelf.loanexchange.repository.NotificationRepository;
 import com.pavelf.loanexchange.security.SecurityUtils;
+import com.pavelf.loanexchange.security.jwt.StreamTicketStore;
+import com.pavelf.loanexchange.service.NotificationHub;
+import com.pavelf.loanexchange.service.UnreadNotificationCounter;
 import com.pavelf.loanexchange.service.UserService;
 import com.pavelf.loanexchange.web.rest.errors.BadRequestAlertException;
 import com.pavelf.loanexchange.web.rest.specifications.NotificationSpecification;
+import com.pavelf.loanexchange.web.rest.util.KeysetPaginationUtil;
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
 import io.github.jhipster.web.util.ResponseUtil;
@@ -15,11 +20,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.validation.Valid;
@@ -46,10 +55,21 @@ public class NotificationResource {
 
     private final NotificationRepository notificationRepository;
     private final UserService userService;
+    private final KeysetRepository keysetRepository;
+    private final NotificationHub notificationHub;
+    private final UnreadNotificationCounter unreadNotificationCounter;
+    private final StreamTicketStore streamTicketStore;
 
-    public NotificationResource(NotificationRepository notificationRepository, UserService userService) {
+    public NotificationResource(NotificationRepository notificationRepository, UserService userService,
+                                KeysetRepository keysetRepository, NotificationHub notificationHub,
+                                UnreadNotificationCounter unreadNotificationCounter,
+                                StreamTicketStore streamTicketStore) {
         this.notificationRepository = notificationRepository;
         this.userService = userService;
+        this.keysetRepository = keysetRepository;
+        this.notificationHub = notificationHub;
+        this.unreadNotificationCounter = unreadNotificationCounter;
+        this.streamTicketStore = streamTicketStore;
     }
 
     /**
@@ -97,7 +117,10 @@ public class NotificationResource {
     /**
      * {@code GET  /notifications} : get all the notifications.
      *
-     * @param pageable the pagination information.
+     * With the {@code after} parameter the notifications are paged by cursor in descending id order, see
+     * {@link KeysetPaginationUtil}.
+     *
+     * @param pageable the pagination information; only the size is used when paging by cursor.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of notifications in body.
      */
     @GetMapping("/notifications")
@@ -108,8 +131,15 @@ public class NotificationResource {
         log.debug("REST request to get a page of Notifications");
 
         if (!SecurityUtils.isCurrentUserInRole(ADMIN)) {
-            User loggedInUser = userService.getUserWithAuthorities().get();
-            params.setForUser(loggedInUser.getId());
+            params.setForUser(userService.getCurrentUserId().get());
+        }
+
+        if (KeysetPaginationUtil.isKeysetRequest(queryParams)) {
+            Slice<Notification> slice = keysetRepository.findAll(Notification.class, params,
+                KeysetPaginationUtil.getCursor(queryParams, ENTITY_NAME), pageable.getPageSize());
+            HttpHeaders headers = KeysetPaginationUtil.generateKeysetHttpHeaders(uriBuilder.queryParams(queryParams),
+                slice, Notification::getId);
+            return ResponseEntity.ok().headers(headers).body(slice.getContent());
         }
 
         Page<Notification> page = notificationRepository.findAll(params, pageable);
@@ -117,6 +147,65 @@ public class NotificationResource {
         return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
 
+    /**
+     * {@code GET  /notifications/stream} : stream the notifications of the current user as they are written.
+     *
+     * Each notification is sent as an event named {@code notification}, with its id as the event id. Browsers open
+     * the stream with a ticket in the {@code ticket} parameter, see {@link StreamTicketStore}; as a ticket is used up
+     * by the first request, a browser reconnects with a new stream and a new ticket, passing the id of the last
+     * notification received in the {@code lastEventId} parameter.
+     *
+     * @param lastEventId the id of the last notification received, sent by the browser when it reconnects.
+     * @param lastEventIdParameter the same, for a new stream.
+     * @return the {@link SseEmitter} of the stream, see {@link NotificationHub}.
+     */
+    @GetMapping(value = "/notifications/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamNotifications(
+        @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+        @RequestParam(value = "lastEventId", required = false) Long lastEventIdParameter) {
+        Long after = lastEventId != null ? lastEventId : lastEventIdParameter;
+        log.debug("REST request to stream Notifications after : {}", after);
+        return notificationHub.subscribe(userService.getCurrentUserId().get(), after);
+    }
+
+    /**
+     * {@code POST  /notifications/stream/ticket} : get a single-use ticket opening the notification stream of the
+     * current user, for clients which cannot send the token in a header.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the ticket in body.
+     */
+    @PostMapping("/notifications/stream/ticket")
+    public ResponseEntity<StreamTicket> createStreamTicket() {
+        log.debug("REST request to get a Notification stream ticket");
+        return ResponseEntity.ok(new StreamTicket(
+            streamTicketStore.issue(SecurityContextHolder.getContext().getAuthentication())));
+    }
+
+    /**
+     * {@code GET  /notifications/unread-count} : get the number of notifications the current user has not seen.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the number of notifications written after
+     * the last one acknowledged in body.
+     */
+    @GetMapping("/notifications/unread-count")
+    public ResponseEntity<Long> getUnreadNotificationCount() {
+        log.debug("REST request to get the unread count of Notifications");
+        return ResponseEntity.ok(unreadNotificationCounter.getUnreadCount(userService.getCurrentUserId().get()));
+    }
+
+    /**
+     * {@code POST  /notifications/acknowledge} : mark the notifications of the current user up to the given one as seen.
+     * An id past the newest notification of the user marks that one as seen, not the ones still to come.
+     *
+     * @param lastSeenId the id of the newest notification the user has seen.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the number of notifications still unseen in body.
+     */
+    @PostMapping("/notifications/acknowledge")
+    public ResponseEntity<Long> acknowledgeNotifications(@RequestParam Long lastSeenId) {
+        log.debug("REST request to acknowledge Notifications up to : {}", lastSeenId);
+        return ResponseEntity.ok(unreadNotificationCounter.acknowledge(userService.getCurrentUserId().get(), lastSeenId));
+    }
+
     /**
      * {@code GET  /notifications/:id} : get the "id" notification.
      *
@@ -145,4 +234,25 @@ public class NotificationResource {
         return ResponseEntity.noContent().headers(HeaderUtil.createEntityDeletionAlert(
             applicationName, true, ENTITY_NAME, id.toString())).build();
     }
+
+    /**
+     * Object to return as body of a stream ticket.
+     */
+    static class StreamTicket {
+
+        private String ticket;
+
+        StreamTicket(String ticket) {
+            this.ticket = ticket;
+        }
+
+        @JsonProperty("ticket")
+        String getTicket() {
+            return ticket;
+        }
+
+        void setTicket(String ticket) {
+            this.ticket = ticket;
+        }
+    }
 }
@@ -1,8 +1,10 @@
 package com.pavelf.loanexchange.web.rest;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.pavelf.loanexchange.security.SecurityUtils;
 import com.pavelf.loanexchange.security.jwt.JWTFilter;
 import com.pavelf.loanexchange.security.jwt.TokenProvider;
+import com.pavelf.loanexchange.security.jwt.TokenRevocationStore;
 import com.pavelf.loanexchange.web.rest.vm.LoginVM;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -29,9 +31,13 @@ public class UserJWTController {
 
     private final AuthenticationManagerBuilder authenticationManagerBuilder;
 
-    public UserJWTController(TokenProvider tokenProvider, AuthenticationManagerBuilder authenticationManagerBuilder) {
+    private final TokenRevocationStore tokenRevocationStore;
+
+    public UserJWTController(TokenProvider tokenProvider, AuthenticationManagerBuilder authenticationManagerBuilder,
+                             TokenRevocationStore tokenRevocationStore) {
         this.tokenProvider = tokenProvider;
         this.authenticationManagerBuilder = authenticationManagerBuilder;
+        this.tokenRevocationStore = tokenRevocationStore;
     }
 
     @PostMapping("/authenticate")
@@ -49,6 +55,20 @@ public class UserJWTController {
         return new ResponseEntity<>(new JWTToken(jwt), httpHeaders, HttpStatus.OK);
     }
 
+    /**
+     * {@code POST  /logout} : revoke the token of the request, so it is rejected by every node before it expires.
+     *
+     * @return the {@link ResponseEntity} with status {@code 204 (No Content)}.
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout() {
+        SecurityUtils.getCurrentUserJWT()
+            .flatMap(tokenProvider::parseToken)
+            .filter(claims -> claims.getId() != null)
+            .ifPresent(claims -> tokenRevocationStore.revoke(claims.getId(), claims.getExpiration().toInstant()));
+        return ResponseEntity.noContent().build();
+    }
+
     /**
      * Object to return as body in JWT Authentication.
      */
@@ -15,6 +15,7 @@ public final class ErrorConstants {
     public static final URI LOGIN_ALREADY_USED_TYPE = URI.create(PROBLEM_BASE_URL + "/login-already-used");
     public static final URI EMAIL_NOT_FOUND_TYPE = URI.create(PROBLEM_BASE_URL + "/email-not-found");
     public static final URI NOT_ENOUGH_MONEY = URI.create(PROBLEM_BASE_URL + "/no-money");
+    public static final URI PRECONDITION_FAILED_TYPE = URI.create(PROBLEM_BASE_URL + "/precondition-failed");
 
     private ErrorConstants() {
     }
@@ -0,0 +1,41 @@
+package com.pavelf.loanexchange.web.rest.errors;
+
+import org.zalando.problem.AbstractThrowableProblem;
+import org.zalando.problem.Status;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thrown when the version of an entity the client names, in {@code If-Match} or in the body, is not the current one.
+ */
+public class PreconditionFailedException extends AbstractThrowableProblem {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String entityName;
+
+    private final String errorKey;
+
+    public PreconditionFailedException(String defaultMessage, String entityName, String errorKey) {
+        super(ErrorConstants.PRECONDITION_FAILED_TYPE, defaultMessage, Status.PRECONDITION_FAILED, null, null, null,
+            getAlertParameters(entityName, errorKey));
+        this.entityName = entityName;
+        this.errorKey = errorKey;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public String getErrorKey() {
+        return errorKey;
+    }
+
+    private static Map<String, Object> getAlertParameters(String entityName, String errorKey) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("message", "error." + errorKey);
+        parameters.put("params", entityName);
+        return parameters;
+    }
+}
@@ -27,6 +27,8 @@ public class DealSpecification implements Specification<Deal> {
     private PaymentInterval paymentEvery;
     private Integer minTerm;
     private Long onlyAvailableToDebtor;
+    private Long idFrom;
+    private Long idTo;
 
     @Override
     public Predicate toPredicate(Root<Deal> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
@@ -82,6 +84,14 @@ public class DealSpecification implements Specification<Deal> {
             predicateList.add(cb.equal(root.get("paymentEvery"), paymentEvery));
         }
 
+        if (idFrom != null) {
+            predicateList.add(cb.greaterThanOrEqualTo(root.get("id"), idFrom));
+        }
+
+        if (idTo != null) {
+            predicateList.add(cb.lessThanOrEqualTo(root.get("id"), idTo));
+        }
+
         return cb.and(predicateList.toArray(new Predicate[predicateList.size()]));
     }
 
@@ -172,4 +182,20 @@ public class DealSpecification implements Specification<Deal> {
     public void setPaymentEvery(PaymentInterval paymentEvery) {
         this.paymentEvery = paymentEvery;
     }
+
+    public Long getIdFrom() {
+        return idFrom;
+    }
+
+    public void setIdFrom(Long idFrom) {
+        this.idFrom = idFrom;
+    }
+
+    public Long getIdTo() {
+        return idTo;
+    }
+
+    public void setIdTo(Long idTo) {
+        this.idTo = idTo;
+    }
 }
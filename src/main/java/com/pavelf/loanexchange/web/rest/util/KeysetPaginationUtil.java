@@ -0,0 +1,84 @@
+package com.pavelf.loanexchange.web.rest.util;
+
+import com.pavelf.loanexchange.web.rest.errors.BadRequestAlertException;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Utility class for keyset pagination, the cursor counterpart of {@code io.github.jhipster.web.util.PaginationUtil}.
+ * <p>
+ * A request with the {@code after} parameter is paged by cursor: {@code after=} empty asks for the first page,
+ * {@code after=<id>} for the page following the entity with that id. The {@code Link} header names the first page
+ * and, unless this page is the last one, the next page.
+ */
+public final class KeysetPaginationUtil {
+
+    public static final String AFTER = "after";
+
+    private static final String HEADER_LINK_FORMAT = "<{0}>; rel=\"{1}\"";
+
+    private KeysetPaginationUtil() {
+    }
+
+    /**
+     * @return whether the request asks for cursor pagination.
+     */
+    public static boolean isKeysetRequest(MultiValueMap<String, String> queryParams) {
+        return queryParams.containsKey(AFTER);
+    }
+
+    /**
+     * @return the id in the cursor, or {@code null} for the first page.
+     * @throws BadRequestAlertException if the cursor is not an id.
+     */
+    public static Long getCursor(MultiValueMap<String, String> queryParams, String entityName) {
+        String after = queryParams.getFirst(AFTER);
+        if (!StringUtils.hasText(after)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(after.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestAlertException("Invalid cursor", entityName, "cursorinvalid");
+        }
+    }
+
+    /**
+     * Generates the {@code Link} header of a page read by cursor.
+     *
+     * @param uriBuilder the builder of the requested URI, with its query parameters.
+     * @param slice the page.
+     * @param idOf the id of an entity of the page.
+     */
+    public static <T> HttpHeaders generateKeysetHttpHeaders(UriComponentsBuilder uriBuilder, Slice<T> slice,
+                                                            Function<T, Long> idOf) {
+        HttpHeaders headers = new HttpHeaders();
+        StringBuilder link = new StringBuilder();
+        List<T> content = slice.getContent();
+        if (slice.hasNext()) {
+            link.append(prepareLink(uriBuilder, String.valueOf(idOf.apply(content.get(content.size() - 1))),
+                slice.getSize(), "next")).append(",");
+        }
+        link.append(prepareLink(uriBuilder, "", slice.getSize(), "first"));
+        headers.add(HttpHeaders.LINK, link.toString());
+        return headers;
+    }
+
+    private static String prepareLink(UriComponentsBuilder uriBuilder, String after, int size, String relType) {
+        String uri = uriBuilder.cloneBuilder()
+            .replaceQueryParam("page")
+            .replaceQueryParam(AFTER, after)
+            .replaceQueryParam("size", size)
+            .toUriString()
+            .replace(",", "%2C")
+            .replace(";", "%3B");
+        return MessageFormat.format(HEADER_LINK_FORMAT, uri, relType);
+    }
+}
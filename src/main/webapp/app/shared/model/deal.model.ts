@@ -25,6 +25,7 @@ export interface IDeal {
   term?: number;
   paymentEvery?: PaymentInterval;
   status?: DealStatus;
+  version?: number;
   emitter?: IUser;
   recipient?: IUser;
 }
@@ -0,0 +1,92 @@
+package com.pavelf.loanexchange.aop.retry;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the {@link ConcurrencyRetryAspect}.
+ */
+public class ConcurrencyRetryAspectUnitTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private FlakyService target;
+
+    private FlakyService service;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.getRetry().setMaxAttempts(3);
+        properties.getRetry().setInitialBackoffMillis(1);
+        properties.getRetry().setMaxBackoffMillis(2);
+        meterRegistry = new SimpleMeterRegistry();
+
+        target = new FlakyService();
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.addAspect(new ConcurrencyRetryAspect(properties, meterRegistry));
+        service = factory.getProxy();
+    }
+
+    @Test
+    public void testRetriesUntilSuccess() {
+        target.failures = 2;
+        target.failure = new CannotAcquireLockException("deadlock");
+
+        assertThat(service.call()).isEqualTo(3);
+        assertThat(meterRegistry.counter("loanexchange.transaction.attempts",
+            "method", "FlakyService.call", "outcome", "retry").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("loanexchange.transaction.attempts",
+            "method", "FlakyService.call", "outcome", "success_after_retry").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCommitTimeSerializationFailureIsTranslatedWhenExhausted() {
+        target.failures = 5;
+        target.failure = new TransactionSystemException("commit failed",
+            new SQLException("could not serialize access", "40001"));
+
+        assertThatThrownBy(() -> service.call()).isInstanceOf(CannotSerializeTransactionException.class);
+        assertThat(target.calls).isEqualTo(3);
+    }
+
+    @Test
+    public void testOtherFailuresAreNotRetried() {
+        target.failures = 1;
+        target.failure = new DataIntegrityViolationException("duplicate");
+
+        assertThatThrownBy(() -> service.call()).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(target.calls).isEqualTo(1);
+    }
+
+    public static class FlakyService {
+
+        private int failures;
+
+        private RuntimeException failure;
+
+        private int calls;
+
+        @RetryOnConcurrencyFailure
+        public int call() {
+            calls++;
+            if (calls <= failures) {
+                throw failure;
+            }
+            return calls;
+        }
+    }
+}
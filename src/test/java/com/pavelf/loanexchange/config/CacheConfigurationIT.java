@@ -0,0 +1,87 @@
+package com.pavelf.loanexchange.config;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.Notification;
+import com.pavelf.loanexchange.repository.UserRepository;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.ehcache.config.CacheRuntimeConfiguration;
+import org.ehcache.config.ResourcePools;
+import org.ehcache.config.ResourceType;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the cache regions of {@link CacheConfiguration}, as set up by the test
+ * {@code application.cache.regions}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class CacheConfigurationIT {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void assertThatRegionsAreSizedByTheirSettings() {
+        assertThat(heapEntries(UserRepository.USERS_BY_LOGIN_CACHE)).isEqualTo(50);
+        // not configured, the jhipster.cache.ehcache default
+        assertThat(heapEntries(Deal.class.getName())).isEqualTo(100);
+    }
+
+    @Test
+    public void assertThatDisabledRegionKeepsNothing() {
+        Cache<Object, Object> cache = cacheManager.getCache(Notification.class.getName());
+
+        cache.put(1L, "entry");
+
+        assertThat(cache.get(1L)).isNull();
+        assertThat(enabled(Notification.class.getName())).isZero();
+        assertThat(enabled(Deal.class.getName())).isEqualTo(1);
+    }
+
+    @Test
+    public void assertThatRegionMetricsCountHitsAndMisses() {
+        Cache<Object, Object> cache = cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE);
+        double missesBefore = gets(UserRepository.USERS_BY_LOGIN_CACHE, "miss");
+        double hitsBefore = gets(UserRepository.USERS_BY_LOGIN_CACHE, "hit");
+
+        cache.get("cache-metrics-login");
+        cache.put("cache-metrics-login", "user");
+        cache.get("cache-metrics-login");
+        cache.remove("cache-metrics-login");
+
+        assertThat(gets(UserRepository.USERS_BY_LOGIN_CACHE, "miss")).isEqualTo(missesBefore + 1);
+        assertThat(gets(UserRepository.USERS_BY_LOGIN_CACHE, "hit")).isEqualTo(hitsBefore + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long heapEntries(String cacheName) {
+        Eh107Configuration<Object, Object> configuration = cacheManager.getCache(cacheName)
+            .getConfiguration(Eh107Configuration.class);
+        ResourcePools resourcePools = configuration.unwrap(CacheRuntimeConfiguration.class).getResourcePools();
+        return resourcePools.getPoolForResource(ResourceType.Core.HEAP).getSize();
+    }
+
+    private double enabled(String cacheName) {
+        return meterRegistry.get("loanexchange.cache.enabled").tag("cache", cacheName).gauge().value();
+    }
+
+    private double gets(String cacheName, String result) {
+        FunctionCounter counter = meterRegistry.find("cache.gets").tag("cache", cacheName).tag("result", result)
+            .functionCounter();
+        assertThat(counter).as("cache.gets of " + cacheName).isNotNull();
+        return counter.count();
+    }
+}
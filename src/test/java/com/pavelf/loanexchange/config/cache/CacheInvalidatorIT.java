@@ -0,0 +1,103 @@
+package com.pavelf.loanexchange.config.cache;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.repository.UserRepository;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link CacheInvalidator}, over the loopback bus of the test profile.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class CacheInvalidatorIT {
+
+    @Autowired
+    private CacheInvalidator cacheInvalidator;
+
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<CacheInvalidation> published = new CopyOnWriteArrayList<>();
+
+    private final Consumer<CacheInvalidation> recorder = published::add;
+
+    private User user;
+
+    @BeforeEach
+    public void init() {
+        user = new TransactionTemplate(transactionManager).execute(status -> {
+            User created = UserResourceIT.createEntity(em);
+            em.persist(created);
+            return created;
+        });
+        cacheInvalidationBus.subscribe(recorder);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        cacheInvalidationBus.unsubscribe(recorder);
+        new TransactionTemplate(transactionManager).execute(status -> {
+            em.remove(em.find(User.class, user.getId()));
+            return null;
+        });
+    }
+
+    @Test
+    public void assertThatCommittedEntityUpdatesArePublished() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            em.find(User.class, user.getId()).setFirstName("changed");
+            return null;
+        });
+        new TransactionTemplate(transactionManager).execute(status -> {
+            em.find(User.class, user.getId()).setLastName("rolled back");
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(published).containsExactly(CacheInvalidation.evict(User.class.getName(), user.getId()));
+    }
+
+    @Test
+    public void assertThatInvalidationsDropTheEntriesOfThisNode() {
+        new TransactionTemplate(transactionManager).execute(status -> em.find(User.class, user.getId()));
+        assertThat(entityManagerFactory.getCache().contains(User.class, user.getId())).isTrue();
+        Cache usersByLogin = cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE);
+        usersByLogin.put(user.getLogin(), user);
+
+        cacheInvalidator.invalidate(CacheInvalidation.evict(User.class.getName(), user.getId()));
+        cacheInvalidator.invalidate(CacheInvalidation.evict(UserRepository.USERS_BY_LOGIN_CACHE, user.getLogin()));
+
+        assertThat(entityManagerFactory.getCache().contains(User.class, user.getId())).isFalse();
+        assertThat(usersByLogin.get(user.getLogin())).isNull();
+    }
+}
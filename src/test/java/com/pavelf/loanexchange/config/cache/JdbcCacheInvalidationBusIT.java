@@ -0,0 +1,126 @@
+package com.pavelf.loanexchange.config.cache;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link JdbcCacheInvalidationBus}, with two buses standing for two nodes sharing the
+ * database.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class JdbcCacheInvalidationBusIT {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JdbcCacheInvalidationBus nodeA;
+
+    private JdbcCacheInvalidationBus nodeB;
+
+    private final List<CacheInvalidation> receivedByA = new ArrayList<>();
+
+    private final List<CacheInvalidation> receivedByB = new ArrayList<>();
+
+    @BeforeEach
+    public void init() {
+        nodeA = new JdbcCacheInvalidationBus(jdbcTemplate, transactionManager, "h2", 60);
+        nodeA.subscribe(receivedByA::add);
+        nodeB = new JdbcCacheInvalidationBus(jdbcTemplate, transactionManager, "h2", 60);
+        nodeB.subscribe(receivedByB::add);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        new TransactionTemplate(transactionManager).execute(status ->
+            jdbcTemplate.update("DELETE FROM cache_invalidation"));
+    }
+
+    @Test
+    public void assertThatCommittedInvalidationsReachTheOtherNodeOnce() {
+        CacheInvalidation evict = CacheInvalidation.evict("usersByLogin", "alice");
+        CacheInvalidation clear = CacheInvalidation.clear("com.pavelf.loanexchange.domain.Deal");
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            nodeA.publish(evict);
+            nodeA.publish(clear);
+            return null;
+        });
+
+        assertThat(nodeB.poll()).isEqualTo(2);
+        assertThat(nodeB.poll()).isZero();
+        assertThat(nodeA.poll()).isZero();
+        assertThat(receivedByB).containsExactlyInAnyOrder(evict, clear);
+        assertThat(receivedByA).isEmpty();
+    }
+
+    @Test
+    public void assertThatRolledBackInvalidationsAreNotDelivered() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            nodeA.publish(CacheInvalidation.evict("usersByLogin", "alice"));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(nodeB.poll()).isZero();
+        assertThat(receivedByB).isEmpty();
+    }
+
+    @Test
+    public void assertThatInvalidationsCommittedOutOfOrderAreDeliveredOnce() {
+        CacheInvalidation first = CacheInvalidation.evict("usersByLogin", "alice");
+        CacheInvalidation second = CacheInvalidation.evict("usersByLogin", "bob");
+        assertThat(nodeB.poll()).isZero();
+
+        // the first invalidation takes the lower id but commits after the second one was read
+        TransactionTemplate outer = new TransactionTemplate(transactionManager);
+        TransactionTemplate inner = new TransactionTemplate(transactionManager);
+        inner.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        outer.execute(status -> {
+            nodeA.publish(first);
+            inner.execute(innerStatus -> {
+                nodeA.publish(second);
+                return null;
+            });
+            // polled by another thread, outside of this transaction
+            assertThat(CompletableFuture.supplyAsync(nodeB::poll).join()).isEqualTo(1);
+            return null;
+        });
+
+        assertThat(nodeB.poll()).isEqualTo(1);
+        assertThat(nodeB.poll()).isZero();
+        assertThat(receivedByB).containsExactly(second, first);
+    }
+
+    @Test
+    public void assertThatPurgesDeleteRowsOlderThanTwiceTheWindow() {
+        new TransactionTemplate(transactionManager).execute(status -> jdbcTemplate.update(
+            "INSERT INTO cache_invalidation (id, node_id, region, cache_key, created_date) " +
+                "VALUES (NEXT VALUE FOR cache_invalidation_sequence, 'gone', 'usersByLogin', 'alice', " +
+                "CURRENT_TIMESTAMP - INTERVAL '121' SECOND)"));
+
+        assertThat(nodeB.poll()).isEqualTo(1);
+        assertThat(nodeB.purge()).isEqualTo(1);
+
+        // read in a transaction of its own, which sees the purge only if it was committed
+        assertThat(new TransactionTemplate(transactionManager).execute(status -> jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM cache_invalidation WHERE node_id = 'gone'", Integer.class))).isZero();
+    }
+}
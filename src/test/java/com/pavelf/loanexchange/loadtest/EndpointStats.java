@@ -0,0 +1,87 @@
+package com.pavelf.loanexchange.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies and outcomes of the requests sent to one endpoint.
+ */
+class EndpointStats {
+
+    private final String endpoint;
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private int clientErrors;
+
+    private int serverErrors;
+
+    private int serializationFailures;
+
+    EndpointStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @param latencyNanos time from sending the request to reading the response.
+     * @param status HTTP status of the response.
+     */
+    synchronized void record(long latencyNanos, int status) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+
+        // concurrency failures, serialization failures among them, are translated to 409 Conflict
+        if (status == 409) {
+            serializationFailures++;
+        } else if (status >= 500) {
+            serverErrors++;
+        } else if (status >= 400) {
+            clientErrors++;
+        }
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    synchronized int getServerErrors() {
+        return serverErrors;
+    }
+
+    synchronized int getSerializationFailures() {
+        return serializationFailures;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the latency in milliseconds, or 0 if nothing was recorded.
+     */
+    synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(index, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    synchronized String format(long elapsedMillis) {
+        return String.format("%-28s %8d %10.1f %10.2f %10.2f %8d %8d %8d", endpoint, count,
+            count * 1000.0 / Math.max(elapsedMillis, 1), percentileMillis(50), percentileMillis(99),
+            clientErrors, serverErrors, serializationFailures);
+    }
+
+    static String header() {
+        return String.format("%-28s %8s %10s %10s %10s %8s %8s %8s", "endpoint", "requests", "req/s",
+            "p50 ms", "p99 ms", "4xx", "5xx", "409");
+    }
+}
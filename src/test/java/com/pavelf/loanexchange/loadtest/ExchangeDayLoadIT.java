@@ -0,0 +1,276 @@
+package com.pavelf.loanexchange.loadtest;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.repository.UserRepository;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.security.jwt.TokenProvider;
+import com.pavelf.loanexchange.service.BalanceLogService;
+import com.pavelf.loanexchange.service.DealService;
+import com.pavelf.loanexchange.service.LedgerService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test simulating a full exchange day: seeds creditors, debtors and deals, drives the REST API at a target
+ * request rate and then fires the three payment schedulers of {@link BalanceLogService}.
+ * <p>
+ * Disabled unless {@code loadtest.enabled=true}. Sizes are read from system properties:
+ * <pre>
+ * ./mvnw verify -Dit.test=ExchangeDayLoadIT -Dloadtest.enabled=true \
+ *     -Dloadtest.creditors=20 -Dloadtest.debtors=200 -Dloadtest.deals=500 \
+ *     -Dloadtest.rate=50 -Dloadtest.duration=60 -Dloadtest.threads=16
+ * </pre>
+ * It runs on the embedded H2 database of the test configuration. To measure serialization failures for real, point
+ * it to a local Postgres with {@code -Dspring.datasource.url=jdbc:postgresql://localhost:5432/loanExchangeBackend
+ * -Dspring.datasource.username=loanExchangeBackend -Dspring.jpa.database=POSTGRESQL
+ * -Dspring.jpa.database-platform=io.github.jhipster.domain.util.FixedPostgreSQL95Dialect}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@EnabledIfSystemProperty(named = "loadtest.enabled", matches = "true")
+public class ExchangeDayLoadIT {
+
+    private static final int CREDITORS = Integer.getInteger("loadtest.creditors", 20);
+
+    private static final int DEBTORS = Integer.getInteger("loadtest.debtors", 200);
+
+    private static final int DEALS = Integer.getInteger("loadtest.deals", 500);
+
+    private static final int RATE = Integer.getInteger("loadtest.rate", 50);
+
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 60);
+
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 16);
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000.00");
+
+    private final Logger log = LoggerFactory.getLogger(ExchangeDayLoadIT.class);
+
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    private final List<Deal> pendingDeals = new CopyOnWriteArrayList<>();
+
+    private final List<Actor> creditors = new ArrayList<>();
+
+    private final List<Actor> debtors = new ArrayList<>();
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private DealService dealService;
+
+    @Autowired
+    private BalanceLogService balanceLogService;
+
+    @Autowired
+    private TokenProvider tokenProvider;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void simulateExchangeDay() throws InterruptedException {
+        seed();
+
+        long start = System.nanoTime();
+        drive();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        StringBuilder report = new StringBuilder("\n").append(EndpointStats.header()).append('\n');
+        stats.values().stream().sorted(Comparator.comparing(EndpointStats::getEndpoint))
+            .forEach(endpoint -> report.append(endpoint.format(elapsedMillis)).append('\n'));
+        report.append(String.format("%d requests within %d ms, %.1f req/s overall, %d serialization failures, %d other"
+                + " server errors", totalRequests(), elapsedMillis, totalRequests() * 1000.0 / elapsedMillis,
+            stats.values().stream().mapToInt(EndpointStats::getSerializationFailures).sum(),
+            stats.values().stream().mapToInt(EndpointStats::getServerErrors).sum()));
+        log.info("Exchange day load: {}", report);
+
+        runScheduler("DAY", balanceLogService::chargePercentForEveryDayDeals);
+        runScheduler("MONTH", balanceLogService::chargePercentForEveryMonthDeals);
+        runScheduler("ONE_TIME", balanceLogService::chargePercentForSinglePaymentDeals);
+
+        assertThat(ledgerService.checkConsistency()).isEmpty();
+    }
+
+    private void seed() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < CREDITORS; i++) {
+            creditors.add(transactionTemplate.execute(status -> createActor(AuthoritiesConstants.CREDITOR)));
+        }
+        for (int i = 0; i < DEBTORS; i++) {
+            debtors.add(transactionTemplate.execute(status -> createActor(AuthoritiesConstants.DEBTOR)));
+        }
+
+        PaymentInterval[] intervals = PaymentInterval.values();
+        for (int i = 0; i < DEALS; i++) {
+            Actor creditor = creditors.get(i % CREDITORS);
+            SecurityContextHolder.getContext().setAuthentication(creditor.authentication);
+            Deal deal = dealService.createDealForCurrentUser(newDeal(intervals[i % intervals.length]));
+
+            // half of the deals are accepted, each debtor holding at most one of them
+            if (i % 2 == 0 && i / 2 < DEBTORS) {
+                SecurityContextHolder.getContext().setAuthentication(debtors.get(i / 2).authentication);
+                dealService.acceptDeal(deal);
+            } else {
+                pendingDeals.add(deal);
+            }
+        }
+        SecurityContextHolder.clearContext();
+        log.info("Seeded {} creditors, {} debtors and {} deals", CREDITORS, DEBTORS, DEALS);
+    }
+
+    private Actor createActor(String authority) {
+        User user = new User();
+        user.setLogin("load-" + RandomStringUtils.randomAlphanumeric(12).toLowerCase());
+        user.setPassword(RandomStringUtils.random(60));
+        user.setActivated(true);
+        user.setEmail(user.getLogin() + "@localhost");
+        user.setLangKey("en");
+        user = userRepository.save(user);
+        ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+            .amountChanged(OPENING_BALANCE).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+
+        Authentication authentication = new UsernamePasswordAuthenticationToken(user.getLogin(), "",
+            Arrays.asList(new SimpleGrantedAuthority(authority), new SimpleGrantedAuthority(AuthoritiesConstants.USER)));
+        return new Actor(authentication, tokenProvider.createToken(authentication, false));
+    }
+
+    /**
+     * Sends requests at the target rate for the configured duration, an open model: a slow response does not
+     * delay the next request.
+     */
+    private void drive() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(() -> workers.execute(this::sendRandomRequest), 0,
+            TimeUnit.SECONDS.toNanos(1) / RATE, TimeUnit.NANOSECONDS);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(DURATION_SECONDS));
+        ticker.shutdownNow();
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private void sendRandomRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Actor creditor = creditors.get(random.nextInt(creditors.size()));
+        Actor debtor = debtors.get(random.nextInt(debtors.size()));
+        Actor anyone = random.nextBoolean() ? creditor : debtor;
+        int dice = random.nextInt(100);
+
+        if (dice < 15) {
+            ResponseEntity<Deal> created = send("POST /api/deals", HttpMethod.POST, "/api/deals", creditor,
+                newDeal(PaymentInterval.values()[random.nextInt(PaymentInterval.values().length)]), Deal.class);
+            if (created.getStatusCode().is2xxSuccessful() && created.getBody() != null) {
+                pendingDeals.add(created.getBody());
+            }
+        } else if (dice < 25) {
+            if (!pendingDeals.isEmpty()) {
+                Deal deal = pendingDeals.get(random.nextInt(pendingDeals.size()));
+                send("PUT /api/deals", HttpMethod.PUT, "/api/deals", debtor, deal, Deal.class);
+            }
+        } else if (dice < 55) {
+            send("GET /api/deals", HttpMethod.GET, "/api/deals?page=0&size=20", anyone, null, String.class);
+        } else if (dice < 70) {
+            send("GET /api/balance-logs", HttpMethod.GET, "/api/balance-logs?page=0&size=20", anyone, null,
+                String.class);
+        } else if (dice < 85) {
+            send("GET /api/notifications", HttpMethod.GET, "/api/notifications?page=0&size=20", anyone, null,
+                String.class);
+        } else {
+            send("GET /api/account/stats", HttpMethod.GET, "/api/account/stats", anyone, null, String.class);
+        }
+    }
+
+    private <T> ResponseEntity<T> send(String endpoint, HttpMethod method, String url, Actor actor, Object body,
+                                       Class<T> responseType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(actor.token);
+        long start = System.nanoTime();
+        ResponseEntity<T> response = restTemplate.exchange(url, method, new HttpEntity<>(body, headers), responseType);
+        stats.computeIfAbsent(endpoint, EndpointStats::new)
+            .record(System.nanoTime() - start, response.getStatusCodeValue());
+        return response;
+    }
+
+    private void runScheduler(String interval, Runnable scheduler) {
+        long start = System.nanoTime();
+        scheduler.run();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Timer failedChunks = meterRegistry.find("loanexchange.interest.chunk").tags("run", interval, "outcome", "failure")
+            .timer();
+        log.info("{} payment run took {} ms, {} chunk attempts failed and were retried", interval, elapsedMillis,
+            failedChunks == null ? 0 : failedChunks.count());
+    }
+
+    private int totalRequests() {
+        return stats.values().stream().mapToInt(EndpointStats::getCount).sum();
+    }
+
+    private Deal newDeal(PaymentInterval paymentEvery) {
+        return new Deal().startBalance(new BigDecimal(100 + ThreadLocalRandom.current().nextInt(10000)))
+            .percent(new BigDecimal("0.05")).term(30).paymentEvery(paymentEvery);
+    }
+
+    private static class Actor {
+
+        private final Authentication authentication;
+        private final String token;
+
+        Actor(Authentication authentication, String token) {
+            this.authentication = authentication;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.pavelf.loanexchange.repository;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the {@code EXPLAIN} plans of the SQL behind the queries of the repositories and the specifications,
+ * so that none of them scans a whole table. Where an index of {@code 20190622090000_added_query_indexes.xml}
+ * is the only good one, the plan must use it.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class QueryPlanIT {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void assertThatBalanceLogQueriesUseIndexes() {
+        // findLastLogForUser, findLastLogForDeal
+        assertIndexed("SELECT b.* FROM balance_log b WHERE b.id = " +
+            "(SELECT MAX(bl.id) FROM balance_log bl WHERE bl.account_id = 1)");
+        assertIndexed("SELECT b.* FROM balance_log b WHERE b.id = " +
+            "(SELECT MAX(bl.id) FROM balance_log bl WHERE bl.deal_id = 1)");
+        // findAllForDeal, BalanceLogSpecification
+        assertIndexed("SELECT * FROM balance_log WHERE deal_id = 1");
+        assertIndexed("SELECT * FROM balance_log WHERE account_id = 1 AND jhi_date >= TIMESTAMP '2019-06-01 00:00:00' " +
+            "ORDER BY id DESC LIMIT 20");
+        // sums over the entries of an account
+        assertIndexed("SELECT SUM(amount_changed) FROM balance_log WHERE account_id = 1 AND jhi_type = 'LOAN_TAKEN'",
+            "IDX_BALANCE_LOG_ACCOUNT_ID_TYPE");
+        assertIndexed("SELECT SUM(amount_changed) FROM balance_log WHERE amount_changed > 0 AND account_id = 1");
+        // findByAccountIsCurrentUser
+        assertIndexed("SELECT b.* FROM balance_log b JOIN jhi_user u ON u.id = b.account_id WHERE u.login = 'user'");
+    }
+
+    @Test
+    public void assertThatDealQueriesUseIndexes() {
+        // countActiveDealsForRecipient
+        assertIndexed("SELECT COUNT(*) FROM deal WHERE recipient_id = 1 AND status = 'ACTIVE'",
+            "IDX_DEAL_RECIPIENT_ID_STATUS");
+        // isDealExistWithThisUserParticipating
+        assertIndexed("SELECT COUNT(*) FROM deal WHERE id = 1 AND (recipient_id = 1 OR emitter_id = 1)");
+        // findIdsWithStatusAndPaymentEveryAfter
+        assertIndexed("SELECT id FROM deal WHERE status = 'ACTIVE' AND payment_every = 'DAY' AND id > 1000 " +
+            "ORDER BY id LIMIT 500", "IDX_DEAL_STATUS_PAYMENT_EVERY_ID");
+        // findByEmitterIsCurrentUser, findByRecipientIsCurrentUser
+        assertIndexed("SELECT d.* FROM deal d JOIN jhi_user u ON u.id = d.emitter_id WHERE u.login = 'user'");
+        assertIndexed("SELECT d.* FROM deal d JOIN jhi_user u ON u.id = d.recipient_id WHERE u.login = 'user'");
+    }
+
+    @Test
+    public void assertThatDealSpecificationPredicatesUseIndexes() {
+        // a chunk of a payment run
+        assertIndexed("SELECT * FROM deal WHERE status = 'ACTIVE' AND payment_every = 'MONTH' " +
+            "AND end_date <= TIMESTAMP '2019-07-01 00:00:00' AND id >= 1000 AND id <= 1500 ORDER BY id",
+            "IDX_DEAL_STATUS_PAYMENT_EVERY_ID");
+        // deals of a creditor, of a debtor, pending deals offered to debtors
+        assertIndexed("SELECT * FROM deal WHERE emitter_id = 1 AND status = 'PENDING'", "IDX_DEAL_EMITTER_ID_STATUS");
+        assertIndexed("SELECT * FROM deal WHERE recipient_id = 1 AND status = 'ACTIVE'",
+            "IDX_DEAL_RECIPIENT_ID_STATUS");
+        assertIndexed("SELECT * FROM deal WHERE status = 'PENDING' AND term >= 10 AND start_balance >= 100 " +
+            "AND success_rate >= 50");
+        assertIndexed("SELECT * FROM deal WHERE status = 'ACTIVE' AND end_date >= TIMESTAMP '2019-06-01 00:00:00' " +
+            "AND end_date <= TIMESTAMP '2019-07-01 00:00:00'", "IDX_DEAL_STATUS_END_DATE");
+        // a deal as seen by a debtor; the OR alone needs a bitmap OR of two indexes, which only Postgres does
+        assertIndexed("SELECT * FROM deal WHERE (recipient_id = 1 OR status = 'PENDING') AND id = 1");
+    }
+
+    @Test
+    public void assertThatNotificationQueriesUseIndexes() {
+        // NotificationSpecification, findByRecipientIsCurrentUser
+        assertIndexed("SELECT * FROM notification WHERE recipient_id = 1 ORDER BY jhi_date DESC LIMIT 20");
+        assertIndexed("SELECT * FROM notification WHERE associated_deal_id = 1");
+        assertIndexed("SELECT n.* FROM notification n JOIN jhi_user u ON u.id = n.recipient_id WHERE u.login = 'user'");
+    }
+
+    @Test
+    public void assertThatAccountStatsQueriesUseIndexes() {
+        // findAllForAccount, the bulk accrual update of the buckets of the month
+        assertIndexed("SELECT * FROM account_stats WHERE account_id = 1 ORDER BY period, jhi_type");
+        assertIndexed("SELECT * FROM account_stats WHERE account_id = 1 AND jhi_type = 'DEAL_PAYMENT' " +
+            "AND period = DATE '2019-06-01'");
+    }
+
+    private void assertIndexed(String sql, String... indexes) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+        assertThat(plan).as(sql).doesNotContain("tableScan");
+        for (String index : indexes) {
+            assertThat(plan).as(sql).contains(index);
+        }
+    }
+}
@@ -82,6 +82,8 @@ public class DomainUserDetailsServiceIT {
         UserDetails userDetails = domainUserDetailsService.loadUserByUsername(USER_ONE_LOGIN);
         assertThat(userDetails).isNotNull();
         assertThat(userDetails.getUsername()).isEqualTo(USER_ONE_LOGIN);
+        assertThat(userDetails).isInstanceOf(UserPrincipal.class);
+        assertThat(((UserPrincipal) userDetails).getId()).isEqualTo(userOne.getId());
     }
 
     @Test
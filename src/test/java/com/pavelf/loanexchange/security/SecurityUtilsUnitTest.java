@@ -27,6 +27,18 @@ public class SecurityUtilsUnitTest {
         assertThat(login).contains("admin");
     }
 
+    @Test
+    public void testGetCurrentUserId() {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        UserPrincipal principal = new UserPrincipal(42L, "admin", "", new ArrayList<>());
+        securityContext.setAuthentication(new UsernamePasswordAuthenticationToken(principal, "token"));
+        SecurityContextHolder.setContext(securityContext);
+        assertThat(SecurityUtils.getCurrentUserId()).contains(42L);
+
+        securityContext.setAuthentication(new UsernamePasswordAuthenticationToken("admin", "admin"));
+        assertThat(SecurityUtils.getCurrentUserId()).isEmpty();
+    }
+
     @Test
     public void testgetCurrentUserJWT() {
         SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
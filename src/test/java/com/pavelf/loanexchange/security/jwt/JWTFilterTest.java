@@ -1,13 +1,18 @@
 package com.pavelf.loanexchange.security.jwt;
 
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.config.CacheConfiguration;
 import com.pavelf.loanexchange.security.AuthoritiesConstants;
 import io.github.jhipster.config.JHipsterProperties;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -24,6 +29,8 @@ public class JWTFilterTest {
 
     private TokenProvider tokenProvider;
 
+    private StreamTicketStore streamTicketStore;
+
     private JWTFilter jwtFilter;
 
     @BeforeEach
@@ -35,7 +42,13 @@ public class JWTFilterTest {
                 .decode("fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8")));
 
         ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", 60000);
-        jwtFilter = new JWTFilter(tokenProvider);
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        streamTicketStore = new StreamTicketStore(tokenProvider,
+            StreamTicketStoreTest.inMemoryRevocationStore(applicationProperties), new SimpleMeterRegistry(),
+            applicationProperties);
+        jwtFilter = new JWTFilter(new TokenAuthenticationCache(tokenProvider, new TokenDenyList(applicationProperties),
+            TokenAuthenticationCacheTest.cacheManager(CacheConfiguration.boundedConfiguration(10000, 600, 0)),
+            new SimpleMeterRegistry()), streamTicketStore);
         SecurityContextHolder.getContext().setAuthentication(null);
     }
 
@@ -58,6 +71,89 @@ public class JWTFilterTest {
         assertThat(SecurityContextHolder.getContext().getAuthentication().getCredentials().toString()).isEqualTo(jwt);
     }
 
+    @Test
+    public void testJWTFilterStreamTicket() throws Exception {
+        String ticket = streamTicketStore.issue(new UsernamePasswordAuthenticationToken(
+            "test-user",
+            "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        ));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", StreamTicketStore.STREAM_PATH);
+        request.addParameter(StreamTicketStore.TICKET_PARAMETER, ticket);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+        jwtFilter.doFilter(request, response, filterChain);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo("test-user");
+    }
+
+    @Test
+    public void testJWTFilterStreamTicketIsSingleUse() throws Exception {
+        String ticket = streamTicketStore.issue(new UsernamePasswordAuthenticationToken(
+            "test-user",
+            "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        ));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", StreamTicketStore.STREAM_PATH);
+        request.addParameter(StreamTicketStore.TICKET_PARAMETER, ticket);
+        jwtFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        SecurityContextHolder.getContext().setAuthentication(null);
+
+        jwtFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    public void testJWTFilterIgnoresStreamTicketOfOtherRequests() throws Exception {
+        String ticket = streamTicketStore.issue(new UsernamePasswordAuthenticationToken(
+            "test-user",
+            "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        ));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/test");
+        request.addParameter(StreamTicketStore.TICKET_PARAMETER, ticket);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+        jwtFilter.doFilter(request, response, filterChain);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    public void testJWTFilterRejectsStreamTicketAsToken() throws Exception {
+        String ticket = streamTicketStore.issue(new UsernamePasswordAuthenticationToken(
+            "test-user",
+            "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        ));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/test");
+        request.addHeader(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + ticket);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+        jwtFilter.doFilter(request, response, filterChain);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    public void testJWTFilterIgnoresTokenInTheUrl() throws Exception {
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+            "test-user",
+            "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        );
+        String jwt = tokenProvider.createToken(authentication, false);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", StreamTicketStore.STREAM_PATH);
+        request.addHeader(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+        request.addParameter("access_token", jwt);
+        request.addParameter(StreamTicketStore.TICKET_PARAMETER, jwt);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+        jwtFilter.doFilter(request, response, filterChain);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
     @Test
     public void testJWTFilterInvalidToken() throws Exception {
         String jwt = "wrong_jwt";
@@ -0,0 +1,110 @@
+package com.pavelf.loanexchange.security.jwt;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import io.github.jhipster.config.JHipsterProperties;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamTicketStoreTest {
+
+    private ApplicationProperties applicationProperties;
+
+    private TokenProvider tokenProvider;
+
+    private TokenRevocationStore tokenRevocationStore;
+
+    private Authentication authentication;
+
+    @BeforeEach
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        tokenProvider = new TokenProvider(new JHipsterProperties());
+        ReflectionTestUtils.setField(tokenProvider, "key",
+            Keys.hmacShaKeyFor(Decoders.BASE64
+                .decode("fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8")));
+        ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", 60000);
+        tokenRevocationStore = inMemoryRevocationStore(applicationProperties);
+        authentication = new UsernamePasswordAuthenticationToken("test-user", "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER)));
+    }
+
+    @Test
+    public void testTicketIsRedeemedOnce() {
+        StreamTicketStore store = newStore();
+        String ticket = store.issue(authentication);
+
+        assertThat(store.redeem(ticket)).hasValueSatisfying(redeemed -> {
+            assertThat(redeemed.getName()).isEqualTo("test-user");
+            assertThat(redeemed.getAuthorities()).containsExactlyElementsOf(authentication.getAuthorities());
+        });
+        assertThat(store.redeem(ticket)).isEmpty();
+        assertThat(store.redeem("unknown")).isEmpty();
+    }
+
+    @Test
+    public void testTicketIsRedeemedOnceAcrossNodes() {
+        String ticket = newStore().issue(authentication);
+
+        // another node, sharing the key and the deny-list only
+        assertThat(newStore().redeem(ticket)).isPresent();
+        assertThat(newStore().redeem(ticket)).isEmpty();
+    }
+
+    @Test
+    public void testTicketsAreUnique() {
+        StreamTicketStore store = newStore();
+
+        assertThat(store.issue(authentication)).isNotEqualTo(store.issue(authentication));
+    }
+
+    @Test
+    public void testExpiredTicketIsRejected() {
+        applicationProperties.getNotifications().getStream().setTicketTimeToLiveSeconds(-1);
+        StreamTicketStore store = newStore();
+
+        assertThat(store.redeem(store.issue(authentication))).isEmpty();
+    }
+
+    @Test
+    public void testTicketIsNotAToken() {
+        String ticket = newStore().issue(authentication);
+
+        assertThat(tokenProvider.validateToken(ticket)).isFalse();
+        assertThat(newStore().redeem(tokenProvider.createToken(authentication, false))).isEmpty();
+    }
+
+    private StreamTicketStore newStore() {
+        return new StreamTicketStore(tokenProvider, tokenRevocationStore, new SimpleMeterRegistry(),
+            applicationProperties);
+    }
+
+    /**
+     * A deny-list shared by the stores of a test in place of the {@code revoked_token} table.
+     */
+    static TokenRevocationStore inMemoryRevocationStore(ApplicationProperties applicationProperties) {
+        Set<String> revoked = ConcurrentHashMap.newKeySet();
+        return new TokenRevocationStore(null, new TokenDenyList(applicationProperties), null, applicationProperties) {
+
+            @Override
+            public boolean revoke(String tokenId, Instant expiresAt) {
+                return revoked.add(tokenId);
+            }
+        };
+    }
+}
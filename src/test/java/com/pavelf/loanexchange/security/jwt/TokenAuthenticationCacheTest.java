@@ -0,0 +1,166 @@
+package com.pavelf.loanexchange.security.jwt;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.config.CacheConfiguration;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import io.github.jhipster.config.JHipsterProperties;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.cache.CacheManager;
+import javax.cache.configuration.Configuration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenAuthenticationCacheTest {
+
+    private TokenProvider tokenProvider;
+
+    private MeterRegistry meterRegistry;
+
+    private ApplicationProperties applicationProperties;
+
+    private TokenDenyList tokenDenyList;
+
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    public void setup() {
+        tokenProvider = new TokenProvider(new JHipsterProperties());
+        ReflectionTestUtils.setField(tokenProvider, "key",
+            Keys.hmacShaKeyFor(Decoders.BASE64
+                .decode("fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8")));
+        ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", 60000);
+        meterRegistry = new SimpleMeterRegistry();
+        applicationProperties = new ApplicationProperties();
+        tokenDenyList = new TokenDenyList(applicationProperties);
+        cacheManager = cacheManager(CacheConfiguration.boundedConfiguration(10000, 600, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        cacheManager.close();
+    }
+
+    @Test
+    public void testTokenIsVerifiedOnFirstUseOnly() {
+        TokenAuthenticationCache cache = new TokenAuthenticationCache(tokenProvider, tokenDenyList, cacheManager,
+            meterRegistry);
+        String jwt = createToken("test-user");
+
+        Optional<Authentication> first = cache.getAuthentication(jwt);
+        Optional<Authentication> second = cache.getAuthentication(jwt);
+
+        assertThat(first).isPresent();
+        assertThat(first.get().getName()).isEqualTo("test-user");
+        assertThat(second.get()).isSameAs(first.get());
+        assertThat(meterRegistry.get("loanexchange.jwt.verify").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("loanexchange.jwt.cache").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("loanexchange.jwt.cache").tag("result", "miss").counter().count()).isEqualTo(1);
+        assertThat(size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidTokenIsNotKept() {
+        TokenAuthenticationCache cache = new TokenAuthenticationCache(tokenProvider, tokenDenyList, cacheManager,
+            meterRegistry);
+
+        assertThat(cache.getAuthentication("wrong_jwt")).isEmpty();
+        assertThat(cache.getAuthentication("wrong_jwt")).isEmpty();
+        assertThat(meterRegistry.get("loanexchange.jwt.verify").timer().count()).isEqualTo(2);
+        assertThat(size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testTokenIsNotKeptPastItsExpiry() {
+        ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", 2000);
+        TokenAuthenticationCache cache = new TokenAuthenticationCache(tokenProvider, tokenDenyList, cacheManager,
+            meterRegistry);
+        String jwt = createToken("test-user");
+
+        assertThat(cache.getAuthentication(jwt)).isPresent();
+        ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", 60000);
+        try {
+            Thread.sleep(2100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        assertThat(cache.getAuthentication(jwt)).isEmpty();
+    }
+
+    @Test
+    public void testCacheStaysWithinMaxEntries() {
+        cacheManager.close();
+        cacheManager = cacheManager(CacheConfiguration.boundedConfiguration(2, 600, 0));
+        TokenAuthenticationCache cache = new TokenAuthenticationCache(tokenProvider, tokenDenyList, cacheManager,
+            meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.getAuthentication(createToken("test-user-" + i))).isPresent();
+        }
+
+        assertThat(size()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void testDisabledCacheVerifiesEveryUse() {
+        cacheManager.close();
+        cacheManager = cacheManager(CacheConfiguration.storingNothing());
+        TokenAuthenticationCache cache = new TokenAuthenticationCache(tokenProvider, tokenDenyList, cacheManager,
+            meterRegistry);
+        String jwt = createToken("test-user");
+
+        assertThat(cache.getAuthentication(jwt)).isPresent();
+        assertThat(cache.getAuthentication(jwt)).isPresent();
+        assertThat(meterRegistry.get("loanexchange.jwt.verify").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRevokedTokenIsRejectedEvenWhenKept() {
+        TokenAuthenticationCache cache = new TokenAuthenticationCache(tokenProvider, tokenDenyList, cacheManager,
+            meterRegistry);
+        String jwt = createToken("test-user");
+        assertThat(cache.getAuthentication(jwt)).isPresent();
+
+        Claims claims = tokenProvider.parseToken(jwt).get();
+        tokenDenyList.revoke(claims.getId(), claims.getExpiration().getTime());
+
+        assertThat(cache.getAuthentication(jwt)).isEmpty();
+        assertThat(cache.getAuthentication(createToken("test-user"))).isPresent();
+    }
+
+    private long size() {
+        return StreamSupport.stream(cacheManager.getCache(TokenAuthenticationCache.TOKEN_AUTHENTICATIONS_CACHE)
+            .spliterator(), false).count();
+    }
+
+    /**
+     * A cache manager of its own, holding the region of the tokens only.
+     */
+    static CacheManager cacheManager(Configuration<Object, Object> configuration) {
+        CacheManager cacheManager = new EhcacheCachingProvider().getCacheManager();
+        cacheManager.createCache(TokenAuthenticationCache.TOKEN_AUTHENTICATIONS_CACHE, configuration);
+        return cacheManager;
+    }
+
+    private String createToken(String login) {
+        return tokenProvider.createToken(new UsernamePasswordAuthenticationToken(login, "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))), false);
+    }
+}
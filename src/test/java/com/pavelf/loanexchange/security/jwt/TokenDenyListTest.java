@@ -0,0 +1,47 @@
+package com.pavelf.loanexchange.security.jwt;
+
+import com.pavelf.loanexchange.config.ApplicationProperties;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenDenyListTest {
+
+    private TokenDenyList tokenDenyList;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getSecurity().getRevocation().setExpectedTokens(100);
+        tokenDenyList = new TokenDenyList(applicationProperties);
+    }
+
+    @Test
+    public void testOnlyRevokedTokensAreDenied() {
+        for (int i = 0; i < 1000; i++) {
+            tokenDenyList.revoke("revoked-" + i, Long.MAX_VALUE);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(tokenDenyList.isRevoked("revoked-" + i)).isTrue();
+            // the filter is overfull here, so the exact set alone keeps these tokens valid
+            assertThat(tokenDenyList.isRevoked(UUID.randomUUID().toString())).isFalse();
+        }
+    }
+
+    @Test
+    public void testPurgeDropsExpiredTokensOnly() {
+        tokenDenyList.revoke("expired", 1000);
+        tokenDenyList.revoke("valid", 3000);
+
+        assertThat(tokenDenyList.purgeExpired(2000)).isEqualTo(1);
+
+        assertThat(tokenDenyList.isRevoked("expired")).isFalse();
+        assertThat(tokenDenyList.isRevoked("valid")).isTrue();
+        assertThat(tokenDenyList.size()).isEqualTo(1);
+    }
+}
@@ -1,6 +1,7 @@
 package com.pavelf.loanexchange.security.jwt;
 
 import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.security.UserPrincipal;
 
 import java.security.Key;
 import java.util.*;
@@ -14,6 +15,7 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import io.github.jhipster.config.JHipsterProperties;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
@@ -83,6 +85,42 @@ public class TokenProviderTest {
         assertThat(isTokenValid).isEqualTo(false);
     }
 
+    @Test
+    public void testParseTokenReturnsClaimsOfValidTokenOnly() {
+        String token = tokenProvider.createToken(createAuthentication(), false);
+
+        assertThat(tokenProvider.parseToken(token).map(Claims::getSubject)).contains("anonymous");
+        assertThat(tokenProvider.parseToken(token.substring(1))).isEmpty();
+        assertThat(tokenProvider.parseToken(createTokenWithDifferentSignature())).isEmpty();
+    }
+
+    @Test
+    public void testUserIdIsCarriedByTheToken() {
+        Collection<GrantedAuthority> authorities = Collections.singletonList(
+            new SimpleGrantedAuthority(AuthoritiesConstants.USER));
+        UserPrincipal principal = new UserPrincipal(42L, "user", "password", authorities);
+        String token = tokenProvider.createToken(
+            new UsernamePasswordAuthenticationToken(principal, "password", authorities), false);
+
+        Authentication authentication = tokenProvider.getAuthentication(token);
+
+        assertThat(authentication.getPrincipal()).isInstanceOf(UserPrincipal.class);
+        assertThat(((UserPrincipal) authentication.getPrincipal()).getId()).isEqualTo(42L);
+        assertThat(authentication.getName()).isEqualTo("user");
+        assertThat(authentication.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+            .containsExactly(AuthoritiesConstants.USER);
+    }
+
+    @Test
+    public void testTokenWithoutUserIdIsStillAuthenticated() {
+        String token = tokenProvider.createToken(createAuthentication(), false);
+
+        Authentication authentication = tokenProvider.getAuthentication(token);
+
+        assertThat(authentication.getName()).isEqualTo("anonymous");
+        assertThat(((UserPrincipal) authentication.getPrincipal()).getId()).isNull();
+    }
+
     private Authentication createAuthentication() {
         Collection<GrantedAuthority> authorities = new ArrayList<>();
         authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.ANONYMOUS));
@@ -0,0 +1,104 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.service.BalanceLogAnalyticsService.Interval;
+import com.pavelf.loanexchange.service.dto.BalanceFlowDTO;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link BalanceLogAnalyticsService}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+@Transactional
+public class BalanceLogAnalyticsServiceIT {
+
+    private static final LocalDate MONDAY = LocalDate.of(2019, 6, 3);
+
+    @Autowired
+    private BalanceLogAnalyticsService balanceLogAnalyticsService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private EntityManager em;
+
+    private User creditor;
+
+    private User debtor;
+
+    @BeforeEach
+    public void init() {
+        creditor = UserResourceIT.createEntity(em);
+        em.persist(creditor);
+        debtor = UserResourceIT.createEntity(em);
+        em.persist(debtor);
+
+        log(creditor, MONDAY, BalanceLogEvent.LOAN_TAKEN, "1000.00");
+        log(debtor, MONDAY.plusDays(1), BalanceLogEvent.LOAN_TAKEN, "50.00");
+        log(debtor, MONDAY.plusDays(1), BalanceLogEvent.DEAL_PAYMENT, "-10.00");
+        log(creditor, MONDAY.plusDays(1), BalanceLogEvent.DEAL_PAYMENT, "10.00");
+        log(debtor, MONDAY.plusDays(7), BalanceLogEvent.DEAL_PAYMENT, "-10.00");
+        log(creditor, MONDAY.plusDays(7), BalanceLogEvent.DEAL_PAYMENT, "10.00");
+        em.flush();
+    }
+
+    @Test
+    public void assertThatAccountFlowsAreGroupedByInterval() {
+        LocalDate to = MONDAY.plusDays(30);
+
+        assertThat(format(balanceLogAnalyticsService.getAccountFlows(debtor.getId(), Interval.DAY, MONDAY, to)))
+            .containsExactly("2019-06-04 DEAL_PAYMENT -10.00 1", "2019-06-04 LOAN_TAKEN 50.00 1",
+                "2019-06-10 DEAL_PAYMENT -10.00 1");
+        assertThat(format(balanceLogAnalyticsService.getAccountFlows(debtor.getId(), Interval.WEEK, MONDAY, to)))
+            .containsExactly("2019-06-03 DEAL_PAYMENT -10.00 1", "2019-06-03 LOAN_TAKEN 50.00 1",
+                "2019-06-10 DEAL_PAYMENT -10.00 1");
+        assertThat(format(balanceLogAnalyticsService.getAccountFlows(debtor.getId(), Interval.MONTH, MONDAY, to)))
+            .containsExactly("2019-06-03 DEAL_PAYMENT -20.00 2", "2019-06-03 LOAN_TAKEN 50.00 1");
+    }
+
+    @Test
+    public void assertThatPlatformFlowsAreTheSameBeforeAndAfterRollUp() {
+        LocalDate to = LocalDate.now(ZoneOffset.UTC);
+        List<String> expected = format(balanceLogAnalyticsService.getPlatformFlows(Interval.WEEK, MONDAY, to));
+
+        assertThat(balanceLogAnalyticsService.rollUpPlatformBuckets()).isGreaterThanOrEqualTo(4);
+        em.flush();
+        em.clear();
+
+        assertThat(expected).startsWith("2019-06-03 DEAL_PAYMENT 0.00 2", "2019-06-03 LOAN_TAKEN 1050.00 2",
+            "2019-06-10 DEAL_PAYMENT 0.00 2");
+        assertThat(format(balanceLogAnalyticsService.getPlatformFlows(Interval.WEEK, MONDAY, to)))
+            .isEqualTo(expected);
+    }
+
+    private void log(User account, LocalDate day, BalanceLogEvent type, String amount) {
+        ledgerService.append(new BalanceLog().date(day.atTime(12, 0).toInstant(ZoneOffset.UTC))
+            .oldValue(BigDecimal.ZERO).amountChanged(new BigDecimal(amount)).type(type).account(account));
+    }
+
+    private List<String> format(List<BalanceFlowDTO> flows) {
+        return flows.stream()
+            .map(flow -> flow.getPeriod() + " " + flow.getType() + " " + flow.getNet().setScale(2).toPlainString() +
+                " " + flow.getEntries())
+            .collect(Collectors.toList());
+    }
+}
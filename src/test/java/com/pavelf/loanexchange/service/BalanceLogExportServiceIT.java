@@ -0,0 +1,117 @@
+package com.pavelf.loanexchange.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.service.BalanceLogExportService.Format;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+import com.pavelf.loanexchange.web.rest.specifications.BalanceLogSpecification;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link BalanceLogExportService}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+@Transactional
+public class BalanceLogExportServiceIT {
+
+    private static final String CSV_HEADER = "id,date,type,oldValue,amountChanged,accountId,dealId";
+
+    private static final Instant DATE = Instant.parse("2019-06-01T10:00:00Z");
+
+    @Autowired
+    private BalanceLogExportService balanceLogExportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManager em;
+
+    private User account;
+
+    private BalanceLog first;
+
+    private BalanceLog second;
+
+    @BeforeEach
+    public void init() {
+        account = UserResourceIT.createEntity(em);
+        em.persist(account);
+        first = new BalanceLog().date(DATE).oldValue(BigDecimal.ZERO).amountChanged(new BigDecimal("100.50"))
+            .type(BalanceLogEvent.LOAN_TAKEN).account(account);
+        em.persist(first);
+        second = new BalanceLog().date(DATE.plusSeconds(60)).oldValue(new BigDecimal("100.50"))
+            .amountChanged(new BigDecimal("-20.25")).type(BalanceLogEvent.DEAL_PAYMENT).account(account);
+        em.persist(second);
+        em.flush();
+    }
+
+    @Test
+    public void assertThatCsvExportContainsMatchingEntriesInOrder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = balanceLogExportService.export(forAccount(), Format.CSV, out);
+
+        assertThat(written).isEqualTo(2);
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(lines[0]).isEqualTo(CSV_HEADER);
+        assertThat(lines[1].split(",", -1)).containsExactly(first.getId().toString(), DATE.toString(),
+            "LOAN_TAKEN", "0.00", "100.50", account.getId().toString(), "");
+        assertThat(lines[2].split(",", -1)).containsExactly(second.getId().toString(),
+            DATE.plusSeconds(60).toString(), "DEAL_PAYMENT", "100.50", "-20.25", account.getId().toString(), "");
+    }
+
+    @Test
+    public void assertThatNdjsonExportWritesOneObjectPerLine() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = balanceLogExportService.export(forAccount(), Format.NDJSON, out);
+
+        assertThat(written).isEqualTo(2);
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertThat(lines).hasSize(2);
+        JsonNode row = objectMapper.readTree(lines[1]);
+        assertThat(row.get("id").asLong()).isEqualTo(second.getId());
+        assertThat(row.get("date").asText()).isEqualTo(DATE.plusSeconds(60).toString());
+        assertThat(row.get("type").asText()).isEqualTo("DEAL_PAYMENT");
+        assertThat(row.get("amountChanged").decimalValue()).isEqualByComparingTo("-20.25");
+        assertThat(row.get("accountId").asLong()).isEqualTo(account.getId());
+        assertThat(row.get("dealId").isNull()).isTrue();
+    }
+
+    @Test
+    public void assertThatEmptyExportIsOnlyTheHeader() throws Exception {
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+
+        balanceLogExportService.exportNothing(Format.CSV, csv);
+        balanceLogExportService.exportNothing(Format.NDJSON, ndjson);
+
+        assertThat(csv.toString(StandardCharsets.UTF_8.name())).isEqualTo(CSV_HEADER + "\n");
+        assertThat(ndjson.size()).isZero();
+    }
+
+    private BalanceLogSpecification forAccount() {
+        BalanceLogSpecification specification = new BalanceLogSpecification();
+        specification.setForUser(account.getId());
+        return specification;
+    }
+}
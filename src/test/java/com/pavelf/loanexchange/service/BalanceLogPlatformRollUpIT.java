@@ -0,0 +1,140 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.service.BalanceLogAnalyticsService.Interval;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link BalanceLogAnalyticsService#rollUpPlatformBuckets()} run by several nodes at once,
+ * without a test transaction so the rollups see each other's buckets once committed.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class BalanceLogPlatformRollUpIT {
+
+    private static final int NODES = 4;
+
+    private static final LocalDate MONDAY = LocalDate.of(2019, 6, 3);
+
+    @Autowired
+    private BalanceLogAnalyticsService balanceLogAnalyticsService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager em;
+
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    public void init() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            User creditor = user();
+            User debtor = user();
+            log(creditor, MONDAY, BalanceLogEvent.LOAN_TAKEN, "1000.00");
+            log(debtor, MONDAY.plusDays(1), BalanceLogEvent.DEAL_PAYMENT, "-10.00");
+            log(creditor, MONDAY.plusDays(1), BalanceLogEvent.DEAL_PAYMENT, "10.00");
+            return null;
+        });
+    }
+
+    @AfterEach
+    public void cleanup() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            // platform-wide buckets are derived, the next rollup writes them again
+            jdbcTemplate.update("DELETE FROM balance_log_bucket WHERE account_id IS NULL");
+            delete("DELETE FROM balance_log WHERE account_id IN (:users)");
+            delete("DELETE FROM account_balance WHERE account_id IN (:users)");
+            delete("DELETE FROM account_stats WHERE account_id IN (:users)");
+            delete("DELETE FROM balance_log_bucket WHERE account_id IN (:users)");
+            delete("DELETE FROM jhi_user WHERE id IN (:users)");
+            return null;
+        });
+        userIds.clear();
+    }
+
+    @Test
+    public void assertThatConcurrentRollUpsWriteEachBucketOnce() throws Exception {
+        LocalDate to = LocalDate.now(ZoneOffset.UTC);
+        List<String> expected = flows(to);
+
+        ExecutorService executor = Executors.newFixedThreadPool(NODES);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> rollUps = new ArrayList<>();
+            for (int i = 0; i < NODES; i++) {
+                rollUps.add(executor.submit(() -> {
+                    start.await();
+                    return balanceLogAnalyticsService.rollUpPlatformBuckets();
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> rollUp : rollUps) {
+                assertThat(rollUp.get()).isPositive();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(jdbcTemplate.queryForList("SELECT jhi_type, period FROM balance_log_bucket " +
+            "WHERE account_id IS NULL GROUP BY jhi_type, period HAVING COUNT(*) > 1")).isEmpty();
+        assertThat(flows(to)).isEqualTo(expected);
+    }
+
+    private List<String> flows(LocalDate to) {
+        return balanceLogAnalyticsService.getPlatformFlows(Interval.DAY, MONDAY, to).stream()
+            .map(flow -> flow.getPeriod() + " " + flow.getType() + " " + flow.getNet().setScale(2).toPlainString() +
+                " " + flow.getEntries())
+            .collect(Collectors.toList());
+    }
+
+    private User user() {
+        User user = UserResourceIT.createEntity(em);
+        em.persist(user);
+        userIds.add(user.getId());
+        return user;
+    }
+
+    private void log(User account, LocalDate day, BalanceLogEvent type, String amount) {
+        ledgerService.append(new BalanceLog().date(day.atTime(12, 0).toInstant(ZoneOffset.UTC))
+            .oldValue(BigDecimal.ZERO).amountChanged(new BigDecimal(amount)).type(type).account(account));
+    }
+
+    private void delete(String sql) {
+        if (!userIds.isEmpty()) {
+            em.createNativeQuery(sql).setParameter("users", userIds).executeUpdate();
+        }
+    }
+}
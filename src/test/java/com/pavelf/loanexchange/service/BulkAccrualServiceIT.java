@@ -0,0 +1,285 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.config.ApplicationProperties.Payments.AccrualMode;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+import com.pavelf.loanexchange.repository.BalanceLogRepository;
+import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.repository.NotificationRepository;
+import com.pavelf.loanexchange.repository.PaymentRunRepository;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link BulkAccrualService}, comparing it with the entity path of {@link BalanceLogService}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+@Transactional
+public class BulkAccrualServiceIT {
+
+    @Autowired
+    private BalanceLogService balanceLogService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private BalanceLogRepository balanceLogRepository;
+
+    @Autowired
+    private DealRepository dealRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private PaymentRunRepository paymentRunRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    private PaymentRun run;
+
+    @BeforeEach
+    public void init() {
+        run = paymentRunRepository.saveAndFlush(new PaymentRun().paymentEvery(PaymentInterval.DAY)
+            .period(LocalDate.of(2019, 6, 20)).status(PaymentRunStatus.RUNNING).startedAt(Instant.now())
+            .heartbeatAt(Instant.now()));
+    }
+
+    @Test
+    public void assertThatBulkAccrualWritesTheSameLedgerAsEntityPath() {
+        Cohort entityCohort = createCohort();
+        Cohort bulkCohort = createCohort();
+
+        assertThat(balanceLogService.processChunk(run, entityCohort.chunk(), AccrualMode.ENTITY)).isEqualTo(5);
+        assertThat(balanceLogService.processChunk(run, bulkCohort.chunk(), AccrualMode.BULK)).isEqualTo(5);
+        em.flush();
+        em.clear();
+
+        assertThat(bulkCohort.ledger()).hasSize(20).isEqualTo(entityCohort.ledger());
+        assertThat(bulkCohort.balances()).isEqualTo(entityCohort.balances());
+        assertThat(bulkCohort.stats()).isEqualTo(entityCohort.stats()).isEqualTo(bulkCohort.statsByLedger());
+        // the entity path writes its notifications after commit, see NotificationWriterIT
+        assertThat(bulkCohort.statuses()).isEqualTo(entityCohort.statuses());
+        assertThat(bulkCohort.outcome()).containsExactly("ACTIVE 0", "ACTIVE 0", "SUCCESS 2", "ACTIVE 0", "ACTIVE 0");
+        assertThat(ledgerService.checkConsistency()).isEmpty();
+    }
+
+    @Test
+    public void assertThatBulkAccrualSkipsChargedDeals() {
+        Cohort cohort = createCohort();
+
+        assertThat(balanceLogService.processChunk(run, cohort.chunk(), AccrualMode.BULK)).isEqualTo(5);
+        assertThat(balanceLogService.processChunk(run, cohort.chunk(), AccrualMode.BULK)).isEqualTo(0);
+        em.flush();
+        em.clear();
+
+        assertThat(cohort.ledger()).hasSize(20);
+    }
+
+    @Test
+    public void assertThatBulkAccrualChainsAccountsLendingAndBorrowing() {
+        Cohort entityCohort = createCrossedCohort();
+        Cohort bulkCohort = createCrossedCohort();
+
+        assertThat(balanceLogService.processChunk(run, entityCohort.chunk(), AccrualMode.ENTITY)).isEqualTo(3);
+        assertThat(balanceLogService.processChunk(run, bulkCohort.chunk(), AccrualMode.BULK)).isEqualTo(3);
+        em.flush();
+        em.clear();
+
+        assertThat(bulkCohort.ledger()).hasSize(12).isEqualTo(entityCohort.ledger());
+        assertThat(bulkCohort.balances()).isEqualTo(entityCohort.balances());
+        assertThat(ledgerService.checkConsistency()).isEmpty();
+    }
+
+    /**
+     * Two creditors and four debtors: one creditor paid by three deals, a deal which is closed by the run,
+     * and a division which ends in a tie at the fifth digit. A fifth deal is between two accounts nothing was logged
+     * for yet, which have no balance row.
+     */
+    private Cohort createCohort() {
+        Cohort cohort = new Cohort();
+        User creditor = cohort.user("500.00");
+        User otherCreditor = cohort.user("500.00");
+        cohort.deal(creditor, cohort.user("1000.00"), "1000.00", "0.03", 7, "1000.00");
+        cohort.deal(creditor, cohort.user("10.00"), "333.33", "0.15", 4, "333.33");
+        cohort.deal(otherCreditor, cohort.user("200.00"), "100.00", "0.00", 5, "0.00");
+        cohort.deal(creditor, cohort.user("0.00"), "100.01", "0.00", 8, "100.01");
+        cohort.deal(cohort.user(null), cohort.user(null), "50.00", "0.10", 5, "50.00");
+        em.flush();
+        return cohort;
+    }
+
+    /**
+     * Three accounts each lending on one deal and borrowing on another, in an order which has every account pay
+     * before it is paid on some deals and after on others.
+     */
+    private Cohort createCrossedCohort() {
+        Cohort cohort = new Cohort();
+        User first = cohort.user("300.00");
+        User second = cohort.user("200.00");
+        User third = cohort.user("100.00");
+        cohort.deal(first, second, "100.00", "0.02", 4, "100.00");
+        cohort.deal(third, first, "50.00", "0.10", 5, "50.00");
+        cohort.deal(second, third, "70.00", "0.05", 7, "70.00");
+        em.flush();
+        return cohort;
+    }
+
+    private class Cohort {
+
+        private final List<User> users = new ArrayList<>();
+        private final List<Deal> deals = new ArrayList<>();
+
+        /**
+         * @param balance the balance logged for the account, {@code null} for none.
+         */
+        private User user(String balance) {
+            User user = UserResourceIT.createEntity(em);
+            em.persist(user);
+            if (balance != null) {
+                ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+                    .amountChanged(new BigDecimal(balance)).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+            }
+            users.add(user);
+            return user;
+        }
+
+        private void deal(User creditor, User debtor, String startBalance, String percent, int term, String balance) {
+            Deal deal = DealResourceIT.createEntity(em).startBalance(new BigDecimal(startBalance))
+                .percent(new BigDecimal(percent)).term(term).paymentEvery(PaymentInterval.DAY)
+                .status(DealStatus.ACTIVE).emitter(creditor).recipient(debtor);
+            em.persist(deal);
+            ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+                .amountChanged(new BigDecimal(balance)).type(BalanceLogEvent.NEW_DEAL_OPEN).deal(deal));
+            deals.add(deal);
+        }
+
+        private DealSpecification chunk() {
+            DealSpecification chunk = new DealSpecification();
+            chunk.setWithStatus(DealStatus.ACTIVE);
+            chunk.setPaymentEvery(PaymentInterval.DAY);
+            chunk.setIdFrom(deals.get(0).getId());
+            chunk.setIdTo(deals.get(deals.size() - 1).getId());
+            return chunk;
+        }
+
+        /**
+         * Charged rows in ledger order, with accounts and deals replaced by their position in the cohort.
+         */
+        private List<String> ledger() {
+            return balanceLogRepository.findAll().stream()
+                .filter(entry -> entry.getType() == BalanceLogEvent.PERCENT_CHARGE
+                    || entry.getType() == BalanceLogEvent.DEAL_PAYMENT)
+                .filter(entry -> owner(entry) != null)
+                .sorted((a, b) -> a.getId().compareTo(b.getId()))
+                .map(entry -> owner(entry) + " " + entry.getType() + " " + entry.getOldValue().toPlainString() + " "
+                    + entry.getAmountChanged().toPlainString())
+                .collect(Collectors.groupingBy(row -> row.substring(0, row.indexOf(' ')), Collectors.toList()))
+                .entrySet().stream().sorted((a, b) -> a.getKey().compareTo(b.getKey()))
+                .flatMap(owner -> owner.getValue().stream())
+                .collect(Collectors.toList());
+        }
+
+        private List<String> balances() {
+            List<String> balances = new ArrayList<>();
+            users.forEach(user -> balances.add(ledgerService.getAccountBalance(user).get().toPlainString()));
+            deals.forEach(deal -> balances.add(ledgerService.getDealBalance(deal).get().toPlainString()));
+            return balances;
+        }
+
+        /**
+         * Incoming and loan payment totals of every account by {@link BalanceLogService#getAccountStats}.
+         */
+        private List<String> stats() {
+            return users.stream()
+                .map(user -> balanceLogService.getAccountStats(user.getId()))
+                .map(stats -> format(stats.getAllTimeIncoming()) + " " + format(stats.getAllTimePaymentForLoan()) +
+                    " " + format(stats.getTotalsByType().get(BalanceLogEvent.DEAL_PAYMENT)))
+                .collect(Collectors.toList());
+        }
+
+        /**
+         * The same totals summed over the ledger.
+         */
+        private List<String> statsByLedger() {
+            List<BalanceLog> ledger = balanceLogRepository.findAll();
+            return users.stream()
+                .map(user -> {
+                    BigDecimal incoming = BigDecimal.ZERO;
+                    BigDecimal payments = BigDecimal.ZERO;
+                    for (BalanceLog entry : ledger) {
+                        if (entry.getAccount() != null && user.getId().equals(entry.getAccount().getId())) {
+                            if (entry.getAmountChanged().signum() > 0) {
+                                incoming = incoming.add(entry.getAmountChanged());
+                            }
+                            if (entry.getType() == BalanceLogEvent.DEAL_PAYMENT) {
+                                payments = payments.add(entry.getAmountChanged());
+                            }
+                        }
+                    }
+                    return format(incoming) + " " + format(payments) + " " + format(payments);
+                })
+                .collect(Collectors.toList());
+        }
+
+        private String format(BigDecimal amount) {
+            return amount.setScale(2).toPlainString();
+        }
+
+        private List<DealStatus> statuses() {
+            return deals.stream()
+                .map(deal -> dealRepository.findById(deal.getId()).get().getStatus())
+                .collect(Collectors.toList());
+        }
+
+        private List<String> outcome() {
+            return deals.stream()
+                .map(deal -> dealRepository.findById(deal.getId()).get().getStatus() + " " +
+                    notificationRepository.findAll().stream()
+                        .filter(notification -> notification.getType() == BalanceLogEvent.DEAL_CLOSED
+                            && deal.getId().equals(notification.getAssociatedDealId()))
+                        .count())
+                .collect(Collectors.toList());
+        }
+
+        private String owner(BalanceLog entry) {
+            for (int i = 0; i < users.size(); i++) {
+                if (entry.getAccount() != null && users.get(i).getId().equals(entry.getAccount().getId())) {
+                    return "account" + i;
+                }
+            }
+            for (int i = 0; i < deals.size(); i++) {
+                if (entry.getDeal() != null && deals.get(i).getId().equals(entry.getDeal().getId())) {
+                    return "deal" + i;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.config.ApplicationProperties.Deals.AcceptanceLocking;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+import com.pavelf.loanexchange.web.rest.errors.BadRequestAlertException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link DealService#acceptDeal} with the pessimistic acceptance locking, racing acceptors
+ * on separate threads against committed data.
+ * <p>
+ * The locking mode is switched on the service of the shared test context rather than by a context of its own,
+ * since every context recreates the regions of the one JCache {@code CacheManager} of the JVM.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class DealAcceptanceLockingIT {
+
+    private static final int ACCEPTORS = 8;
+
+    @Autowired
+    private DealService dealService;
+
+    @Autowired
+    private DealRepository dealRepository;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager em;
+
+    private final List<Long> userIds = new ArrayList<>();
+
+    private final List<Long> dealIds = new ArrayList<>();
+
+    @BeforeEach
+    public void lockPessimistically() {
+        ReflectionTestUtils.setField(AopTestUtils.getTargetObject(dealService), "acceptanceLocking",
+            AcceptanceLocking.PESSIMISTIC);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.setField(AopTestUtils.getTargetObject(dealService), "acceptanceLocking",
+            AcceptanceLocking.SERIALIZABLE);
+        new TransactionTemplate(transactionManager).execute(status -> {
+            delete("DELETE FROM notification WHERE associated_deal_id IN (:deals)", "deals", dealIds);
+            delete("DELETE FROM balance_log WHERE account_id IN (:users)", "users", userIds);
+            delete("DELETE FROM account_balance WHERE account_id IN (:users)", "users", userIds);
+            delete("DELETE FROM account_stats WHERE account_id IN (:users)", "users", userIds);
+            delete("DELETE FROM balance_log_bucket WHERE account_id IN (:users)", "users", userIds);
+            delete("DELETE FROM deal WHERE id IN (:deals)", "deals", dealIds);
+            delete("DELETE FROM jhi_user WHERE id IN (:users)", "users", userIds);
+            return null;
+        });
+        userIds.clear();
+        dealIds.clear();
+    }
+
+    @Test
+    public void assertThatOnlyOneDebtorTakesTheDeal() throws Exception {
+        User creditor = createUser(true);
+        Deal deal = createDeal(creditor);
+        List<User> debtors = new ArrayList<>();
+        for (int i = 0; i < ACCEPTORS; i++) {
+            debtors.add(createUser(true));
+        }
+
+        List<String> outcomes = race(debtors, Collections.nCopies(ACCEPTORS, deal));
+
+        assertThat(outcomes).containsOnlyOnce("accepted");
+        assertThat(outcomes).filteredOn(outcome -> !outcome.equals("accepted")).hasSize(ACCEPTORS - 1)
+            .containsOnly("dealactive");
+        Deal accepted = dealRepository.findById(deal.getId()).get();
+        assertThat(accepted.getStatus()).isEqualTo(DealStatus.ACTIVE);
+        assertThat(userIds).contains(accepted.getRecipient().getId());
+        assertThat(ledgerService.checkConsistency()).isEmpty();
+    }
+
+    @Test
+    public void assertThatDebtorTakesOnlyOneDeal() throws Exception {
+        User creditor = createUser(true);
+        // without any ledger row the debtor has no balance row, so the lock falls back to the user row
+        User debtor = createUser(false);
+        List<Deal> deals = new ArrayList<>();
+        for (int i = 0; i < ACCEPTORS; i++) {
+            deals.add(createDeal(creditor));
+        }
+
+        List<String> outcomes = race(Collections.nCopies(ACCEPTORS, debtor), deals);
+
+        assertThat(outcomes).containsOnlyOnce("accepted");
+        assertThat(outcomes).filteredOn(outcome -> !outcome.equals("accepted")).hasSize(ACCEPTORS - 1)
+            .containsOnly("doubledeal");
+        assertThat(dealRepository.countActiveDealsForRecipient(debtor)).isEqualTo(1);
+        assertThat(ledgerService.checkConsistency()).isEmpty();
+    }
+
+    /**
+     * Accepts the i-th deal as the i-th debtor, all at once.
+     * @return "accepted" or the error key of the rejection, for every acceptor.
+     */
+    private List<String> race(List<User> debtors, List<Deal> deals) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(ACCEPTORS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < ACCEPTORS; i++) {
+                User debtor = debtors.get(i);
+                Deal deal = new Deal();
+                deal.setId(deals.get(i).getId());
+                futures.add(executor.submit(() -> {
+                    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                        debtor.getLogin(), "", Collections.singletonList(
+                        new SimpleGrantedAuthority(AuthoritiesConstants.DEBTOR))));
+                    try {
+                        start.await();
+                        dealService.acceptDeal(deal);
+                        return "accepted";
+                    } catch (BadRequestAlertException e) {
+                        return e.getErrorKey();
+                    } finally {
+                        SecurityContextHolder.clearContext();
+                    }
+                }));
+            }
+            start.countDown();
+
+            List<String> outcomes = new ArrayList<>();
+            for (Future<String> future : futures) {
+                outcomes.add(future.get());
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private User createUser(boolean withBalance) {
+        User created = new TransactionTemplate(transactionManager).execute(status -> {
+            User user = UserResourceIT.createEntity(em);
+            em.persist(user);
+            if (withBalance) {
+                ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+                    .amountChanged(new BigDecimal("1000.00")).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+            }
+            return user;
+        });
+        userIds.add(created.getId());
+        return created;
+    }
+
+    private Deal createDeal(User creditor) {
+        Deal created = new TransactionTemplate(transactionManager).execute(status -> {
+            Deal deal = DealResourceIT.createEntity(em).term(10).emitter(creditor);
+            em.persist(deal);
+            return deal;
+        });
+        dealIds.add(created.getId());
+        return created;
+    }
+
+    private void delete(String sql, String parameter, List<Long> ids) {
+        if (!ids.isEmpty()) {
+            em.createNativeQuery(sql).setParameter(parameter, ids).executeUpdate();
+        }
+    }
+}
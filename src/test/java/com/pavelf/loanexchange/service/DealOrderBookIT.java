@@ -0,0 +1,132 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link DealOrderBook}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class DealOrderBookIT {
+
+    /**
+     * Start balance no other deal of the test database reaches, to read back only the deals of a test.
+     */
+    private static final int START_BALANCE = 987654;
+
+    @Autowired
+    private DealOrderBook dealOrderBook;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManager em;
+
+    @AfterTransaction
+    public void dropRolledBackDeals() {
+        dealOrderBook.rebuild();
+    }
+
+    @Test
+    @Transactional
+    public void assertThatPendingDealsAreFilteredAndSortedFromTheBook() {
+        Deal low = persist(PaymentInterval.DAY, 40, 10, DealStatus.PENDING);
+        Deal high = persist(PaymentInterval.DAY, 90, 30, DealStatus.PENDING);
+        Deal monthly = persist(PaymentInterval.MONTH, 70, 60, DealStatus.PENDING);
+        persist(PaymentInterval.DAY, 95, 30, DealStatus.ACTIVE);
+        em.flush();
+        dealOrderBook.rebuild();
+
+        DealSpecification params = pending();
+        Sort byRate = Sort.by(Sort.Direction.DESC, "successRate");
+        assertThat(dealOrderBook.canServe(params, byRate)).isTrue();
+        assertThat(ids(dealOrderBook.findAll(params, PageRequest.of(0, 10, byRate))))
+            .containsExactly(high.getId(), monthly.getId(), low.getId());
+
+        params.setSuccessRate(50);
+        params.setPaymentEvery(PaymentInterval.DAY);
+        assertThat(ids(dealOrderBook.findAll(params, PageRequest.of(0, 10)))).containsExactly(high.getId());
+
+        params = pending();
+        params.setMinTerm(20);
+        Page<Deal> firstByTerm = dealOrderBook.findAll(params, PageRequest.of(0, 1, Sort.by("term")));
+        assertThat(ids(firstByTerm)).containsExactly(high.getId());
+        assertThat(firstByTerm.getTotalElements()).isEqualTo(2);
+
+        assertThat(ids(dealOrderBook.findAll(pending(), high.getId(), 10)))
+            .containsExactly(low.getId());
+    }
+
+    @Test
+    public void assertThatOnlyNewerStatesReplaceADeal() {
+        dealOrderBook.rebuild();
+        Deal deal = DealResourceIT.createEntity(em).startBalance(BigDecimal.valueOf(START_BALANCE));
+        deal.setId(Long.MAX_VALUE);
+        deal.setVersion(1L);
+        double sizeBefore = meterRegistry.get("loanexchange.order.book.size").gauge().value();
+
+        dealOrderBook.update(deal);
+        assertThat(ids(dealOrderBook.findAll(pending(), PageRequest.of(0, 10)))).containsExactly(Long.MAX_VALUE);
+        assertThat(meterRegistry.get("loanexchange.order.book.size").gauge().value()).isEqualTo(sizeBefore + 1);
+
+        deal.setVersion(2L);
+        deal.setStatus(DealStatus.ACTIVE);
+        dealOrderBook.update(deal);
+        deal.setVersion(1L);
+        deal.setStatus(DealStatus.PENDING);
+        dealOrderBook.update(deal);
+        assertThat(dealOrderBook.findAll(pending(), PageRequest.of(0, 10)).getContent()).isEmpty();
+
+        assertThat(meterRegistry.get("loanexchange.order.book.staleness").timeGauge().value()).isNotNaN();
+    }
+
+    @Test
+    public void assertThatOtherFiltersAreLeftToTheDatabase() {
+        DealSpecification params = pending();
+        params.setForEmitter(1L);
+
+        assertThat(dealOrderBook.canServe(params, Sort.unsorted())).isFalse();
+        assertThat(dealOrderBook.canServe(pending(), Sort.by("emitter"))).isFalse();
+    }
+
+    private Deal persist(PaymentInterval paymentEvery, int successRate, int term, DealStatus status) {
+        Deal deal = DealResourceIT.createEntity(em).startBalance(BigDecimal.valueOf(START_BALANCE))
+            .paymentEvery(paymentEvery).successRate(successRate).term(term).status(status);
+        em.persist(deal);
+        return deal;
+    }
+
+    private static DealSpecification pending() {
+        DealSpecification params = new DealSpecification();
+        params.setWithStatus(DealStatus.PENDING);
+        params.setWithStartBalance(START_BALANCE);
+        return params;
+    }
+
+    private static List<Long> ids(Slice<Deal> deals) {
+        return deals.getContent().stream().map(Deal::getId).collect(Collectors.toList());
+    }
+}
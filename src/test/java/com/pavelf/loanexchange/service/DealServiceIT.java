@@ -0,0 +1,96 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Integration tests for {@link DealService} retrying on an optimistic lock failure, without a test transaction
+ * so that every attempt commits or rolls back on its own.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class DealServiceIT {
+
+    @Autowired
+    private DealService dealService;
+
+    @Autowired
+    private DealRepository dealRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager em;
+
+    private Deal deal;
+
+    @BeforeEach
+    public void setup() {
+        deal = dealRepository.saveAndFlush(DealResourceIT.createEntity(em));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.setField(AopTestUtils.getTargetObject(dealService), "dealRepository", dealRepository);
+        dealRepository.deleteById(deal.getId());
+    }
+
+    @Test
+    public void assertThatReplaceDealIsRetriedAfterAConcurrentChange() {
+        AtomicInteger reads = new AtomicInteger();
+        DealRepository racingRepository = mock(DealRepository.class, AdditionalAnswers.delegatesTo(dealRepository));
+        doAnswer(invocation -> {
+            Optional<Deal> found = dealRepository.findById(invocation.getArgument(0));
+            if (reads.incrementAndGet() == 1) {
+                // another administrator commits a change after the deal is read by the first attempt
+                changeConcurrently();
+            }
+            return found;
+        }).when(racingRepository).findById(any());
+        ReflectionTestUtils.setField(AopTestUtils.getTargetObject(dealService), "dealRepository", racingRepository);
+
+        Deal replacement = DealResourceIT.createEntity(em).percent(new BigDecimal("7.5"));
+        replacement.setId(deal.getId());
+        Deal replaced = dealService.replaceDeal(replacement);
+
+        assertThat(reads).hasValue(2);
+        assertThat(replacement.getVersion()).isNull();
+        assertThat(replaced.getPercent()).isEqualByComparingTo("7.5");
+        assertThat(dealRepository.findById(deal.getId()).get().getVersion()).isEqualTo(deal.getVersion() + 2);
+    }
+
+    private void changeConcurrently() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.execute(status ->
+            jdbcTemplate.update("UPDATE deal SET version = version + 1 WHERE id = ?", deal.getId()));
+    }
+}
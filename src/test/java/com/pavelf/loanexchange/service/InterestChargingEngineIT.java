@@ -0,0 +1,201 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+import com.pavelf.loanexchange.repository.AccountStatsBucketRepository;
+import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.repository.PaymentRunRepository;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link InterestChargingEngine}, with chunks of {@value #CHUNK_SIZE} deals processed on the
+ * interest charging pool against committed deals.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class InterestChargingEngineIT {
+
+    private static final int CHUNK_SIZE = 2;
+
+    private static final int DEALS = 5;
+
+    private static final LocalDate PERIOD = LocalDate.of(2001, 1, 1);
+
+    @Autowired
+    private DealRepository dealRepository;
+
+    @Autowired
+    private PaymentRunRepository paymentRunRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("interestChargingExecutor")
+    private Executor executor;
+
+    @Autowired
+    private NotificationWriter notificationWriter;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private PaymentRunService paymentRunService;
+
+    @Autowired
+    private BulkAccrualService bulkAccrualService;
+
+    @Autowired
+    private AccountStatsBucketRepository accountStatsBucketRepository;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private EntityManager em;
+
+    private final List<Deal> created = new ArrayList<>();
+
+    /** Times each deal was seen by a chunk which committed. */
+    private final Map<Long, Integer> charged = new ConcurrentHashMap<>();
+
+    @AfterEach
+    public void cleanup() {
+        paymentRunRepository.findOneByPaymentEveryAndPeriod(PaymentInterval.DAY, PERIOD)
+            .ifPresent(paymentRunRepository::delete);
+        dealRepository.deleteAll(created);
+        created.clear();
+    }
+
+    @Test
+    public void assertThatEveryDealIsChargedOnceAcrossChunks() {
+        createDeals();
+
+        InterestChargingEngine.Report report = newEngine(0).charge("test", specification(), this::record);
+
+        assertThat(report.getChunks()).isGreaterThanOrEqualTo(DEALS / CHUNK_SIZE + 1);
+        assertThat(report.getFailedChunks()).isEqualTo(0);
+        assertThat(report.getDeals()).isEqualTo(charged.size());
+        created.forEach(deal -> assertThat(charged).containsEntry(deal.getId(), 1));
+        assertThat(charged.values()).containsOnly(1);
+    }
+
+    @Test
+    public void assertThatAConflictingChunkIsRetried() {
+        createDeals();
+        Long conflicting = created.get(DEALS / 2).getId();
+        AtomicInteger attempts = new AtomicInteger();
+
+        InterestChargingEngine.Report report = newEngine(1).charge("test", specification(), chunk -> {
+            if (holds(chunk, conflicting) && attempts.incrementAndGet() == 1) {
+                throw new ConcurrencyFailureException("could not serialize access");
+            }
+            return record(chunk);
+        });
+
+        assertThat(attempts).hasValue(2);
+        assertThat(report.getFailedChunks()).isEqualTo(0);
+        created.forEach(deal -> assertThat(charged).containsEntry(deal.getId(), 1));
+    }
+
+    @Test
+    public void assertThatAFailingChunkIsReportedAndLeavesTheRunIncomplete() {
+        createDeals();
+        Long failing = created.get(DEALS / 2).getId();
+
+        InterestChargingEngine.Report report = newEngine(1).charge("test", specification(), chunk -> {
+            if (holds(chunk, failing)) {
+                throw new IllegalStateException("chunk failed");
+            }
+            return record(chunk);
+        });
+
+        assertThat(report.getFailedChunks()).isEqualTo(1);
+        assertThat(charged).doesNotContainKey(failing);
+
+        // the same failure within a payment run, the other chunks charge nothing so no ledger row is written
+        InterestChargingEngine engine = new InterestChargingEngine(dealRepository, transactionManager, executor,
+            properties(1), new SimpleMeterRegistry()) {
+
+            @Override
+            public Report charge(String run, DealSpecification specification, ChunkProcessor processor,
+                                 Runnable heartbeat) {
+                return super.charge(run, specification, chunk -> {
+                    if (holds(chunk, failing)) {
+                        throw new IllegalStateException("chunk failed");
+                    }
+                    return 0;
+                }, heartbeat);
+            }
+        };
+        new BalanceLogService(dealRepository, notificationWriter, ledgerService, engine, paymentRunService,
+            bulkAccrualService, accountStatsBucketRepository, applicationProperties)
+            .chargePercent(PaymentInterval.DAY, PERIOD);
+
+        PaymentRun run = paymentRunRepository.findOneByPaymentEveryAndPeriod(PaymentInterval.DAY, PERIOD).get();
+        assertThat(run.getStatus()).isEqualTo(PaymentRunStatus.RUNNING);
+    }
+
+    private InterestChargingEngine newEngine(int maxChunkRetries) {
+        return new InterestChargingEngine(dealRepository, transactionManager, executor, properties(maxChunkRetries),
+            new SimpleMeterRegistry());
+    }
+
+    private ApplicationProperties properties(int maxChunkRetries) {
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.getPayments().setChunkSize(CHUNK_SIZE);
+        properties.getPayments().setMaxChunkRetries(maxChunkRetries);
+        return properties;
+    }
+
+    private DealSpecification specification() {
+        DealSpecification specification = new DealSpecification();
+        specification.setWithStatus(DealStatus.ACTIVE);
+        specification.setPaymentEvery(PaymentInterval.DAY);
+        return specification;
+    }
+
+    private void createDeals() {
+        for (int i = 0; i < DEALS; i++) {
+            created.add(dealRepository.saveAndFlush(DealResourceIT.createEntity(em)
+                .status(DealStatus.ACTIVE)
+                .paymentEvery(PaymentInterval.DAY)));
+        }
+    }
+
+    private int record(DealSpecification chunk) {
+        List<Deal> deals = dealRepository.findAll(chunk);
+        deals.forEach(deal -> charged.merge(deal.getId(), 1, Integer::sum));
+        return deals.size();
+    }
+
+    private static boolean holds(DealSpecification chunk, Long dealId) {
+        return chunk.getIdFrom() <= dealId && dealId <= chunk.getIdTo();
+    }
+}
@@ -0,0 +1,131 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.AccountStats;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.repository.BalanceLogRepository;
+import com.pavelf.loanexchange.service.dto.BalanceMismatchDTO;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link LedgerService}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+@Transactional
+public class LedgerServiceIT {
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private BalanceLogService balanceLogService;
+
+    @Autowired
+    private BalanceLogRepository balanceLogRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    private User user;
+
+    @BeforeEach
+    public void init() {
+        user = UserResourceIT.createEntity(em);
+        em.persist(user);
+        em.flush();
+    }
+
+    @Test
+    public void assertThatAppendUpdatesAccountBalance() {
+        assertThat(ledgerService.getAccountBalance(user)).isEmpty();
+
+        ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+            .amountChanged(new BigDecimal("100.00")).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+        ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(new BigDecimal("100.00"))
+            .amountChanged(new BigDecimal("-30.00")).type(BalanceLogEvent.DEAL_PAYMENT).account(user));
+
+        assertThat(ledgerService.getAccountBalance(user)).contains(new BigDecimal("70.00"));
+    }
+
+    @Test
+    public void assertThatAppendUpdatesAccountStats() {
+        Instant may = Instant.parse("2019-05-31T23:59:59Z");
+        Instant june = Instant.parse("2019-06-01T00:00:00Z");
+        ledgerService.append(new BalanceLog().date(may).oldValue(BigDecimal.ZERO)
+            .amountChanged(new BigDecimal("100.00")).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+        ledgerService.append(new BalanceLog().date(june).oldValue(new BigDecimal("100.00"))
+            .amountChanged(new BigDecimal("-30.125")).type(BalanceLogEvent.DEAL_PAYMENT).account(user));
+        ledgerService.append(new BalanceLog().date(june).oldValue(new BigDecimal("69.87"))
+            .amountChanged(new BigDecimal("10.00")).type(BalanceLogEvent.DEAL_PAYMENT).account(user));
+        em.flush();
+        em.clear();
+
+        AccountStats stats = balanceLogService.getAccountStats(user.getId());
+
+        assertThat(stats.getAllTimeIncoming()).isEqualByComparingTo("110.00");
+        // -30.125 is stored as -30.13 in the ledger
+        assertThat(stats.getAllTimePaymentForLoan()).isEqualByComparingTo("-20.13");
+        assertThat(stats.getTotalsByType()).containsOnlyKeys(BalanceLogEvent.LOAN_TAKEN, BalanceLogEvent.DEAL_PAYMENT);
+        assertThat(stats.getMonths()).extracting(AccountStats.MonthTotals::getPeriod)
+            .containsExactly(LocalDate.of(2019, 5, 1), LocalDate.of(2019, 6, 1));
+        assertThat(stats.getMonths().get(1).getIncoming()).isEqualByComparingTo("10.00");
+        assertThat(stats.getMonths().get(1).getOutgoing()).isEqualByComparingTo("-30.13");
+    }
+
+    @Test
+    public void assertThatRebuildMatchesLastLogEntry() {
+        balanceLogRepository.saveAndFlush(new BalanceLog().date(Instant.now()).oldValue(new BigDecimal("5.00"))
+            .amountChanged(new BigDecimal("15.00")).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+
+        ledgerService.rebuildAccountBalances();
+        em.clear();
+
+        assertThat(ledgerService.getAccountBalance(user)).contains(new BigDecimal("20.00"));
+    }
+
+    @Test
+    public void assertThatAppendUpdatesDealBalance() {
+        Deal deal = DealResourceIT.createEntity(em);
+        em.persist(deal);
+
+        ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+            .amountChanged(new BigDecimal("50.00")).type(BalanceLogEvent.NEW_DEAL_OPEN).deal(deal));
+        ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(new BigDecimal("50.00"))
+            .amountChanged(new BigDecimal("5.00")).type(BalanceLogEvent.PERCENT_CHARGE).deal(deal));
+
+        assertThat(ledgerService.getDealBalance(deal)).contains(new BigDecimal("55.00"));
+    }
+
+    @Test
+    public void assertThatConsistencyCheckReportsLogWrittenAroundProjection() {
+        Deal deal = DealResourceIT.createEntity(em);
+        em.persist(deal);
+        ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+            .amountChanged(new BigDecimal("50.00")).type(BalanceLogEvent.NEW_DEAL_OPEN).deal(deal));
+        assertThat(ledgerService.checkConsistency()).noneMatch(m -> deal.getId().equals(m.getOwnerId()));
+
+        balanceLogRepository.saveAndFlush(new BalanceLog().date(Instant.now()).oldValue(new BigDecimal("50.00"))
+            .amountChanged(new BigDecimal("-10.00")).type(BalanceLogEvent.DEAL_PAYMENT).deal(deal));
+
+        assertThat(ledgerService.checkConsistency())
+            .anyMatch(m -> m.getProjection() == BalanceMismatchDTO.Projection.DEAL && deal.getId().equals(m.getOwnerId())
+                && new BigDecimal("40.00").compareTo(m.getLogBalance()) == 0);
+    }
+}
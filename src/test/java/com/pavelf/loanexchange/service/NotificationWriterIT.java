@@ -0,0 +1,93 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link NotificationWriter}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class NotificationWriterIT {
+
+    /**
+     * Date no other notification of the test database has, to read back only the notifications of a test.
+     */
+    private static final Instant DATE = Instant.parse("2001-02-03T04:05:06Z");
+
+    @Autowired
+    private NotificationWriter notificationWriter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    public void deleteNotifications() {
+        notificationWriter.flush();
+        jdbcTemplate.update("DELETE FROM notification WHERE jhi_date = ?", Timestamp.from(DATE));
+    }
+
+    @Test
+    public void assertThatCommittedNotificationsAreWrittenInBatches() throws Exception {
+        double flushesBefore = meterRegistry.get("loanexchange.notification.flush").timer().count();
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            for (int i = 0; i < 3; i++) {
+                notificationWriter.publish(new NotificationEvent(DATE, BalanceLogEvent.DEAL_CLOSED, null, null));
+            }
+            // nothing is queued before the commit
+            assertThat(meterRegistry.get("loanexchange.notification.queue.depth").gauge().value()).isEqualTo(0);
+            return null;
+        });
+        notificationWriter.flush();
+
+        assertThat(awaitNotifications(3)).isEqualTo(3);
+        assertThat(meterRegistry.get("loanexchange.notification.flush").timer().count()).isGreaterThan(flushesBefore);
+    }
+
+    @Test
+    public void assertThatRolledBackNotificationsAreNotWritten() throws Exception {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            notificationWriter.publish(new NotificationEvent(DATE, BalanceLogEvent.LOAN_TAKEN, null, null));
+            status.setRollbackOnly();
+            return null;
+        });
+        notificationWriter.flush();
+
+        assertThat(awaitNotifications(1)).isEqualTo(0);
+    }
+
+    /**
+     * Waits a moment for the background writer, which may have taken the notifications before the flush.
+     */
+    private int awaitNotifications(int expected) throws InterruptedException {
+        int count = 0;
+        for (int attempt = 0; attempt < 20 && count < expected; attempt++) {
+            count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification WHERE jhi_date = ?",
+                Integer.class, Timestamp.from(DATE));
+            if (count < expected) {
+                Thread.sleep(100);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,141 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.config.ApplicationProperties.Payments.AccrualMode;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+import com.pavelf.loanexchange.repository.PaymentRunRepository;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark of the JDBC round trips of a payment cycle on the entity path, with and without insert batching.
+ * <p>
+ * Round trips are counted as the statements prepared by Hibernate: a JDBC batch prepares its statement once,
+ * and with the pooled-lo optimizer a sequence fetch is only needed every 50 ids.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+@Transactional
+public class PaymentCycleRoundTripIT {
+
+    private static final int DEALS = 50;
+
+    private static final int CREDITORS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(PaymentCycleRoundTripIT.class);
+
+    @Autowired
+    private BalanceLogService balanceLogService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private PaymentRunRepository paymentRunRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    private Statistics statistics;
+
+    private PaymentRun run;
+
+    @BeforeEach
+    public void init() {
+        statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        run = paymentRunRepository.saveAndFlush(new PaymentRun().paymentEvery(PaymentInterval.DAY)
+            .period(LocalDate.of(2019, 6, 25)).status(PaymentRunStatus.RUNNING).startedAt(Instant.now())
+            .heartbeatAt(Instant.now()));
+    }
+
+    @AfterEach
+    public void disableStatistics() {
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void assertThatBatchingCutsRoundTripsPerPaymentCycle() {
+        Session session = em.unwrap(Session.class);
+
+        session.setJdbcBatchSize(1);
+        long unbatched = roundTrips(createCohort());
+
+        session.setJdbcBatchSize(null);
+        long batched = roundTrips(createCohort());
+
+        log.info("Payment cycle of {} deals: {} round trips unbatched ({} per deal), {} batched ({} per deal).",
+            DEALS, unbatched, String.format("%.2f", (double) unbatched / DEALS),
+            batched, String.format("%.2f", (double) batched / DEALS));
+        assertThat(batched * 2).isLessThan(unbatched);
+    }
+
+    private long roundTrips(DealSpecification chunk) {
+        statistics.clear();
+        assertThat(balanceLogService.processChunk(run, chunk, AccrualMode.ENTITY)).isEqualTo(DEALS);
+        em.flush();
+        em.clear();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private DealSpecification createCohort() {
+        User[] creditors = new User[CREDITORS];
+        for (int i = 0; i < CREDITORS; i++) {
+            creditors[i] = user();
+        }
+
+        DealSpecification chunk = new DealSpecification();
+        chunk.setWithStatus(DealStatus.ACTIVE);
+        chunk.setPaymentEvery(PaymentInterval.DAY);
+        for (int i = 0; i < DEALS; i++) {
+            Deal deal = DealResourceIT.createEntity(em).startBalance(new BigDecimal("1000.00"))
+                .percent(new BigDecimal("0.05")).term(10).paymentEvery(PaymentInterval.DAY)
+                .status(DealStatus.ACTIVE).emitter(creditors[i % CREDITORS]).recipient(user());
+            em.persist(deal);
+            ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+                .amountChanged(deal.getStartBalance()).type(BalanceLogEvent.NEW_DEAL_OPEN).deal(deal));
+            if (i == 0) {
+                chunk.setIdFrom(deal.getId());
+            }
+            chunk.setIdTo(deal.getId());
+        }
+
+        em.flush();
+        em.clear();
+        return chunk;
+    }
+
+    private User user() {
+        User user = UserResourceIT.createEntity(em);
+        em.persist(user);
+        ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+            .amountChanged(new BigDecimal("5000.00")).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+        return user;
+    }
+}
@@ -0,0 +1,221 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.domain.enumeration.DealStatus;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+import com.pavelf.loanexchange.repository.AccountStatsBucketRepository;
+import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.repository.PaymentRunRepository;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+import com.pavelf.loanexchange.web.rest.UserResourceIT;
+import com.pavelf.loanexchange.web.rest.specifications.DealSpecification;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for charging a period again after a partial run, by hand or by
+ * {@link BalanceLogService#resumeIncompletePaymentRuns()}, against committed deals.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class PaymentRunResumeIT {
+
+    private static final int DEALS = 5;
+
+    private static final LocalDate PERIOD = LocalDate.of(2002, 2, 2);
+
+    @Autowired
+    private BalanceLogService balanceLogService;
+
+    @Autowired
+    private DealRepository dealRepository;
+
+    @Autowired
+    private PaymentRunRepository paymentRunRepository;
+
+    @Autowired
+    private NotificationWriter notificationWriter;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private PaymentRunService paymentRunService;
+
+    @Autowired
+    private BulkAccrualService bulkAccrualService;
+
+    @Autowired
+    private AccountStatsBucketRepository accountStatsBucketRepository;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    @Qualifier("interestChargingExecutor")
+    private Executor executor;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager em;
+
+    private final List<Long> userIds = new ArrayList<>();
+
+    private final List<Long> dealIds = new ArrayList<>();
+
+    @BeforeEach
+    public void createDeals() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            User creditor = user();
+            for (int i = 0; i < DEALS; i++) {
+                Deal deal = DealResourceIT.createEntity(em).startBalance(new BigDecimal("1000.00"))
+                    .percent(new BigDecimal("0.05")).term(10).paymentEvery(PaymentInterval.DAY)
+                    .status(DealStatus.ACTIVE).emitter(creditor).recipient(user());
+                em.persist(deal);
+                ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+                    .amountChanged(deal.getStartBalance()).type(BalanceLogEvent.NEW_DEAL_OPEN).deal(deal));
+                dealIds.add(deal.getId());
+            }
+            return null;
+        });
+    }
+
+    @AfterEach
+    public void cleanup() {
+        notificationWriter.flush();
+        new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.update("DELETE FROM payment_run_item WHERE period = ?", PERIOD);
+            jdbcTemplate.update("DELETE FROM payment_run WHERE period = ?", PERIOD);
+            delete("DELETE FROM notification WHERE associated_deal_id IN (:deals)", "deals", dealIds);
+            delete("DELETE FROM notification WHERE recipient_id IN (:users)", "users", userIds);
+            delete("DELETE FROM balance_log WHERE deal_id IN (:deals)", "deals", dealIds);
+            delete("DELETE FROM balance_log WHERE account_id IN (:users)", "users", userIds);
+            delete("DELETE FROM deal_balance WHERE deal_id IN (:deals)", "deals", dealIds);
+            delete("DELETE FROM account_balance WHERE account_id IN (:users)", "users", userIds);
+            delete("DELETE FROM account_stats WHERE account_id IN (:users)", "users", userIds);
+            delete("DELETE FROM balance_log_bucket WHERE account_id IN (:users)", "users", userIds);
+            delete("DELETE FROM deal WHERE id IN (:deals)", "deals", dealIds);
+            delete("DELETE FROM jhi_user WHERE id IN (:users)", "users", userIds);
+            return null;
+        });
+        userIds.clear();
+        dealIds.clear();
+    }
+
+    @Test
+    public void assertThatChargingAgainChargesEveryDealOnce() {
+        Long failing = dealIds.get(DEALS / 2);
+        chargePartially(failing);
+        assertThat(percentCharges(dealIds.get(0))).isEqualTo(1);
+        assertThat(percentCharges(failing)).isEqualTo(0);
+
+        balanceLogService.chargePercent(PaymentInterval.DAY, PERIOD);
+
+        dealIds.forEach(deal -> assertThat(percentCharges(deal)).as("charges of deal %d", deal).isEqualTo(1));
+        assertThat(run().getStatus()).isEqualTo(PaymentRunStatus.COMPLETED);
+        assertThat(ledgerService.checkConsistency()).isEmpty();
+    }
+
+    @Test
+    public void assertThatOnlyRunsWithAStaleHeartbeatAreResumed() {
+        Long failing = dealIds.get(DEALS / 2);
+        chargePartially(failing);
+
+        // the run beat a moment ago, so a node may still be charging it
+        balanceLogService.resumeIncompletePaymentRuns();
+        assertThat(run().getStatus()).isEqualTo(PaymentRunStatus.RUNNING);
+        assertThat(percentCharges(failing)).isEqualTo(0);
+
+        new TransactionTemplate(transactionManager).execute(status ->
+            jdbcTemplate.update("UPDATE payment_run SET heartbeat_at = ? WHERE period = ?",
+                Timestamp.from(Instant.now().minus(1, ChronoUnit.HOURS)), PERIOD));
+        balanceLogService.resumeIncompletePaymentRuns();
+
+        dealIds.forEach(deal -> assertThat(percentCharges(deal)).as("charges of deal %d", deal).isEqualTo(1));
+        assertThat(run().getStatus()).isEqualTo(PaymentRunStatus.COMPLETED);
+        assertThat(ledgerService.checkConsistency()).isEmpty();
+    }
+
+    /**
+     * Charges the period in chunks of two deals, with the chunk of the given deal failing.
+     */
+    private void chargePartially(Long failing) {
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.getPayments().setChunkSize(2);
+        properties.getPayments().setMaxChunkRetries(0);
+        InterestChargingEngine engine = new InterestChargingEngine(dealRepository, transactionManager, executor,
+            properties, new SimpleMeterRegistry()) {
+
+            @Override
+            public Report charge(String run, DealSpecification specification, ChunkProcessor processor,
+                                 Runnable heartbeat) {
+                return super.charge(run, specification, chunk -> {
+                    if (chunk.getIdFrom() <= failing && failing <= chunk.getIdTo()) {
+                        throw new IllegalStateException("chunk failed");
+                    }
+                    return processor.process(chunk);
+                }, heartbeat);
+            }
+        };
+        new BalanceLogService(dealRepository, notificationWriter, ledgerService, engine, paymentRunService,
+            bulkAccrualService, accountStatsBucketRepository, applicationProperties)
+            .chargePercent(PaymentInterval.DAY, PERIOD);
+        assertThat(run().getStatus()).isEqualTo(PaymentRunStatus.RUNNING);
+    }
+
+    private PaymentRun run() {
+        return paymentRunRepository.findOneByPaymentEveryAndPeriod(PaymentInterval.DAY, PERIOD).get();
+    }
+
+    private int percentCharges(Long dealId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM balance_log WHERE deal_id = ? AND jhi_type = ?",
+            Integer.class, dealId, BalanceLogEvent.PERCENT_CHARGE.name());
+    }
+
+    private User user() {
+        User user = UserResourceIT.createEntity(em);
+        em.persist(user);
+        ledgerService.append(new BalanceLog().date(Instant.now()).oldValue(BigDecimal.ZERO)
+            .amountChanged(new BigDecimal("5000.00")).type(BalanceLogEvent.LOAN_TAKEN).account(user));
+        userIds.add(user.getId());
+        return user;
+    }
+
+    private void delete(String sql, String parameter, List<Long> ids) {
+        if (!ids.isEmpty()) {
+            em.createNativeQuery(sql).setParameter(parameter, ids).executeUpdate();
+        }
+    }
+}
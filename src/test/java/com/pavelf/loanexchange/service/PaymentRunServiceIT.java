@@ -0,0 +1,81 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.domain.Deal;
+import com.pavelf.loanexchange.domain.PaymentRun;
+import com.pavelf.loanexchange.domain.enumeration.PaymentInterval;
+import com.pavelf.loanexchange.domain.enumeration.PaymentRunStatus;
+import com.pavelf.loanexchange.repository.PaymentRunItemRepository;
+import com.pavelf.loanexchange.repository.PaymentRunRepository;
+import com.pavelf.loanexchange.web.rest.DealResourceIT;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Integration tests for {@link PaymentRunService}.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class PaymentRunServiceIT {
+
+    private static final LocalDate PERIOD = LocalDate.of(2019, 6, 15);
+
+    @Autowired
+    private PaymentRunService paymentRunService;
+
+    @Autowired
+    private PaymentRunRepository paymentRunRepository;
+
+    @Autowired
+    private PaymentRunItemRepository paymentRunItemRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @AfterEach
+    public void cleanup() {
+        paymentRunItemRepository.deleteAll();
+        paymentRunRepository.deleteAll();
+    }
+
+    @Test
+    public void assertThatStartRunReturnsTheSameRunForThePeriod() {
+        PaymentRun first = paymentRunService.startRun(PaymentInterval.DAY, PERIOD);
+        PaymentRun second = paymentRunService.startRun(PaymentInterval.DAY, PERIOD);
+
+        assertThat(second.getId()).isEqualTo(first.getId());
+        assertThat(second.getStatus()).isEqualTo(PaymentRunStatus.RUNNING);
+        assertThat(paymentRunService.findIncompleteRuns(Instant.now().plusSeconds(1))).contains(first);
+    }
+
+    @Test
+    @Transactional
+    public void assertThatDealIsChargedOnlyOncePerPeriod() {
+        PaymentRun run = paymentRunRepository.saveAndFlush(new PaymentRun().paymentEvery(PaymentInterval.DAY)
+            .period(PERIOD).status(PaymentRunStatus.RUNNING).startedAt(Instant.now())
+            .heartbeatAt(Instant.now()));
+        Deal charged = DealResourceIT.createEntity(em);
+        Deal pending = DealResourceIT.createEntity(em);
+        em.persist(charged);
+        em.persist(pending);
+
+        paymentRunService.markCharged(run, charged);
+
+        assertThat(paymentRunService.findChargedDealIds(run, Arrays.asList(charged, pending)))
+            .containsExactly(charged.getId());
+
+        paymentRunService.markCharged(run, charged);
+        assertThatThrownBy(() -> em.flush()).isInstanceOf(javax.persistence.PersistenceException.class);
+    }
+}
@@ -0,0 +1,150 @@
+package com.pavelf.loanexchange.service;
+
+import com.pavelf.loanexchange.LoanExchangeBackendApp;
+import com.pavelf.loanexchange.config.ApplicationProperties;
+import com.pavelf.loanexchange.config.CacheConfiguration;
+import com.pavelf.loanexchange.domain.Notification;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
+import com.pavelf.loanexchange.repository.NotificationRepository;
+import com.pavelf.loanexchange.repository.UserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.cache.CacheManager;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link UnreadNotificationCounter}, without a test transaction, so the watermark is read back
+ * only once committed.
+ */
+@SpringBootTest(classes = LoanExchangeBackendApp.class)
+public class UnreadNotificationCounterIT {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private UnreadNotificationCounter unreadNotificationCounter;
+
+    private User user;
+
+    private final List<Notification> created = new ArrayList<>();
+
+    private final List<CacheManager> cacheManagers = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        // a counter and cache of its own, as the counts of the shared one would outlive the notifications deleted
+        // after a test
+        unreadNotificationCounter = newCounter();
+        user = userRepository.findOneByLogin("user").get();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        notificationRepository.deleteAll(created);
+        new TransactionTemplate(transactionManager).execute(status ->
+            jdbcTemplate.update("DELETE FROM notification_watermark WHERE user_id = ?", user.getId()));
+        cacheManagers.forEach(CacheManager::close);
+        cacheManagers.clear();
+    }
+
+    @Test
+    public void assertThatWrittenNotificationsAreCountedOnce() {
+        long before = unreadNotificationCounter.getUnreadCount(user.getId());
+        Notification notification = createNotification();
+
+        unreadNotificationCounter.increment(Collections.singletonList(notification));
+        unreadNotificationCounter.increment(Collections.singletonList(notification));
+
+        assertThat(unreadNotificationCounter.getUnreadCount(user.getId())).isEqualTo(before + 1);
+    }
+
+    @Test
+    public void assertThatAcknowledgingResetsTheCount() {
+        unreadNotificationCounter.getUnreadCount(user.getId());
+        Notification seen = createNotification();
+        unreadNotificationCounter.increment(Collections.singletonList(seen));
+
+        assertThat(unreadNotificationCounter.acknowledge(user.getId(), seen.getId())).isEqualTo(0);
+        assertThat(unreadNotificationCounter.getUnreadCount(user.getId())).isEqualTo(0);
+
+        // the watermark is committed, and read by a counter which holds nothing yet
+        assertThat(newCounter().getUnreadCount(user.getId())).isEqualTo(0);
+        Notification unseen = createNotification();
+        assertThat(newCounter().getUnreadCount(user.getId())).isEqualTo(1);
+
+        assertThat(unreadNotificationCounter.acknowledge(user.getId(), unseen.getId())).isEqualTo(0);
+        assertThat(newCounter().getUnreadCount(user.getId())).isEqualTo(0);
+    }
+
+    @Test
+    public void assertThatTheWatermarkNeverMovesBack() {
+        Notification older = createNotification();
+        Notification newer = createNotification();
+
+        assertThat(unreadNotificationCounter.acknowledge(user.getId(), newer.getId())).isEqualTo(0);
+        assertThat(unreadNotificationCounter.acknowledge(user.getId(), older.getId())).isEqualTo(0);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT last_seen_id FROM notification_watermark WHERE user_id = ?",
+            Long.class, user.getId())).isEqualTo(newer.getId());
+    }
+
+    @Test
+    public void assertThatTheWatermarkStopsAtTheNewestNotificationOfTheUser() {
+        Notification seen = createNotification();
+
+        assertThat(unreadNotificationCounter.acknowledge(user.getId(), Long.MAX_VALUE)).isEqualTo(0);
+        assertThat(jdbcTemplate.queryForObject("SELECT last_seen_id FROM notification_watermark WHERE user_id = ?",
+            Long.class, user.getId())).isEqualTo(seen.getId());
+
+        Notification unseen = createNotification();
+        unreadNotificationCounter.increment(Collections.singletonList(unseen));
+        assertThat(unreadNotificationCounter.getUnreadCount(user.getId())).isEqualTo(1);
+        assertThat(newCounter().getUnreadCount(user.getId())).isEqualTo(1);
+    }
+
+    private UnreadNotificationCounter newCounter() {
+        CacheManager cacheManager = new EhcacheCachingProvider().getCacheManager();
+        cacheManager.createCache(UnreadNotificationCounter.UNREAD_COUNTS_CACHE,
+            CacheConfiguration.boundedConfiguration(100, 600, 0));
+        cacheManagers.add(cacheManager);
+        return new UnreadNotificationCounter(jdbcTemplate, transactionManager, cacheManager,
+            new SimpleMeterRegistry(), applicationProperties);
+    }
+
+    private Notification createNotification() {
+        Notification notification = notificationRepository.saveAndFlush(new Notification()
+            .date(Instant.now())
+            .type(BalanceLogEvent.DEAL_CLOSED)
+            .recipient(user));
+        created.add(notification);
+        return notification;
+    }
+}
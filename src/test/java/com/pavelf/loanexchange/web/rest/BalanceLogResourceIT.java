@@ -2,9 +2,15 @@ package com.pavelf.loanexchange.web.rest;
 
 import com.pavelf.loanexchange.LoanExchangeBackendApp;
 import com.pavelf.loanexchange.domain.BalanceLog;
+import com.pavelf.loanexchange.domain.User;
 import com.pavelf.loanexchange.domain.enumeration.BalanceLogEvent;
 import com.pavelf.loanexchange.repository.BalanceLogRepository;
 import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.repository.KeysetRepository;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.service.BalanceLogAnalyticsService;
+import com.pavelf.loanexchange.service.BalanceLogExportService;
+import com.pavelf.loanexchange.service.LedgerService;
 import com.pavelf.loanexchange.service.UserService;
 import com.pavelf.loanexchange.web.rest.errors.ExceptionTranslator;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,9 +19,12 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.Validator;
@@ -70,6 +79,18 @@ public class BalanceLogResourceIT {
     @Autowired
     private DealRepository dealRepository;
 
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private KeysetRepository keysetRepository;
+
+    @Autowired
+    private BalanceLogExportService balanceLogExportService;
+
+    @Autowired
+    private BalanceLogAnalyticsService balanceLogAnalyticsService;
+
     @Autowired
     private Validator validator;
 
@@ -81,7 +102,8 @@ public class BalanceLogResourceIT {
     public void setup() {
         MockitoAnnotations.initMocks(this);
         final BalanceLogResource balanceLogResource =
-            new BalanceLogResource(userService, balanceLogRepository, dealRepository);
+            new BalanceLogResource(userService, balanceLogRepository, dealRepository, ledgerService, keysetRepository,
+                balanceLogExportService, balanceLogAnalyticsService);
         this.restBalanceLogMockMvc = MockMvcBuilders.standaloneSetup(balanceLogResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -282,10 +304,10 @@ public class BalanceLogResourceIT {
     @Test
     @Transactional
     public void updateBalanceLog() throws Exception {
-        // Initialize the database
-        balanceLogRepository.saveAndFlush(balanceLog);
-
-        int databaseSizeBeforeUpdate = balanceLogRepository.findAll().size();
+        // Initialize the database through the ledger, so the projections of the account follow it
+        User account = UserResourceIT.createEntity(em);
+        em.persist(account);
+        ledgerService.append(balanceLog.account(account));
 
         // Update the balanceLog
         BalanceLog updatedBalanceLog = balanceLogRepository.findById(balanceLog.getId()).get();
@@ -297,19 +319,19 @@ public class BalanceLogResourceIT {
             .amountChanged(UPDATED_AMOUNT_CHANGED)
             .type(UPDATED_TYPE);
 
+        // The ledger is append-only
         restBalanceLogMockMvc.perform(put("/api/balance-logs")
             .contentType(TestUtil.APPLICATION_JSON_UTF8)
             .content(TestUtil.convertObjectToJsonBytes(updatedBalanceLog)))
-            .andExpect(status().isOk());
+            .andExpect(status().isBadRequest());
 
-        // Validate the BalanceLog in the database
-        List<BalanceLog> balanceLogList = balanceLogRepository.findAll();
-        assertThat(balanceLogList).hasSize(databaseSizeBeforeUpdate);
-        BalanceLog testBalanceLog = balanceLogList.get(balanceLogList.size() - 1);
-        assertThat(testBalanceLog.getDate()).isEqualTo(UPDATED_DATE);
-        assertThat(testBalanceLog.getOldValue()).isEqualTo(UPDATED_OLD_VALUE);
-        assertThat(testBalanceLog.getAmountChanged()).isEqualTo(UPDATED_AMOUNT_CHANGED);
-        assertThat(testBalanceLog.getType()).isEqualTo(UPDATED_TYPE);
+        // Validate the BalanceLog in the database is unchanged
+        BalanceLog testBalanceLog = balanceLogRepository.findById(balanceLog.getId()).get();
+        assertThat(testBalanceLog.getDate()).isEqualTo(DEFAULT_DATE);
+        assertThat(testBalanceLog.getOldValue()).isEqualByComparingTo(DEFAULT_OLD_VALUE);
+        assertThat(testBalanceLog.getAmountChanged()).isEqualByComparingTo(DEFAULT_AMOUNT_CHANGED);
+        assertThat(testBalanceLog.getType()).isEqualTo(DEFAULT_TYPE);
+        assertThat(ledgerService.checkConsistency()).isEmpty();
     }
 
     @Test
@@ -333,19 +355,54 @@ public class BalanceLogResourceIT {
     @Test
     @Transactional
     public void deleteBalanceLog() throws Exception {
-        // Initialize the database
-        balanceLogRepository.saveAndFlush(balanceLog);
+        // Initialize the database through the ledger, so the projections of the account follow it
+        User account = UserResourceIT.createEntity(em);
+        em.persist(account);
+        ledgerService.append(balanceLog.account(account));
 
         int databaseSizeBeforeDelete = balanceLogRepository.findAll().size();
 
-        // Delete the balanceLog
+        // The ledger is append-only
         restBalanceLogMockMvc.perform(delete("/api/balance-logs/{id}", balanceLog.getId())
             .accept(TestUtil.APPLICATION_JSON_UTF8))
-            .andExpect(status().isNoContent());
+            .andExpect(status().isBadRequest());
 
-        // Validate the database is empty
+        // Validate the entry is still there
         List<BalanceLog> balanceLogList = balanceLogRepository.findAll();
-        assertThat(balanceLogList).hasSize(databaseSizeBeforeDelete - 1);
+        assertThat(balanceLogList).hasSize(databaseSizeBeforeDelete);
+        assertThat(ledgerService.checkConsistency()).isEmpty();
+    }
+
+    @Test
+    @WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+    public void exportBalanceLogs() throws Exception {
+        // No entry belongs to a deal that does not exist, so only the header is streamed
+        MvcResult result = restBalanceLogMockMvc.perform(get("/api/balance-logs/export?format=csv&forDeal={id}",
+            Long.MAX_VALUE))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        restBalanceLogMockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("text/csv"))
+            .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"balance-logs.csv\""))
+            .andExpect(content().string("id,date,type,oldValue,amountChanged,accountId,dealId\n"));
+    }
+
+    @Test
+    @WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+    public void exportBalanceLogsWithUnknownFormat() throws Exception {
+        restBalanceLogMockMvc.perform(get("/api/balance-logs/export?format=xml"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.formatinvalid"));
+    }
+
+    @Test
+    @WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+    public void getPlatformBalanceFlowsWithInvalidWindow() throws Exception {
+        restBalanceLogMockMvc.perform(get("/api/balance-logs/flows/platform?interval=DAY&from=2019-06-10&to=2019-06-03"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.windowinvalid"));
     }
 
     @Test
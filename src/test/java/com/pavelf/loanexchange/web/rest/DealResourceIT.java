@@ -3,6 +3,9 @@ package com.pavelf.loanexchange.web.rest;
 import com.pavelf.loanexchange.LoanExchangeBackendApp;
 import com.pavelf.loanexchange.domain.Deal;
 import com.pavelf.loanexchange.repository.DealRepository;
+import com.pavelf.loanexchange.repository.KeysetRepository;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.service.DealOrderBook;
 import com.pavelf.loanexchange.service.DealService;
 import com.pavelf.loanexchange.service.UserService;
 import com.pavelf.loanexchange.web.rest.errors.ExceptionTranslator;
@@ -13,8 +16,10 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
@@ -88,6 +93,12 @@ public class DealResourceIT {
     @Autowired
     private DealService dealService;
 
+    @Autowired
+    private KeysetRepository keysetRepository;
+
+    @Autowired
+    private DealOrderBook dealOrderBook;
+
     @Autowired
     private Validator validator;
 
@@ -98,7 +109,8 @@ public class DealResourceIT {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final DealResource dealResource = new DealResource(dealRepository, dealService, userService);
+        final DealResource dealResource = new DealResource(dealRepository, dealService, userService,
+            keysetRepository, dealOrderBook);
         this.restDealMockMvc = MockMvcBuilders.standaloneSetup(dealResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -385,6 +397,22 @@ public class DealResourceIT {
             .andExpect(jsonPath("$.status").value(DEFAULT_STATUS.toString()));
     }
 
+    @Test
+    @Transactional
+    public void getDealIsNotModifiedForCurrentETag() throws Exception {
+        // Initialize the database
+        dealRepository.saveAndFlush(deal);
+
+        restDealMockMvc.perform(get("/api/deals/{id}", deal.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + deal.getVersion() + "\""));
+
+        restDealMockMvc.perform(get("/api/deals/{id}", deal.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, "\"" + deal.getVersion() + "\""))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+    }
+
     @Test
     @Transactional
     public void getNonExistingDeal() throws Exception {
@@ -436,6 +464,55 @@ public class DealResourceIT {
         assertThat(testDeal.getStatus()).isEqualTo(UPDATED_STATUS);
     }
 
+    @Test
+    @Transactional
+    @WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+    public void updateDealWithCurrentIfMatch() throws Exception {
+        // Initialize the database
+        dealRepository.saveAndFlush(deal);
+        final Long version = deal.getVersion();
+
+        Deal updatedDeal = dealRepository.findById(deal.getId()).get();
+        em.detach(updatedDeal);
+        updatedDeal.term(UPDATED_TERM);
+
+        restDealMockMvc.perform(put("/api/deals")
+            .header(HttpHeaders.IF_MATCH, "\"" + version + "\"")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(updatedDeal)))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + (version + 1) + "\""))
+            .andExpect(jsonPath("$.version").value(version.intValue() + 1));
+
+        Deal testDeal = dealRepository.findById(deal.getId()).get();
+        assertThat(testDeal.getTerm()).isEqualTo(UPDATED_TERM);
+        assertThat(testDeal.getVersion()).isEqualTo(version + 1);
+    }
+
+    @Test
+    @Transactional
+    @WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+    public void updateDealWithStaleIfMatch() throws Exception {
+        // Initialize the database
+        dealRepository.saveAndFlush(deal);
+        final Long version = deal.getVersion();
+
+        Deal updatedDeal = dealRepository.findById(deal.getId()).get();
+        em.detach(updatedDeal);
+        updatedDeal.term(UPDATED_TERM);
+
+        restDealMockMvc.perform(put("/api/deals")
+            .header(HttpHeaders.IF_MATCH, "\"" + (version + 1) + "\"")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(updatedDeal)))
+            .andExpect(status().isPreconditionFailed())
+            .andExpect(jsonPath("$.message").value("error.versionmismatch"));
+
+        Deal testDeal = dealRepository.findById(deal.getId()).get();
+        assertThat(testDeal.getTerm()).isEqualTo(DEFAULT_TERM);
+        assertThat(testDeal.getVersion()).isEqualTo(version);
+    }
+
     @Test
     @Transactional
     public void updateNonExistingDeal() throws Exception {
@@ -1,8 +1,17 @@
 package com.pavelf.loanexchange.web.rest;
 
+import com.jayway.jsonpath.JsonPath;
 import com.pavelf.loanexchange.LoanExchangeBackendApp;
 import com.pavelf.loanexchange.domain.Notification;
+import com.pavelf.loanexchange.domain.User;
+import com.pavelf.loanexchange.repository.KeysetRepository;
 import com.pavelf.loanexchange.repository.NotificationRepository;
+import com.pavelf.loanexchange.repository.UserRepository;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.security.jwt.StreamTicketStore;
+import com.pavelf.loanexchange.service.NotificationEvent;
+import com.pavelf.loanexchange.service.NotificationHub;
+import com.pavelf.loanexchange.service.UnreadNotificationCounter;
 import com.pavelf.loanexchange.service.UserService;
 import com.pavelf.loanexchange.web.rest.errors.ExceptionTranslator;
 
@@ -12,9 +21,12 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.Validator;
@@ -22,11 +34,15 @@ import org.springframework.validation.Validator;
 import javax.persistence.EntityManager;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
 import java.util.List;
 
 import static com.pavelf.loanexchange.web.rest.TestUtil.createFormattingConversionService;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -61,6 +77,21 @@ public class NotificationResourceIT {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private KeysetRepository keysetRepository;
+
+    @Autowired
+    private NotificationHub notificationHub;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UnreadNotificationCounter unreadNotificationCounter;
+
+    @Autowired
+    private StreamTicketStore streamTicketStore;
+
     @Autowired
     private Validator validator;
 
@@ -71,7 +102,8 @@ public class NotificationResourceIT {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final NotificationResource notificationResource = new NotificationResource(notificationRepository, userService);
+        final NotificationResource notificationResource = new NotificationResource(notificationRepository, userService,
+            keysetRepository, notificationHub, unreadNotificationCounter, streamTicketStore);
         this.restNotificationMockMvc = MockMvcBuilders.standaloneSetup(notificationResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -200,6 +232,98 @@ public class NotificationResourceIT {
             .andExpect(jsonPath("$.[*].type").value(hasItem(DEFAULT_TYPE.toString())));
     }
     
+    @Test
+    @Transactional
+    @WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+    public void getAllNotificationsByCursor() throws Exception {
+        // Initialize the database
+        Notification oldest = notificationRepository.saveAndFlush(createEntity(em));
+        Notification middle = notificationRepository.saveAndFlush(createEntity(em));
+        Notification newest = notificationRepository.saveAndFlush(createEntity(em));
+
+        // The first page, highest id first, links to the page after its last notification
+        restNotificationMockMvc.perform(get("/api/notifications?after=&size=2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(newest.getId().intValue(), middle.getId().intValue())))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("after=" + middle.getId() + "&size=2>; rel=\"next\"")))
+            .andExpect(header().doesNotExist("X-Total-Count"));
+
+        // The next page starts below the cursor
+        restNotificationMockMvc.perform(get("/api/notifications?after=" + middle.getId() + "&size=2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].id").value(oldest.getId().intValue()));
+
+        // The page below the oldest notification of all has no next link
+        restNotificationMockMvc.perform(get("/api/notifications?after=" + oldest.getId() + "&size=2"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.LINK, not(containsString("rel=\"next\""))));
+    }
+
+    @Test
+    @Transactional
+    @WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+    public void getAllNotificationsWithInvalidCursor() throws Exception {
+        restNotificationMockMvc.perform(get("/api/notifications?after=abc"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void streamNotifications() throws Exception {
+        // Initialize the database, out of a transaction as the stream reads it on another thread
+        User user = userRepository.findOneByLogin("user").get();
+        Notification missed = notificationRepository.saveAndFlush(createEntity(em).recipient(user));
+        int connectionsBefore = notificationHub.connections();
+        try {
+            // The notification written while the client was away is replayed on reconnect
+            MvcResult result = restNotificationMockMvc.perform(get("/api/notifications/stream")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", missed.getId() - 1))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+            assertThat(awaitEvent(result, missed.getId())).contains("event:" + NotificationHub.NOTIFICATION_EVENT);
+            assertThat(notificationHub.connections()).isEqualTo(connectionsBefore + 1);
+
+            // A new notification is pushed
+            Long pushedId = missed.getId() + 1000;
+            notificationHub.publish(Collections.singletonList(
+                new NotificationEvent(UPDATED_DATE, UPDATED_TYPE, user.getId(), null).toNotification(pushedId)));
+            assertThat(awaitEvent(result, pushedId)).contains("\"type\":\"" + UPDATED_TYPE + "\"");
+
+            result.getRequest().getAsyncContext().complete();
+            assertThat(notificationHub.connections()).isEqualTo(connectionsBefore);
+        } finally {
+            notificationRepository.delete(missed);
+        }
+    }
+
+    @Test
+    @WithMockUser
+    public void createStreamTicket() throws Exception {
+        MvcResult result = restNotificationMockMvc.perform(post("/api/notifications/stream/ticket"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.ticket").isNotEmpty())
+            .andReturn();
+        String ticket = JsonPath.read(result.getResponse().getContentAsString(), "$.ticket");
+
+        // The ticket grants the user who asked for it, once
+        assertThat(streamTicketStore.redeem(ticket).get().getName()).isEqualTo("user");
+        assertThat(streamTicketStore.redeem(ticket)).isEmpty();
+    }
+
+    /**
+     * Waits for the stream to send the event of a notification.
+     */
+    private static String awaitEvent(MvcResult result, Long id) throws Exception {
+        String content = "";
+        for (int attempt = 0; attempt < 50 && !content.contains("id:" + id + "\n"); attempt++) {
+            Thread.sleep(20);
+            content = result.getResponse().getContentAsString();
+        }
+        assertThat(content).contains("id:" + id + "\n");
+        return content;
+    }
+
     @Test
     @Transactional
     public void getNotification() throws Exception {
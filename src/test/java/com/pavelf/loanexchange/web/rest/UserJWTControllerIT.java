@@ -3,19 +3,31 @@ package com.pavelf.loanexchange.web.rest;
 import com.pavelf.loanexchange.LoanExchangeBackendApp;
 import com.pavelf.loanexchange.domain.User;
 import com.pavelf.loanexchange.repository.UserRepository;
+import com.pavelf.loanexchange.security.AuthoritiesConstants;
+import com.pavelf.loanexchange.security.jwt.TokenDenyList;
 import com.pavelf.loanexchange.security.jwt.TokenProvider;
+import com.pavelf.loanexchange.security.jwt.TokenRevocationStore;
 import com.pavelf.loanexchange.web.rest.errors.ExceptionTranslator;
 import com.pavelf.loanexchange.web.rest.vm.LoginVM;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -45,11 +57,24 @@ public class UserJWTControllerIT {
     @Autowired
     private ExceptionTranslator exceptionTranslator;
 
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+
+    @Autowired
+    private TokenDenyList tokenDenyList;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     private MockMvc mockMvc;
 
     @BeforeEach
     public void setup() {
-        UserJWTController userJWTController = new UserJWTController(tokenProvider, authenticationManager);
+        UserJWTController userJWTController = new UserJWTController(tokenProvider, authenticationManager,
+            tokenRevocationStore);
         this.mockMvc = MockMvcBuilders.standaloneSetup(userJWTController)
             .setControllerAdvice(exceptionTranslator)
             .build();
@@ -116,4 +141,32 @@ public class UserJWTControllerIT {
             .andExpect(jsonPath("$.id_token").doesNotExist())
             .andExpect(header().doesNotExist("Authorization"));
     }
+
+    @Test
+    public void testLogoutRevokesTheToken() throws Exception {
+        String jwt = tokenProvider.createToken(new UsernamePasswordAuthenticationToken("user", "user",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))), false);
+        String tokenId = tokenProvider.parseToken(jwt).get().getId();
+        SecurityContextHolder.getContext().setAuthentication(tokenProvider.getAuthentication(jwt));
+
+        try {
+            mockMvc.perform(post("/api/logout"))
+                .andExpect(status().isNoContent());
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+
+        assertThat(tokenDenyList.isRevoked(tokenId)).isTrue();
+        assertThat(tokenRevocationStore.poll()).isGreaterThanOrEqualTo(1);
+
+        // read in a transaction of its own, which sees the row only if the revocation was committed
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            assertThat(transactionTemplate.execute(status -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM revoked_token WHERE token_id = ?", Integer.class, tokenId))).isEqualTo(1);
+        } finally {
+            transactionTemplate.execute(status ->
+                jdbcTemplate.update("DELETE FROM revoked_token WHERE token_id = ?", tokenId));
+        }
+    }
 }